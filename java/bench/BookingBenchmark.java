@@ -0,0 +1,155 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput benchmark of Hotel.bookRoom() under contention.
+ *
+ * Every thread runs its own session and books random (room, night) pairs
+ * drawn from a small hot set, so many threads race for the same rows and
+ * the unique constraint decides the winner. The benchmark reports booking
+ * throughput, the share of conflicts and the per-call latency, then
+ * deletes the bookings it made.
+ *
+ * Usage: java BookingBenchmark dbname port user userID password
+ *             [threads] [seconds] [hotelID] [rooms] [nights] [firstNight]
+ *
+ */
+public class BookingBenchmark {
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 5) {
+         System.err.println(
+            "Usage: java BookingBenchmark <dbname> <port> <user> <userID> <password> " +
+            "[threads] [seconds] [hotelID] [rooms] [nights] [firstNight yyyy-mm-dd]");
+         return;
+      }
+      final int userID = Integer.parseInt(args[3]);
+      final String password = args[4];
+      final int threads = args.length > 5 ? Integer.parseInt(args[5]) : 8;
+      final int seconds = args.length > 6 ? Integer.parseInt(args[6]) : 10;
+      final int hotelID = args.length > 7 ? Integer.parseInt(args[7]) : 1;
+      final int rooms = args.length > 8 ? Integer.parseInt(args[8]) : 4;
+      final int nights = args.length > 9 ? Integer.parseInt(args[9]) : 50;
+      // far outside the availability horizon by default, so every attempt hits the database
+      final LocalDate firstNight = args.length > 10 ? LocalDate.parse(args[10]) : LocalDate.of(2100, 1, 1);
+
+      System.setProperty("hotel.pool.max", String.valueOf(threads));
+      Class.forName("org.postgresql.Driver");
+      Hotel esql = new Hotel(args[0], args[1], args[2], "");
+
+      ColumnarResult roomList = esql.executeQueryAndReturnColumns(
+         "SELECT R.roomNumber FROM Rooms R WHERE R.hotelID = ? ORDER BY R.roomNumber LIMIT ?", hotelID, rooms);
+      final int[] roomNumbers = Arrays.copyOf(roomList.intColumn(0), roomList.getRowCount());
+      if (roomNumbers.length == 0) {
+         System.err.println("Hotel " + hotelID + " has no rooms");
+         esql.cleanup();
+         return;
+      }
+
+      final AtomicLong booked = new AtomicLong();
+      final AtomicLong conflicts = new AtomicLong();
+      final AtomicLong errors = new AtomicLong();
+      final long[][] latencies = new long[threads][];
+      final int[] counts = new int[threads];
+      final CountDownLatch start = new CountDownLatch(1);
+      final long[] deadline = new long[1];
+
+      Thread[] workers = new Thread[threads];
+      for (int t = 0; t < threads; t++) {
+         final int id = t;
+         final Hotel session = esql.newSession();
+         if (!session.logIn(userID, password)) {
+            System.err.println("Invalid userID/password");
+            esql.cleanup();
+            return;
+         }
+         workers[t] = new Thread(new Runnable() {
+            public void run() {
+               Random random = new Random(id);
+               long[] lat = new long[1 << 16];
+               int n = 0;
+               try {
+                  start.await();
+               } catch (InterruptedException e) {
+                  return;
+               }
+               while (System.nanoTime() < deadline[0]) {
+                  int room = roomNumbers[random.nextInt(roomNumbers.length)];
+                  LocalDate night = firstNight.plusDays(random.nextInt(nights));
+                  long t0 = System.nanoTime();
+                  try {
+                     BookingResult result = session.bookRoom(hotelID, room, night);
+                     if (result == BookingResult.BOOKED)
+                        booked.incrementAndGet();
+                     else
+                        conflicts.incrementAndGet();
+                  } catch (Exception e) {
+                     errors.incrementAndGet();
+                  }
+                  if (n == lat.length)
+                     lat = Arrays.copyOf(lat, n * 2);
+                  lat[n++] = System.nanoTime() - t0;
+               }
+               latencies[id] = lat;
+               counts[id] = n;
+            }
+         }, "booker-" + t);
+         workers[t].start();
+      }
+
+      deadline[0] = System.nanoTime() + seconds * 1000000000L;
+      long begin = System.nanoTime();
+      start.countDown();
+      for (Thread w : workers)
+         w.join();
+      double elapsed = (System.nanoTime() - begin) / 1e9;
+
+      int total = 0;
+      for (int c : counts)
+         total += c;
+      long[] all = new long[total];
+      int k = 0;
+      for (int t = 0; t < threads; t++) {
+         System.arraycopy(latencies[t], 0, all, k, counts[t]);
+         k += counts[t];
+      }
+      Arrays.sort(all);
+
+      System.out.println(String.format(
+         "threads=%d rooms=%d nights=%d seconds=%.1f", threads, roomNumbers.length, nights, elapsed));
+      System.out.println(String.format(
+         "attempts=%d (%.0f/s) booked=%d (%.0f/s) conflicts=%d (%.1f%%) errors=%d",
+         total, total / elapsed, booked.get(), booked.get() / elapsed,
+         conflicts.get(), total == 0 ? 0.0 : 100.0 * conflicts.get() / total, errors.get()));
+      if (total > 0) {
+         System.out.println(String.format(
+            "latency ms: p50=%.3f p90=%.3f p99=%.3f max=%.3f",
+            all[total / 2] / 1e6, all[(int) (total * 0.9)] / 1e6,
+            all[(int) (total * 0.99)] / 1e6, all[total - 1] / 1e6));
+      }
+      System.out.println(esql.getPool().stats());
+
+      // remove the benchmark bookings again
+      esql.executeUpdate(
+         "DELETE FROM RoomBookings WHERE customerID = ? AND hotelID = ? AND bookingDate >= ? AND bookingDate < ?",
+         userID, hotelID, firstNight, firstNight.plusDays(nights));
+      esql.cleanup();
+   }//end main
+
+}//end BookingBenchmark
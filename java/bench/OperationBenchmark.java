@@ -0,0 +1,298 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks every menu operation through the same Hotel methods the menu
+ * and CommandRunner use.
+ *
+ * For each operation the benchmark warms up, then measures single-threaded
+ * latency (percentiles) and bytes allocated per call, then the throughput
+ * of several threads with their own sessions. Inputs are drawn at random
+ * from the loaded data, so the same run can be repeated on the shipped
+ * CSVs and on copies scaled with sql/scripts/scale_db.sh. Bookings, room
+ * updates and repair requests made by the benchmark are deleted at the end.
+ *
+ * The logged in user should be a manager; the manager operations are
+ * measured on the hotels that user manages.
+ *
+ * Tuning: -Dbench.warmup=2 -Dbench.seconds=5 -Dbench.threads=8 (seconds
+ * per phase, threads of the throughput phase).
+ *
+ * Usage: java OperationBenchmark dbname port user userID password [operation ...]
+ *
+ */
+public class OperationBenchmark {
+
+   /*
+    * One call of a Hotel operation with random inputs.
+    */
+   interface Operation {
+      void run(Hotel session, Random random) throws Exception;
+   }
+
+   static final int WARMUP_SECONDS = Integer.getInteger("bench.warmup", 2);
+   static final int SECONDS = Integer.getInteger("bench.seconds", 5);
+   static final int THREADS = Integer.getInteger("bench.threads", 8);
+
+   // bookings go far outside the availability horizon and the shipped data
+   static final LocalDate FIRST_BENCH_NIGHT = LocalDate.of(2100, 1, 1);
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 5) {
+         System.err.println(
+            "Usage: java OperationBenchmark <dbname> <port> <user> <userID> <password> [operation ...]");
+         return;
+      }
+      final int userID = Integer.parseInt(args[3]);
+      final String password = args[4];
+
+      System.setProperty("hotel.pool.max", String.valueOf(THREADS));
+      Class.forName("org.postgresql.Driver");
+      final Hotel esql = new Hotel(args[0], args[1], args[2], "");
+      if (!esql.logIn(userID, password)) {
+         System.err.println("Invalid userID/password");
+         esql.cleanup();
+         return;
+      }
+
+      // the inputs are drawn from the loaded data
+      ColumnarResult rooms = esql.executeQueryAndReturnColumns("SELECT R.hotelID, R.roomNumber FROM Rooms R");
+      final int[] roomHotels = Arrays.copyOf(rooms.intColumn(0), rooms.getRowCount());
+      final int[] roomNumbers = Arrays.copyOf(rooms.intColumn(1), rooms.getRowCount());
+      ColumnarResult repairs = esql.executeQueryAndReturnColumns(
+         "SELECT R.hotelID, R.roomNumber, R.companyID FROM RoomRepairs R, Hotel H " +
+         "WHERE H.hotelID = R.hotelID AND H.managerUserID = ?", userID);
+      ColumnarResult managed = esql.executeQueryAndReturnColumns(
+         "SELECT R.hotelID, R.roomNumber, R.price, R.imageURL FROM Rooms R, Hotel H " +
+         "WHERE H.hotelID = R.hotelID AND H.managerUserID = ?", userID);
+      ColumnarResult dates = esql.executeQueryAndReturnColumns(
+         "SELECT min(bookingDate), max(bookingDate) FROM RoomBookings WHERE bookingDate < ?", FIRST_BENCH_NIGHT);
+      final LocalDate firstDate = dates.isNull(0, 0) ? LocalDate.now() : dates.getDate(0, 0);
+      final int dateSpan = dates.isNull(0, 1) ? 1 : (int) (dates.getDate(0, 1).toEpochDay() - firstDate.toEpochDay()) + 1;
+      if (roomHotels.length == 0) {
+         System.err.println("No rooms loaded");
+         esql.cleanup();
+         return;
+      }
+      final ColumnarResult repairList = repairs, managedRooms = managed;
+
+      // rows added by the write operations are removed above these marks
+      ColumnarResult marks = esql.executeQueryAndReturnColumns(
+         "SELECT (SELECT coalesce(max(updateNumber), 0) FROM RoomUpdatesLog), " +
+         "(SELECT coalesce(max(requestNumber), 0) FROM RoomRepairRequests)");
+      int lastUpdate = marks.getInt(0, 0), lastRequest = marks.getInt(0, 1);
+
+      final AtomicLong nights = new AtomicLong();
+      Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+      operations.put("hotels", new Operation() {
+         public void run(Hotel session, Random random) {
+            session.hotelsNearby(random.nextDouble() * 100, random.nextDouble() * 100);
+         }
+      });
+      operations.put("rooms", new Operation() {
+         public void run(Hotel session, Random random) throws Exception {
+            session.roomsOn(roomHotels[random.nextInt(roomHotels.length)], firstDate.plusDays(random.nextInt(dateSpan)));
+         }
+      });
+      operations.put("book", new Operation() {
+         public void run(Hotel session, Random random) throws Exception {
+            // a new night every call, so each booking succeeds
+            int i = random.nextInt(roomHotels.length);
+            session.bookRoom(roomHotels[i], roomNumbers[i], FIRST_BENCH_NIGHT.plusDays(nights.getAndIncrement()));
+         }
+      });
+      operations.put("bookings", new Operation() {
+         public void run(Hotel session, Random random) throws Exception {
+            session.recentBookings(null);
+         }
+      });
+      if (managedRooms.getRowCount() > 0) {
+         operations.put("update", new Operation() {
+            public void run(Hotel session, Random random) throws Exception {
+               // writes back the current price and image
+               int i = random.nextInt(managedRooms.getRowCount());
+               session.updateRoom(managedRooms.getInt(i, 0), managedRooms.getInt(i, 1),
+                  managedRooms.getInt(i, 2), managedRooms.getString(i, 3));
+            }
+         });
+      }
+      operations.put("updates", new Operation() {
+         public void run(Hotel session, Random random) throws Exception {
+            session.recentUpdates(null);
+         }
+      });
+      operations.put("history", new Operation() {
+         public void run(Hotel session, Random random) throws Exception {
+            session.hotelBookings(null);
+         }
+      });
+      operations.put("customers", new Operation() {
+         public void run(Hotel session, Random random) throws Exception {
+            session.regularCustomers();
+         }
+      });
+      if (repairList.getRowCount() > 0) {
+         operations.put("repair", new Operation() {
+            public void run(Hotel session, Random random) throws Exception {
+               int i = random.nextInt(repairList.getRowCount());
+               session.placeRepairRequest(repairList.getInt(i, 0), repairList.getInt(i, 1), repairList.getInt(i, 2));
+            }
+         });
+      }
+      operations.put("repairs", new Operation() {
+         public void run(Hotel session, Random random) throws Exception {
+            session.repairHistory();
+         }
+      });
+
+      List<String> selected = args.length > 5
+         ? Arrays.asList(Arrays.copyOfRange(args, 5, args.length))
+         : new ArrayList<String>(operations.keySet());
+
+      System.out.println(String.format("%-10s %10s %10s %10s %10s %10s %12s %12s %8s",
+         "operation", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "bytes/op",
+         THREADS + "-thr ops/s", "errors"));
+      try {
+         for (String name : selected) {
+            Operation op = operations.get(name);
+            if (op == null) {
+               System.err.println("Unknown or unavailable operation: " + name);
+               continue;
+            }
+            Hotel session = esql.newSession();
+            session.logIn(userID, password);
+            measure(WARMUP_SECONDS, session, op, null);
+            long[] single = measure(SECONDS, session, op, null);
+            long[] multi = throughput(esql, userID, password, op);
+            printRow(name, single, multi);
+         }
+      } finally {
+         esql.executeUpdate(
+            "DELETE FROM RoomBookings WHERE customerID = ? AND bookingDate >= ?", userID, FIRST_BENCH_NIGHT);
+         esql.executeUpdate("DELETE FROM RoomUpdatesLog WHERE updateNumber > ?", lastUpdate);
+         esql.executeUpdate("DELETE FROM RoomRepairRequests WHERE requestNumber > ?", lastRequest);
+         System.out.println(esql.getPool().stats());
+         esql.cleanup();
+      }
+   }//end main
+
+   /**
+    * Calls an operation in a loop on the current thread.
+    *
+    * @return { calls, errors, allocated bytes or -1, elapsed nanos, latencies... }
+    */
+   static long[] measure(int seconds, Hotel session, Operation op, CountDownLatch start) throws InterruptedException {
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      com.sun.management.ThreadMXBean allocation = threads instanceof com.sun.management.ThreadMXBean
+         ? (com.sun.management.ThreadMXBean) threads : null;
+      long self = Thread.currentThread().getId();
+      Random random = new Random(self);
+      long[] lat = new long[1 << 12];
+      int n = 0;
+      long errors = 0;
+
+      if (start != null)
+         start.await();
+      long bytes0 = allocation != null ? allocation.getThreadAllocatedBytes(self) : -1;
+      long begin = System.nanoTime();
+      long deadline = begin + seconds * 1000000000L;
+      long now = begin;
+      while (now < deadline) {
+         try {
+            op.run(session, random);
+         } catch (Exception e) {
+            errors++;
+         }
+         long end = System.nanoTime();
+         if (n == lat.length)
+            lat = Arrays.copyOf(lat, n * 2);
+         lat[n++] = end - now;
+         now = end;
+      }
+      long bytes = allocation != null ? allocation.getThreadAllocatedBytes(self) - bytes0 : -1;
+
+      long[] result = new long[4 + n];
+      result[0] = n;
+      result[1] = errors;
+      result[2] = bytes;
+      result[3] = now - begin;
+      System.arraycopy(lat, 0, result, 4, n);
+      return result;
+   }//end measure
+
+   /**
+    * Runs an operation on THREADS threads, each with its own session.
+    *
+    * @return { calls, errors, elapsed nanos }
+    */
+   static long[] throughput(Hotel esql, int userID, String password, final Operation op) throws Exception {
+      final CountDownLatch start = new CountDownLatch(1);
+      final long[][] results = new long[THREADS][];
+      Thread[] workers = new Thread[THREADS];
+      for (int t = 0; t < THREADS; t++) {
+         final int id = t;
+         final Hotel session = esql.newSession();
+         session.logIn(userID, password);
+         workers[t] = new Thread(new Runnable() {
+            public void run() {
+               try {
+                  results[id] = measure(SECONDS, session, op, start);
+               } catch (InterruptedException e) {
+                  results[id] = new long[4];
+               }
+            }
+         }, "bench-" + t);
+         workers[t].start();
+      }
+      start.countDown();
+      for (Thread w : workers)
+         w.join();
+      long calls = 0, errors = 0, elapsed = 0;
+      for (long[] r : results) {
+         calls += r[0];
+         errors += r[1];
+         elapsed = Math.max(elapsed, r[3]);
+      }
+      return new long[] { calls, errors, elapsed };
+   }//end throughput
+
+   static void printRow(String name, long[] single, long[] multi) {
+      int n = (int) single[0];
+      long[] lat = Arrays.copyOfRange(single, 4, 4 + n);
+      Arrays.sort(lat);
+      double seconds = single[3] / 1e9;
+      System.out.println(String.format("%-10s %10.1f %10.3f %10.3f %10.3f %10.3f %12s %12.1f %8d",
+         name,
+         n / seconds,
+         n == 0 ? 0 : lat[n / 2] / 1e6,
+         n == 0 ? 0 : lat[(int) (n * 0.9)] / 1e6,
+         n == 0 ? 0 : lat[(int) (n * 0.99)] / 1e6,
+         n == 0 ? 0 : lat[n - 1] / 1e6,
+         single[2] < 0 || n == 0 ? "n/a" : String.valueOf(single[2] / n),
+         multi[2] == 0 ? 0 : multi[0] / (multi[2] / 1e9),
+         single[1] + multi[1]));
+   }
+
+}//end OperationBenchmark
@@ -0,0 +1,15 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the program and the benchmarks
+mkdir -p $DIR/../bench-classes
+javac -cp $DIR/../lib/pg73jdbc3.jar -d $DIR/../bench-classes $DIR/../src/*.java $DIR/../bench/*.java
+
+# run a benchmark, e.g.
+#   bench.sh BookingBenchmark 25 xyz 16 10
+#   bench.sh OperationBenchmark 25 xyz rooms book
+# on larger data: sql/scripts/scale_db.sh 10 (or 100, 1000) first
+#Use your database name, port number and login
+BENCH=$1
+shift
+java -cp $DIR/../bench-classes:$DIR/../lib/pg73jdbc3.jar $BENCH $USER"_DB" $PGPORT $USER "$@"
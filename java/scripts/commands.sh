@@ -0,0 +1,10 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# run commands from a file (or standard input) without the menu, e.g.
+#   commands.sh workload.txt > results.jsonl
+#Use your database name, port number and login
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar CommandRunner $USER"_DB" $PGPORT $USER "$@"
@@ -0,0 +1,10 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# write CSV files at a scale of the shipped data, e.g.
+#   generate.sh /tmp/hotel-data 1000 [seed]
+# 100M bookings: -Dgen.bookings=100000000 in JAVA_OPTS
+java $JAVA_OPTS -cp $DIR/../classes DataGenerator "$@"
@@ -0,0 +1,11 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# convert the char(n) columns of a populated database to varchar/text and user_type, online, e.g.
+#   JAVA_OPTS="-Dmigrate.batchRows=20000 -Dmigrate.pauseMillis=0" migrate.sh
+#   JAVA_OPTS="-Dmigrate.vacuumFull=true" migrate.sh   (gives the space back, blocks the tables meanwhile)
+#Use your database name, port number and login
+java $JAVA_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar SchemaMigrator $USER"_DB" $PGPORT $USER
@@ -0,0 +1,12 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# create the coming monthly partitions of RoomBookings and empty its default partition; run daily, e.g.
+#   JAVA_OPTS="-Dpartition.aheadMonths=6 -Dpartition.retainMonths=36" partitions.sh
+# and before a load with the months of its bookings, e.g.
+#   JAVA_OPTS="-Dpartition.bookings=data/bookings.csv" partitions.sh
+#Use your database name, port number and login
+java $JAVA_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar PartitionManager $USER"_DB" $PGPORT $USER
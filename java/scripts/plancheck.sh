@@ -0,0 +1,11 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# check the plans of the query templates, best on scaled data, e.g.
+#   sql/scripts/scale_db.sh 100 && plancheck.sh
+#   JAVA_OPTS="-Dplan.maxSeqScanRows=5000 -Dplan.verbose=true" plancheck.sh
+#Use your database name, port number and login
+java $JAVA_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar PlanChecker $USER"_DB" $PGPORT $USER
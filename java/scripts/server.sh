@@ -0,0 +1,12 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# serve the Hotel operations over HTTP, e.g.
+#   curl -d 'user=1&password=x' localhost:8080/login
+#   curl -H "Authorization: Bearer <token>" localhost:8080/api/rooms/12/2024-05-01
+#   JAVA_OPTS="-Dhotel.server.port=9090 -Dhotel.pool.max=32" server.sh
+#Use your database name, port number and login
+java $JAVA_OPTS -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar HotelServer $USER"_DB" $PGPORT $USER
@@ -0,0 +1,327 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind writer for room changes and their RoomUpdatesLog records,
+ * for high-volume streams such as bulk price changes.
+ *
+ * Callers hand changes to a bounded queue; one background thread takes up
+ * to batchSize of them at a time and applies them with one JDBC batch of
+ * Hotel.UPDATE_ROOM_QUERY in one transaction, so a room change and its log
+ * record are always committed together. When a batch fails, its changes
+ * are retried one transaction each and only those that fail again are
+ * dropped (and counted).
+ *
+ * Durability:
+ *    SYNC          submit() returns once the batch holding the change is
+ *                  committed; concurrent callers share a commit.
+ *    GROUP_COMMIT  submit() returns once the change is queued; batches are
+ *                  committed with synchronous_commit off. A crash may lose
+ *                  the queued changes and the last commits, never half of
+ *                  a change. flush() waits for everything queued so far.
+ *
+ * A full queue blocks submit() for at most offerMillis, then rejects the
+ * change, so producers slow down to the pace of the database instead of
+ * filling the heap.
+ *
+ */
+public class AuditLogWriter implements Runnable {
+
+   public enum Durability { SYNC, GROUP_COMMIT }
+
+   /*
+    * One room change and its log record.
+    */
+   private static class Change {
+      final int managerID, hotelID, roomNumber, price;
+      final String imageURL;
+      final LocalDateTime updatedOn;
+      final long queuedAt = System.nanoTime();
+      // only set for SYNC
+      final CountDownLatch done;
+      volatile boolean applied;
+      volatile SQLException error;
+
+      Change(int managerID, int hotelID, int roomNumber, int price, String imageURL, boolean sync) {
+         this.managerID = managerID;
+         this.hotelID = hotelID;
+         this.roomNumber = roomNumber;
+         this.price = price;
+         this.imageURL = imageURL;
+         this.updatedOn = LocalDateTime.now();
+         this.done = sync ? new CountDownLatch(1) : null;
+      }
+   }//end Change
+
+   private final ConnectionPool _pool;
+   private final RoomCatalog _rooms;
+   private final Metrics _metrics;
+   private final Durability _durability;
+   private final int _batchSize;
+   private final long _flushMillis;
+   private final long _offerMillis;
+   private final BlockingQueue<Change> _queue;
+   private final Thread _thread;
+   private volatile boolean _closed = false;
+
+   private final AtomicLong _submitted = new AtomicLong();
+   private final AtomicLong _rejected = new AtomicLong();
+   private final AtomicLong _written = new AtomicLong();
+   private final AtomicLong _failed = new AtomicLong();
+   private final AtomicLong _batches = new AtomicLong();
+
+   // changes taken off the queue and committed or dropped; guarded by this
+   private long _completed = 0;
+
+   // time from submit() to commit
+   private final LatencyHistogram _lag = new LatencyHistogram();
+
+   /**
+    * Creates the writer and starts its thread.
+    *
+    * @param pool where the changes are written
+    * @param rooms the hotels of the changes written are invalidated there; may be null
+    * @param metrics the batches are recorded under Hotel.UPDATE_ROOM_QUERY
+    * @param durability when submit() returns
+    * @param capacity the number of changes the queue holds
+    * @param batchSize the number of changes committed together at most
+    * @param flushMillis how long the thread waits for a change before checking for close()
+    * @param offerMillis how long submit() waits for room in a full queue
+    */
+   public AuditLogWriter(ConnectionPool pool, RoomCatalog rooms, Metrics metrics, Durability durability,
+                         int capacity, int batchSize, long flushMillis, long offerMillis) {
+      if (capacity < 1 || batchSize < 1)
+         throw new IllegalArgumentException("invalid audit queue size: " + capacity + "/" + batchSize);
+      this._pool = pool;
+      this._rooms = rooms;
+      this._metrics = metrics;
+      this._durability = durability;
+      this._batchSize = batchSize;
+      this._flushMillis = flushMillis;
+      this._offerMillis = offerMillis;
+      this._queue = new ArrayBlockingQueue<Change>(capacity);
+      this._thread = new Thread(this, "AuditLogWriter");
+      this._thread.setDaemon(true);
+      this._thread.start();
+   }
+
+   /**
+    * Creates a writer configured by the hotel.audit.* system properties:
+    * durability (SYNC or GROUP_COMMIT, default GROUP_COMMIT), queue (10000),
+    * batch (500), flushMillis (100) and offerMillis (1000).
+    */
+   public static AuditLogWriter fromSystemProperties(ConnectionPool pool, RoomCatalog rooms, Metrics metrics) {
+      return new AuditLogWriter(pool, rooms, metrics,
+         Durability.valueOf(System.getProperty("hotel.audit.durability", "GROUP_COMMIT").toUpperCase()),
+         Integer.getInteger("hotel.audit.queue", 10000),
+         Integer.getInteger("hotel.audit.batch", 500),
+         Long.getLong("hotel.audit.flushMillis", 100L),
+         Long.getLong("hotel.audit.offerMillis", 1000L));
+   }
+
+   /**
+    * Queues a change of a room and its log record.
+    *
+    * @param managerID the user who made the change
+    * @param hotelID the hotel
+    * @param roomNumber the room
+    * @param price the new price
+    * @param imageURL the new image url, or null to keep the current one
+    * @return with SYNC, whether the room existed; with GROUP_COMMIT, always true
+    * @throws java.sql.SQLException when the queue stays full, the writer is closed,
+    *         or with SYNC when the change failed
+    */
+   public boolean submit(int managerID, int hotelID, int roomNumber, int price, String imageURL) throws SQLException {
+      if (this._closed)
+         throw new SQLException("The audit log writer is closed.");
+      Change change = new Change(managerID, hotelID, roomNumber, price, imageURL, this._durability == Durability.SYNC);
+      try {
+         if (!this._queue.offer(change, this._offerMillis, TimeUnit.MILLISECONDS)) {
+            this._rejected.incrementAndGet();
+            throw new SQLException("The audit log queue is full, try again later.");
+         }
+         this._submitted.incrementAndGet();
+         if (change.done == null)
+            return true;
+         change.done.await();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while waiting for the audit log writer.");
+      }
+      if (change.error != null)
+         throw change.error;
+      return change.applied;
+   }//end submit
+
+   /**
+    * Waits until every change submitted before the call is committed or dropped.
+    *
+    * @throws InterruptedException when interrupted while waiting
+    */
+   public void flush() throws InterruptedException {
+      long target = this._submitted.get();
+      synchronized (this) {
+         while (this._completed < target)
+            wait();
+      }
+   }
+
+   /**
+    * Writes the changes still queued and stops the thread. Later calls to
+    * submit() fail.
+    */
+   public void close() {
+      this._closed = true;
+      try {
+         this._thread.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   public void run() {
+      List<Change> batch = new ArrayList<Change>(this._batchSize);
+      while (true) {
+         Change first;
+         try {
+            first = this._queue.poll(this._flushMillis, TimeUnit.MILLISECONDS);
+         } catch (InterruptedException e) {
+            first = null;
+         }
+         if (first == null) {
+            // submit() may have queued a change just before close()
+            if (this._closed && this._queue.isEmpty())
+               return;
+            continue;
+         }
+         batch.add(first);
+         this._queue.drainTo(batch, this._batchSize - 1);
+         write(batch);
+         batch.clear();
+      }
+   }//end run
+
+   private void write(List<Change> batch) {
+      try {
+         commit(batch);
+      } catch (SQLException e) {
+         if (batch.size() == 1) {
+            batch.get(0).error = e;
+         } else {
+            // find the changes that failed the batch
+            for (Change change : batch) {
+               try {
+                  commit(Collections.singletonList(change));
+               } catch (SQLException e1) {
+                  change.error = e1;
+               }
+            }
+         }
+      }
+
+      long now = System.nanoTime();
+      for (Change change : batch) {
+         if (change.error != null) {
+            this._failed.incrementAndGet();
+            if (change.done == null)
+               System.err.println("Audit log: dropped change of room " + change.roomNumber +
+                                  " in hotel " + change.hotelID + ": " + change.error.getMessage());
+         } else {
+            this._written.incrementAndGet();
+            this._lag.record(now - change.queuedAt);
+            if (this._rooms != null)
+               this._rooms.invalidate(change.hotelID);
+         }
+         if (change.done != null)
+            change.done.countDown();
+      }
+      synchronized (this) {
+         this._completed += batch.size();
+         notifyAll();
+      }
+   }//end write
+
+   // applies the changes in one transaction
+   private void commit(List<Change> batch) throws SQLException {
+      Connection conn = this._pool.borrow();
+      try {
+         StatementCache cache = this._pool.statementCache(conn);
+         conn.setAutoCommit(false);
+         if (this._durability == Durability.GROUP_COMMIT)
+            cache.prepare("SET LOCAL synchronous_commit TO off").execute();
+
+         long start = System.nanoTime();
+         PreparedStatement stmt = cache.prepare(Hotel.UPDATE_ROOM_QUERY);
+         for (Change c : batch) {
+            StatementCache.bind(stmt, c.price, c.imageURL, c.hotelID, c.roomNumber, c.managerID, c.updatedOn);
+            stmt.addBatch();
+         }
+         int[] counts = stmt.executeBatch();
+         conn.commit();
+         this._batches.incrementAndGet();
+         this._metrics.sql(Hotel.UPDATE_ROOM_QUERY).addRows(counts.length);
+         this._metrics.sql(Hotel.UPDATE_ROOM_QUERY).record(System.nanoTime() - start, true);
+         for (int k = 0; k < counts.length; k++)
+            batch.get(k).applied = counts[k] > 0 || counts[k] == Statement.SUCCESS_NO_INFO;
+      } catch (SQLException e) {
+         conn.rollback();
+         throw e;
+      } finally {
+         this._pool.release(conn);
+      }
+   }//end commit
+
+   public Durability getDurability() { return this._durability; }
+
+   public int getQueueSize() { return this._queue.size(); }
+
+   public long getSubmitted() { return this._submitted.get(); }
+
+   public long getRejected() { return this._rejected.get(); }
+
+   public long getWritten() { return this._written.get(); }
+
+   public long getFailed() { return this._failed.get(); }
+
+   public long getBatches() { return this._batches.get(); }
+
+   /**
+    * @return the time from submit() to commit of the changes written, in nanoseconds
+    */
+   public LatencyHistogram getLag() { return this._lag; }
+
+   /**
+    * @return a one line summary of the counters
+    */
+   public String stats() {
+      return String.format("audit log: %s queued=%d submitted=%d written=%d failed=%d rejected=%d batches=%d " +
+         "lag p99=%.1fms max=%.1fms",
+         this._durability, getQueueSize(), getSubmitted(), getWritten(), getFailed(), getRejected(), getBatches(),
+         this._lag.getValueAtPercentile(99) / 1e6, this._lag.getMaxNanos() / 1e6);
+   }
+
+}//end AuditLogWriter
@@ -0,0 +1,36 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.time.LocalDate;
+
+/**
+ * One room-night of a batch reservation.
+ *
+ */
+public class BookingRequest {
+
+   public final int hotelID;
+   public final int roomNumber;
+   public final LocalDate date;
+
+   public BookingRequest(int hotelID, int roomNumber, LocalDate date) {
+      this.hotelID = hotelID;
+      this.roomNumber = roomNumber;
+      this.date = date;
+   }
+
+   public String toString() {
+      return "(" + this.hotelID + ", " + this.roomNumber + ", " + this.date + ")";
+   }
+
+}//end BookingRequest
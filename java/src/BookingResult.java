@@ -0,0 +1,36 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+/**
+ * Outcome of a single room-night or stay booking attempt.
+ *
+ */
+public enum BookingResult {
+
+   // the booking or stay row was inserted
+   BOOKED,
+
+   // the room is already booked that day (or one night of the stay); another date or room may succeed
+   CONFLICT,
+
+   // the hotel has no room with that number
+   NO_SUCH_ROOM;
+
+   /**
+    * @return true when the same request could succeed for another date or room
+    */
+   public boolean isRetryable() {
+      return this == CONFLICT;
+   }
+
+}//end BookingResult
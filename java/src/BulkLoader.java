@@ -0,0 +1,579 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads the CSV files of the data directory into freshly created tables.
+ *
+ * A table is loaded as soon as the tables it references are complete, so
+ * independent tables (Users and MaintenanceCompany, RoomBookings and
+ * RoomRepairs, ...) load at the same time on separate connections. Files
+ * with more than load.chunkRows rows are split into chunks that are copied
+ * concurrently. The indexes of create_indexes.sql are built after the
+ * load, in parallel, then the serial sequences are moved past the loaded
+ * ids and the tables are analyzed.
+ *
+ * Rows are sent with the driver's CopyManager when the driver has one.
+ * Older drivers (pg73jdbc3) have no COPY API; the chunks are then read by
+ * the server with COPY FROM '<file>', which requires the files to be on
+ * the database host and the user to be allowed to read server files. The
+ * chunks are therefore written next to the data files by default: a
+ * private /tmp of the server (systemd PrivateTmp) or a remote server would
+ * not see a local temporary directory. The loader checks that the server
+ * reads both directories before it copies anything.
+ *
+ * Each copy runs in its own transaction with synchronous_commit off. A
+ * file that lacks columns filled from other tables, such as the price of
+ * a booking, is copied into a temporary table first and moved in by an
+ * INSERT ... SELECT in the same transaction.
+ *
+ * Options (system properties):
+ *    load.threads     concurrent connections (default: number of cores)
+ *    load.chunkRows   rows per chunk (default 1000000)
+ *    load.chunkDir    where chunks are written (default: dataDir/chunks)
+ *
+ * Usage: java BulkLoader dbname port user dataDir [create_indexes.sql]
+ *
+ */
+public class BulkLoader {
+
+   static final int THREADS = Integer.getInteger("load.threads", Runtime.getRuntime().availableProcessors());
+   static final int CHUNK_ROWS = Integer.getInteger("load.chunkRows", 1000000);
+
+   /*
+    * A table, the CSV file it is loaded from and the tables it references.
+    */
+   static class Table {
+      final String name;
+      final String file;
+      final String[] parents;
+      final String sequence;
+      final String idColumn;
+      // the columns of the file when the table has more, else null
+      String columns;
+      // the INSERT ... SELECT that moves the rows of the file in from staged_rows, else null
+      String insert;
+
+      final List<Table> children = new ArrayList<Table>();
+      final AtomicInteger pendingParents = new AtomicInteger();
+      final AtomicInteger pendingChunks = new AtomicInteger();
+      final AtomicLong rows = new AtomicLong();
+      volatile long startNanos;
+      volatile long endNanos;
+
+      Table(String name, String file, String sequence, String idColumn, String... parents) {
+         this.name = name;
+         this.file = file;
+         this.parents = parents;
+         this.sequence = sequence;
+         this.idColumn = idColumn;
+      }
+
+      Table columns(String columns) {
+         this.columns = columns;
+         return this;
+      }
+
+      Table insert(String insert) {
+         this.insert = insert;
+         return this;
+      }
+
+      // the target of a COPY of the file
+      String target() {
+         if (this.insert != null)
+            return "staged_rows";
+         return this.columns == null ? this.name : this.name + "(" + this.columns + ")";
+      }
+   }//end Table
+
+   /**
+    * @return the tables of create_tables.sql in the order of load_data.sql
+    */
+   static List<Table> schema() {
+      return Arrays.asList(
+         new Table("Users", "users.csv", "users_userID_seq", "userID"),
+         new Table("Hotel", "hotels.csv", null, null, "Users"),
+         new Table("Rooms", "rooms.csv", null, null, "Hotel"),
+         new Table("MaintenanceCompany", "company.csv", null, null),
+         new Table("RoomBookings", "bookings.csv", "RoomBookings_bookingID_seq", "bookingID", "Users", "Rooms")
+            .columns("bookingID, customerID, hotelID, roomNumber, bookingDate")
+            // bookings.csv has no price: a loaded booking is charged the room's price
+            .insert("INSERT INTO RoomBookings(bookingID, customerID, hotelID, roomNumber, bookingDate, price) "
+               + "SELECT L.bookingID, L.customerID, L.hotelID, L.roomNumber, L.bookingDate, R.price "
+               + "FROM staged_rows L LEFT JOIN Rooms R ON R.hotelID = L.hotelID AND R.roomNumber = L.roomNumber"),
+         new Table("RoomRepairs", "roomRepairs.csv", "roomRepairs_repairID_seq", "repairID", "MaintenanceCompany", "Rooms"),
+         new Table("RoomRepairRequests", "roomRepairRequests.csv", "roomRepairRequests_requestNumber_seq", "requestNumber", "Users", "RoomRepairs"),
+         new Table("RoomUpdatesLog", "roomUpdatesLog.csv", "roomUpdatesLog_updateNumber_seq", "updateNumber", "Users", "Rooms"));
+   }
+
+   private final ConnectionPool _pool;
+   private final File _dataDir;
+   private final File _chunkDir;
+   private final ExecutorService _executor;
+   private final boolean _copyManager;
+
+   private final AtomicReference<Throwable> _failure = new AtomicReference<Throwable>();
+   private final AtomicInteger _pendingTables = new AtomicInteger();
+   private final CountDownLatch _finished = new CountDownLatch(1);
+
+   /**
+    * Creates a loader.
+    *
+    * @param pool where the connections come from, one per concurrent copy
+    * @param dataDir the directory with the CSV files
+    * @param chunkDir where split files are written
+    * @param threads the number of concurrent copies
+    */
+   public BulkLoader(ConnectionPool pool, File dataDir, File chunkDir, int threads) {
+      this._pool = pool;
+      this._dataDir = dataDir.getAbsoluteFile();
+      this._chunkDir = chunkDir.getAbsoluteFile();
+      this._executor = Executors.newFixedThreadPool(threads);
+      this._copyManager = hasCopyManager();
+   }
+
+   /**
+    * Loads every table, parents before children.
+    *
+    * @param tables the tables to load
+    * @throws java.sql.SQLException when a copy fails; the other copies are stopped
+    * @throws java.lang.InterruptedException when interrupted while waiting
+    */
+   public void load(List<Table> tables) throws SQLException, InterruptedException {
+      Map<String, Table> byName = new LinkedHashMap<String, Table>();
+      for (Table t : tables)
+         byName.put(t.name, t);
+      for (Table t : tables) {
+         for (String parent : t.parents) {
+            Table p = byName.get(parent);
+            if (p == null)
+               throw new IllegalArgumentException(t.name + " references unknown table " + parent);
+            p.children.add(t);
+            t.pendingParents.incrementAndGet();
+         }
+      }
+
+      this._pendingTables.set(tables.size());
+      for (Table t : tables) {
+         if (t.parents.length == 0)
+            schedule(t);
+      }
+      try {
+         this._finished.await();
+      } finally {
+         this._executor.shutdownNow();
+         this._executor.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      rethrow();
+   }//end load
+
+   // splits the file of a table that became ready and queues its chunks
+   private void schedule(final Table table) {
+      submit(new Task() {
+         public void run() throws Exception {
+            table.startNanos = System.nanoTime();
+            final File source = new File(BulkLoader.this._dataDir, table.file);
+            List<File> chunks = split(source);
+            table.pendingChunks.set(chunks.size());
+            for (final File chunk : chunks) {
+               submit(new Task() {
+                  public void run() throws Exception {
+                     table.rows.addAndGet(copy(table, chunk));
+                     if (!chunk.equals(source))
+                        chunk.delete();
+                     if (table.pendingChunks.decrementAndGet() == 0)
+                        complete(table);
+                  }
+               });
+            }
+         }
+      });
+   }
+
+   private void complete(Table table) {
+      table.endNanos = System.nanoTime();
+      System.out.println(String.format("%-20s %10d rows %8.1f s",
+         table.name, table.rows.get(), (table.endNanos - table.startNanos) / 1e9));
+      for (Table child : table.children) {
+         if (child.pendingParents.decrementAndGet() == 0)
+            schedule(child);
+      }
+      if (this._pendingTables.decrementAndGet() == 0)
+         this._finished.countDown();
+   }
+
+   /*
+    * A unit of work that may fail; the first failure stops the load.
+    */
+   private interface Task {
+      void run() throws Exception;
+   }
+
+   private void submit(final Task task) {
+      if (this._failure.get() != null)
+         return;
+      this._executor.execute(new Runnable() {
+         public void run() {
+            if (BulkLoader.this._failure.get() != null)
+               return;
+            try {
+               task.run();
+            } catch (Throwable e) {
+               if (BulkLoader.this._failure.compareAndSet(null, e))
+                  BulkLoader.this._finished.countDown();
+            }
+         }
+      });
+   }
+
+   private void rethrow() throws SQLException {
+      Throwable e = this._failure.get();
+      if (e == null)
+         return;
+      if (e instanceof SQLException)
+         throw (SQLException) e;
+      throw new SQLException(e.toString(), e);
+   }
+
+   /**
+    * Splits a CSV file into files of at most CHUNK_ROWS rows, each with the
+    * header line. A file that needs no split is returned as is.
+    *
+    * @param file the CSV file with a header line
+    * @return the files to copy
+    * @throws java.io.IOException when reading or writing fails
+    */
+   List<File> split(File file) throws IOException {
+      List<File> chunks = new ArrayList<File>();
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+      try {
+         String header = in.readLine();
+         String line = in.readLine();
+         if (header == null || line == null) {
+            chunks.add(file);
+            return chunks;
+         }
+         Writer out = null;
+         File chunk = null;
+         int rows = 0;
+         try {
+            for (; line != null; line = in.readLine()) {
+               if (out == null) {
+                  chunk = new File(this._chunkDir, file.getName() + "." + chunks.size());
+                  out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(chunk), StandardCharsets.UTF_8), 1 << 16);
+                  out.write(header);
+                  out.write('\n');
+                  chunks.add(chunk);
+               }
+               out.write(line);
+               out.write('\n');
+               if (++rows == CHUNK_ROWS) {
+                  out.close();
+                  out = null;
+                  rows = 0;
+               }
+            }
+         } finally {
+            if (out != null)
+               out.close();
+         }
+      } finally {
+         in.close();
+      }
+
+      if (chunks.size() == 1) {
+         chunks.get(0).delete();
+         chunks.set(0, file);
+      }
+      // the server reads the chunks with its own account
+      for (File c : chunks)
+         c.setReadable(true, false);
+      return chunks;
+   }//end split
+
+   /**
+    * Copies one CSV file into a table on a pooled connection.
+    *
+    * @param table the table the file is loaded into
+    * @param file a CSV file with a header line
+    * @return the number of rows copied
+    * @throws java.lang.Exception when the copy fails
+    */
+   long copy(Table table, File file) throws Exception {
+      Connection conn = this._pool.borrow();
+      try {
+         conn.setAutoCommit(false);
+         Statement stmt = conn.createStatement();
+         try {
+            // a lost load is simply repeated, so there is no need to wait for the WAL flush;
+            // SET LOCAL ends with the transaction, so the pooled connection is not left changed
+            stmt.execute("SET LOCAL synchronous_commit TO off");
+            // WITH NO DATA takes the columns but not their NOT NULL constraints
+            if (table.insert != null)
+               stmt.execute("CREATE TEMP TABLE staged_rows ON COMMIT DROP AS SELECT " + table.columns
+                  + " FROM " + table.name + " WITH NO DATA");
+            String target = table.target();
+            long rows;
+            if (this._copyManager) {
+               rows = copyIn(conn, "COPY " + target + " FROM STDIN WITH DELIMITER ',' CSV HEADER", file);
+            } else {
+               stmt.executeUpdate("COPY " + target + " FROM " + literal(file) + " WITH DELIMITER ',' CSV HEADER");
+               rows = countRows(file);
+            }
+            if (table.insert != null)
+               rows = stmt.executeUpdate(table.insert);
+            conn.commit();
+            return rows;
+         } finally {
+            stmt.close();
+         }
+      } catch (SQLException e) {
+         throw new SQLException(table.name + " from " + file + ": " + e.getMessage(), e.getSQLState(), e);
+      } finally {
+         // rolls back a failed copy
+         this._pool.release(conn);
+      }
+   }//end copy
+
+   /**
+    * Checks that the server can read the data and chunk directories, when
+    * it reads the files itself (no CopyManager): a server with its own
+    * /tmp or on another host would otherwise fail in the middle of the load.
+    *
+    * @throws java.sql.SQLException naming the directory the server cannot read
+    * @throws java.io.IOException when the probe file cannot be written
+    */
+   public void checkServerAccess() throws SQLException, IOException {
+      if (this._copyManager)
+         return;
+      for (File dir : new File[] { this._dataDir, this._chunkDir }) {
+         File probe = new File(dir, ".bulkload-probe");
+         Writer out = new OutputStreamWriter(new FileOutputStream(probe), StandardCharsets.UTF_8);
+         try {
+            out.write("probe\n");
+         } finally {
+            out.close();
+         }
+         probe.setReadable(true, false);
+         Connection conn = this._pool.borrow();
+         try {
+            conn.setAutoCommit(false);
+            Statement stmt = conn.createStatement();
+            try {
+               stmt.execute("CREATE TEMP TABLE bulkload_probe (line text) ON COMMIT DROP");
+               stmt.executeUpdate("COPY bulkload_probe FROM " + literal(probe));
+            } finally {
+               stmt.close();
+            }
+         } catch (SQLException e) {
+            throw new SQLException("The database server cannot read " + dir + " (" + e.getMessage().trim() + "). "
+               + "Without CopyManager in the driver the server reads the CSV files itself, so the data and "
+               + "load.chunkDir must be on the database host and outside a private /tmp of the server.",
+               e.getSQLState(), e);
+         } finally {
+            this._pool.release(conn);
+            probe.delete();
+         }
+      }
+   }//end checkServerAccess
+
+   private static String literal(File file) {
+      return "'" + file.getPath().replace("'", "''") + "'";
+   }
+
+   // ((PGConnection) conn).getCopyAPI().copyIn(sql, reader), for drivers that have it
+   private static long copyIn(Connection conn, String sql, File file) throws Exception {
+      Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+      try {
+         Object api = Class.forName("org.postgresql.PGConnection").getMethod("getCopyAPI").invoke(conn);
+         Method copyIn = api.getClass().getMethod("copyIn", String.class, Reader.class);
+         return ((Number) copyIn.invoke(api, sql, reader)).longValue();
+      } catch (InvocationTargetException e) {
+         throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      } finally {
+         reader.close();
+      }
+   }
+
+   private static boolean hasCopyManager() {
+      try {
+         Class.forName("org.postgresql.copy.CopyManager");
+         return true;
+      } catch (ClassNotFoundException e) {
+         return false;
+      }
+   }
+
+   private static long countRows(File file) throws IOException {
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+      try {
+         long rows = -1; // the header
+         while (in.readLine() != null)
+            rows++;
+         return Math.max(0, rows);
+      } finally {
+         in.close();
+      }
+   }
+
+   /**
+    * Runs the statements of an SQL file concurrently, one per connection.
+    * The statements must be independent and must not contain semicolons
+    * other than the one ending them; '--' comments are skipped.
+    *
+    * @param script the SQL file, e.g. create_indexes.sql
+    * @throws java.sql.SQLException when a statement fails
+    * @throws java.io.IOException when the file cannot be read
+    * @throws java.lang.InterruptedException when interrupted while waiting
+    */
+   public void runParallel(File script) throws SQLException, IOException, InterruptedException {
+      StringBuilder sql = new StringBuilder();
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(script), StandardCharsets.UTF_8));
+      try {
+         for (String line = in.readLine(); line != null; line = in.readLine()) {
+            if (!line.trim().startsWith("--"))
+               sql.append(line).append('\n');
+         }
+      } finally {
+         in.close();
+      }
+      List<String> statements = new ArrayList<String>();
+      for (String s : sql.toString().split(";")) {
+         if (!s.trim().isEmpty())
+            statements.add(s.trim());
+      }
+      runParallel(statements);
+   }
+
+   /**
+    * Moves every serial sequence past the largest loaded id and analyzes
+    * the tables, concurrently.
+    *
+    * @param tables the loaded tables
+    * @throws java.sql.SQLException when a statement fails
+    * @throws java.lang.InterruptedException when interrupted while waiting
+    */
+   public void finish(List<Table> tables) throws SQLException, InterruptedException {
+      List<String> statements = new ArrayList<String>();
+      for (Table t : tables) {
+         if (t.sequence != null)
+            statements.add("SELECT setval('" + t.sequence + "', (SELECT COALESCE(max(" + t.idColumn + "), 1) FROM " + t.name + "))");
+         statements.add("ANALYZE " + t.name);
+      }
+      runParallel(statements);
+   }
+
+   private void runParallel(List<String> statements) throws SQLException, InterruptedException {
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(THREADS, statements.size())));
+      final AtomicReference<SQLException> failure = new AtomicReference<SQLException>();
+      for (final String sql : statements) {
+         executor.execute(new Runnable() {
+            public void run() {
+               long start = System.nanoTime();
+               try {
+                  Connection conn = BulkLoader.this._pool.borrow();
+                  try {
+                     Statement stmt = conn.createStatement();
+                     try {
+                        stmt.execute(sql);
+                     } finally {
+                        stmt.close();
+                     }
+                  } finally {
+                     BulkLoader.this._pool.release(conn);
+                  }
+                  System.out.println(String.format("%8.1f s  %s",
+                     (System.nanoTime() - start) / 1e9, sql.replaceAll("\\s+", " ")));
+               } catch (SQLException e) {
+                  failure.compareAndSet(null, new SQLException(sql + ": " + e.getMessage(), e.getSQLState(), e));
+               }
+            }
+         });
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      if (failure.get() != null)
+         throw failure.get();
+   }//end runParallel
+
+   public static void main(String[] args) {
+      if (args.length < 4) {
+         System.err.println("Usage: java BulkLoader <dbname> <port> <user> <dataDir> [create_indexes.sql]");
+         return;
+      }
+      ConnectionPool pool = null;
+      int status = 0;
+      try {
+         Class.forName("org.postgresql.Driver");
+         String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+         pool = new ConnectionPool(url, args[2], "", 0, THREADS, 60000L, 60000L, 1);
+
+         File dataDir = new File(args[3]);
+         File chunkDir = new File(System.getProperty("load.chunkDir", new File(dataDir, "chunks").getPath()));
+         if (!chunkDir.isDirectory() && !chunkDir.mkdirs())
+            throw new IOException("Unable to create " + chunkDir);
+         // the server reads the chunks with its own account
+         chunkDir.setReadable(true, false);
+         chunkDir.setExecutable(true, false);
+
+         BulkLoader loader = new BulkLoader(pool, dataDir, chunkDir, THREADS);
+         System.out.println("Loading " + args[3] + " with " + THREADS + " connections, "
+            + (loader._copyManager ? "CopyManager" : "server-side COPY"));
+         loader.checkServerAccess();
+         long start = System.nanoTime();
+         List<Table> tables = schema();
+         loader.load(tables);
+         if (args.length > 4)
+            loader.runParallel(new File(args[4]));
+         loader.finish(tables);
+         System.out.println(String.format("Done in %.1f s", (System.nanoTime() - start) / 1e9));
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         status = 1;
+      } finally {
+         if (pool != null)
+            pool.close();
+      }
+      System.exit(status);
+   }//end main
+
+}//end BulkLoader
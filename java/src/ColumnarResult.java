@@ -0,0 +1,431 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A query result stored column by column with primitive types.
+ *
+ * Integer columns are kept in int[] (or long[] for bigint), dates as epoch
+ * days and timestamps as epoch milliseconds in long[], decimals in double[],
+ * and character columns dictionary encoded as int codes into a table of
+ * distinct strings. Nulls are tracked in one bitset per column. Compared to
+ * List<List<String>> there is no object per cell or per row, numbers are
+ * never re-parsed, and a scan over one column reads one contiguous array.
+ *
+ * Rows are addressed by index, or walked with a Cursor.
+ *
+ */
+public class ColumnarResult {
+
+   /*
+    * Physical representation of a column.
+    */
+   public enum Kind {
+      INT,       // int[]
+      LONG,      // long[]
+      DATE,      // long[], epoch day
+      TIMESTAMP, // long[], epoch milliseconds
+      DOUBLE,    // double[]
+      BOOLEAN,   // int[], 0 or 1
+      STRING     // int[] codes into a dictionary
+   }
+
+   private final String[] _labels;
+   private final Kind[] _kinds;
+   private final int[] _scales;
+
+   // exactly one of these is set per column, depending on its kind
+   private final int[][] _ints;
+   private final long[][] _longs;
+   private final double[][] _doubles;
+
+   // dictionaries of the STRING columns
+   private final List<List<String>> _dictionaries;
+   private final List<Map<String, Integer>> _dictionaryIndexes;
+
+   private final BitSet[] _nulls;
+
+   private int _rows = 0;
+   private int _capacity;
+
+   private ColumnarResult(String[] labels, Kind[] kinds, int[] scales, int capacity) {
+      int cols = labels.length;
+      this._labels = labels;
+      this._kinds = kinds;
+      this._scales = scales;
+      this._capacity = Math.max(16, capacity);
+      this._ints = new int[cols][];
+      this._longs = new long[cols][];
+      this._doubles = new double[cols][];
+      this._nulls = new BitSet[cols];
+      this._dictionaries = new ArrayList<List<String>>(cols);
+      this._dictionaryIndexes = new ArrayList<Map<String, Integer>>(cols);
+      for (int c = 0; c < cols; c++) {
+         switch (kinds[c]) {
+            case INT: case BOOLEAN: case STRING:
+               this._ints[c] = new int[this._capacity]; break;
+            case LONG: case DATE: case TIMESTAMP:
+               this._longs[c] = new long[this._capacity]; break;
+            case DOUBLE:
+               this._doubles[c] = new double[this._capacity]; break;
+         }
+         this._nulls[c] = new BitSet();
+         boolean dict = kinds[c] == Kind.STRING;
+         this._dictionaries.add(dict ? new ArrayList<String>() : null);
+         this._dictionaryIndexes.add(dict ? new HashMap<String, Integer>() : null);
+      }
+   }//end ColumnarResult
+
+   /**
+    * Reads every remaining row of a result set.
+    *
+    * @param rs the result set; it is not closed
+    * @return the columnar copy of the rows
+    * @throws java.sql.SQLException when reading fails
+    */
+   public static ColumnarResult from(ResultSet rs) throws SQLException {
+      ResultSetMetaData meta = rs.getMetaData();
+      int cols = meta.getColumnCount();
+      String[] labels = new String[cols];
+      Kind[] kinds = new Kind[cols];
+      int[] scales = new int[cols];
+      for (int c = 0; c < cols; c++) {
+         labels[c] = meta.getColumnLabel(c + 1);
+         kinds[c] = kindOf(meta.getColumnType(c + 1));
+         scales[c] = kinds[c] == Kind.DOUBLE ? meta.getScale(c + 1) : 0;
+      }
+
+      ColumnarResult result = new ColumnarResult(labels, kinds, scales, 16);
+      while (rs.next()) {
+         result.ensureCapacity(result._rows + 1);
+         int r = result._rows;
+         for (int c = 0; c < cols; c++) {
+            int idx = c + 1;
+            switch (kinds[c]) {
+               case INT:
+                  result._ints[c][r] = rs.getInt(idx);
+                  break;
+               case BOOLEAN:
+                  result._ints[c][r] = rs.getBoolean(idx) ? 1 : 0;
+                  break;
+               case LONG:
+                  result._longs[c][r] = rs.getLong(idx);
+                  break;
+               case DATE: {
+                  Date d = rs.getDate(idx);
+                  if (d != null)
+                     result._longs[c][r] = d.toLocalDate().toEpochDay();
+                  break;
+               }
+               case TIMESTAMP: {
+                  Timestamp t = rs.getTimestamp(idx);
+                  if (t != null)
+                     result._longs[c][r] = t.getTime();
+                  break;
+               }
+               case DOUBLE:
+                  result._doubles[c][r] = rs.getDouble(idx);
+                  break;
+               case STRING:
+                  result._ints[c][r] = result.encode(c, rs.getString(idx));
+                  break;
+            }
+            if (rs.wasNull())
+               result._nulls[c].set(r);
+         }
+         result._rows++;
+      }//end while
+      return result;
+   }//end from
+
+   /*
+    * Builds a result from values already in memory, e.g. rows answered from
+    * an index, so they can be handled like query results.
+    */
+   public static class Builder {
+      private final ColumnarResult _result;
+
+      /**
+       * @param labels the column labels
+       * @param kinds the column kinds, one per label
+       */
+      public Builder(String[] labels, Kind[] kinds) {
+         this._result = new ColumnarResult(labels.clone(), kinds.clone(), new int[labels.length], 16);
+      }
+
+      /**
+       * Appends a row. Values are Integer, Long, Double, Boolean, LocalDate,
+       * java.util.Date or String according to the column kind, or null.
+       *
+       * @param values the row values, one per column
+       * @return this builder
+       */
+      public Builder add(Object... values) {
+         ColumnarResult result = this._result;
+         result.ensureCapacity(result._rows + 1);
+         int r = result._rows;
+         for (int c = 0; c < result._labels.length; c++) {
+            Object v = values[c];
+            if (v == null) {
+               result._nulls[c].set(r);
+               if (result._kinds[c] == Kind.STRING)
+                  result._ints[c][r] = -1;
+               continue;
+            }
+            switch (result._kinds[c]) {
+               case INT:
+                  result._ints[c][r] = ((Number) v).intValue(); break;
+               case BOOLEAN:
+                  result._ints[c][r] = ((Boolean) v) ? 1 : 0; break;
+               case LONG:
+                  result._longs[c][r] = ((Number) v).longValue(); break;
+               case DATE:
+                  result._longs[c][r] = v instanceof Date ? ((Date) v).toLocalDate().toEpochDay() : ((LocalDate) v).toEpochDay();
+                  break;
+               case TIMESTAMP:
+                  result._longs[c][r] = ((java.util.Date) v).getTime(); break;
+               case DOUBLE:
+                  result._doubles[c][r] = ((Number) v).doubleValue(); break;
+               case STRING:
+                  result._ints[c][r] = result.encode(c, v.toString()); break;
+            }
+         }
+         result._rows++;
+         return this;
+      }
+
+      /**
+       * @return the result; the builder must not be used afterwards
+       */
+      public ColumnarResult build() {
+         return this._result;
+      }
+   }//end Builder
+
+   private static Kind kindOf(int sqlType) {
+      switch (sqlType) {
+         case Types.INTEGER: case Types.SMALLINT: case Types.TINYINT:
+            return Kind.INT;
+         case Types.BIGINT:
+            return Kind.LONG;
+         case Types.DATE:
+            return Kind.DATE;
+         case Types.TIMESTAMP:
+            return Kind.TIMESTAMP;
+         case Types.NUMERIC: case Types.DECIMAL: case Types.DOUBLE: case Types.FLOAT: case Types.REAL:
+            return Kind.DOUBLE;
+         case Types.BOOLEAN: case Types.BIT:
+            return Kind.BOOLEAN;
+         default:
+            return Kind.STRING;
+      }
+   }
+
+   private int encode(int c, String value) {
+      if (value == null)
+         return -1;
+      Map<String, Integer> index = this._dictionaryIndexes.get(c);
+      Integer code = index.get(value);
+      if (code == null) {
+         List<String> dict = this._dictionaries.get(c);
+         code = dict.size();
+         dict.add(value);
+         index.put(value, code);
+      }
+      return code;
+   }
+
+   private void ensureCapacity(int rows) {
+      if (rows <= this._capacity)
+         return;
+      int cap = Math.max(rows, this._capacity * 2);
+      for (int c = 0; c < this._labels.length; c++) {
+         if (this._ints[c] != null) this._ints[c] = Arrays.copyOf(this._ints[c], cap);
+         if (this._longs[c] != null) this._longs[c] = Arrays.copyOf(this._longs[c], cap);
+         if (this._doubles[c] != null) this._doubles[c] = Arrays.copyOf(this._doubles[c], cap);
+      }
+      this._capacity = cap;
+   }
+
+   public int getRowCount() { return this._rows; }
+
+   /**
+    * Keeps only the first rows, e.g. to drop a look-ahead row.
+    *
+    * @param rows the number of rows to keep
+    */
+   void truncate(int rows) {
+      if (rows < this._rows)
+         this._rows = Math.max(0, rows);
+   }
+
+   public int getColumnCount() { return this._labels.length; }
+
+   public String getColumnLabel(int col) { return this._labels[col]; }
+
+   public Kind getColumnKind(int col) { return this._kinds[col]; }
+
+   /**
+    * @return the column labels, in order
+    */
+   public String[] getColumnLabels() { return this._labels.clone(); }
+
+   public boolean isNull(int row, int col) { return this._nulls[col].get(row); }
+
+   /**
+    * @return the value of an INT, BOOLEAN or STRING (its dictionary code) column
+    */
+   public int getInt(int row, int col) { return this._ints[col][row]; }
+
+   /**
+    * @return the value of a LONG, DATE (epoch day) or TIMESTAMP (epoch ms) column
+    */
+   public long getLong(int row, int col) { return this._longs[col][row]; }
+
+   public double getDouble(int row, int col) { return this._doubles[col][row]; }
+
+   public boolean getBoolean(int row, int col) { return this._ints[col][row] != 0; }
+
+   /**
+    * @return the value of a DATE column, or null
+    */
+   public LocalDate getDate(int row, int col) {
+      return isNull(row, col) ? null : LocalDate.ofEpochDay(this._longs[col][row]);
+   }
+
+   /**
+    * Returns any value in its text form, as ResultSet.getString() would.
+    *
+    * @param row the row index
+    * @param col the column index
+    * @return the value as text, or null
+    */
+   public String getString(int row, int col) {
+      if (isNull(row, col))
+         return null;
+      switch (this._kinds[col]) {
+         case INT:
+            return Integer.toString(this._ints[col][row]);
+         case BOOLEAN:
+            return this._ints[col][row] != 0 ? "t" : "f";
+         case LONG:
+            return Long.toString(this._longs[col][row]);
+         case DATE:
+            return LocalDate.ofEpochDay(this._longs[col][row]).toString();
+         case TIMESTAMP:
+            return new Timestamp(this._longs[col][row]).toString();
+         case DOUBLE: {
+            BigDecimal d = BigDecimal.valueOf(this._doubles[col][row]);
+            return this._scales[col] > 0 ? d.setScale(this._scales[col], RoundingMode.HALF_UP).toPlainString() : d.toPlainString();
+         }
+         default:
+            return this._dictionaries.get(col).get(this._ints[col][row]);
+      }
+   }//end getString
+
+   /**
+    * The backing array of an INT, BOOLEAN or STRING column; only the first
+    * getRowCount() entries are meaningful.
+    */
+   public int[] intColumn(int col) { return this._ints[col]; }
+
+   /**
+    * The backing array of a LONG, DATE or TIMESTAMP column; only the first
+    * getRowCount() entries are meaningful.
+    */
+   public long[] longColumn(int col) { return this._longs[col]; }
+
+   /**
+    * The backing array of a DOUBLE column; only the first getRowCount()
+    * entries are meaningful.
+    */
+   public double[] doubleColumn(int col) { return this._doubles[col]; }
+
+   /**
+    * @return the distinct values of a STRING column, indexed by code
+    */
+   public List<String> dictionary(int col) { return this._dictionaries.get(col); }
+
+   /**
+    * @param row the row index
+    * @return the row as text values, as used by the table printer
+    */
+   public String[] rowStrings(int row) {
+      String[] values = new String[this._labels.length];
+      for (int c = 0; c < values.length; c++)
+         values[c] = getString(row, c);
+      return values;
+   }
+
+   /**
+    * Converts to the row-oriented form returned by
+    * Hotel.executeQueryAndReturnResult(), for callers not yet migrated.
+    *
+    * @return a list of records, each a list of text values
+    */
+   public List<List<String>> toRows() {
+      List<List<String>> rows = new ArrayList<List<String>>(this._rows);
+      for (int r = 0; r < this._rows; r++)
+         rows.add(Arrays.asList(rowStrings(r)));
+      return rows;
+   }
+
+   /**
+    * @return a new cursor positioned before the first row
+    */
+   public Cursor cursor() {
+      return new Cursor();
+   }
+
+   /*
+    * Forward-only row view over the columns, in the style of a ResultSet
+    * but with zero-based column indexes.
+    */
+   public class Cursor {
+      private int _row = -1;
+
+      public boolean next() { return ++this._row < ColumnarResult.this._rows; }
+
+      public int getRow() { return this._row; }
+
+      public boolean isNull(int col) { return ColumnarResult.this.isNull(this._row, col); }
+
+      public int getInt(int col) { return ColumnarResult.this.getInt(this._row, col); }
+
+      public long getLong(int col) { return ColumnarResult.this.getLong(this._row, col); }
+
+      public double getDouble(int col) { return ColumnarResult.this.getDouble(this._row, col); }
+
+      public boolean getBoolean(int col) { return ColumnarResult.this.getBoolean(this._row, col); }
+
+      public LocalDate getDate(int col) { return ColumnarResult.this.getDate(this._row, col); }
+
+      public String getString(int col) { return ColumnarResult.this.getString(this._row, col); }
+   }//end Cursor
+
+}//end ColumnarResult
@@ -0,0 +1,420 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs Hotel operations read from a file or standard input, without the
+ * menu. One command per line, arguments separated by blanks, double quotes
+ * around arguments containing blanks, '#' starts a comment:
+ *
+ *    login <userID> <password>          logout
+ *    hotels <latitude> <longitude>      rooms <hotelID> <date>
+ *    book <hotelID> <roomNumber> <date> bookings [cursor]
+ *    free <hotelID> <checkIn> <checkOut>
+ *    stay <hotelID> <roomNumber> <checkIn> <checkOut>
+ *    update <hotelID> <roomNumber> <price> <imageURL>
+ *    prices <hotelID> <roomNumber> <price> [<roomNumber> <price> ...]
+ *    updates [cursor]                   history [cursor]
+ *    customers                          repair <hotelID> <roomNumber> <companyID>
+ *    repairs                            stats <hotelID> <from> <to> [daily|monthly]
+ *    repairmany <companyID> <hotelID> <roomNumber> [<hotelID> <roomNumber> ...]
+ *    refreshstats
+ *
+ * Dates are yyyy-mm-dd or mm/dd/yyyy. Each command prints one JSON object
+ * on standard out with its status (ok, denied or error), its latency in
+ * milliseconds and its result. A latency summary per command is printed on
+ * standard error at the end. With -Dhotel.commands.rows=false, results of
+ * queries are reported as row counts only. The history commands return one
+ * page and, in "next", the cursor that fetches the following page.
+ *
+ * Usage: java CommandRunner dbname port user [file]
+ *
+ */
+public class CommandRunner {
+
+   // print the rows of query results, or just their number
+   static final boolean PRINT_ROWS = Boolean.parseBoolean(System.getProperty("hotel.commands.rows", "true"));
+
+   private final Hotel _session;
+   private final PrintStream _out;
+
+   // latencies in nanoseconds per command, in order of first use
+   private final Map<String, long[]> _latencies = new LinkedHashMap<String, long[]>();
+   private final Map<String, Integer> _counts = new LinkedHashMap<String, Integer>();
+   private final Map<String, Integer> _failures = new LinkedHashMap<String, Integer>();
+
+   /**
+    * @param session the session the commands run in; login changes its user
+    * @param out where the results are written
+    */
+   public CommandRunner(Hotel session, PrintStream out) {
+      this._session = session;
+      this._out = out;
+   }
+
+   /**
+    * Runs every command of a reader.
+    *
+    * @param reader the commands, one per line
+    * @return the number of commands that did not succeed
+    * @throws java.io.IOException when reading fails
+    */
+   public int run(BufferedReader reader) throws IOException {
+      int failed = 0;
+      int lineNumber = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+         lineNumber++;
+         String trimmed = line.trim();
+         if (trimmed.isEmpty() || trimmed.startsWith("#"))
+            continue;
+         if (!execute(lineNumber, trimmed))
+            failed++;
+      }
+      this._out.flush();
+      return failed;
+   }//end run
+
+   /**
+    * Runs one command and writes its result.
+    *
+    * @param lineNumber reported with the result
+    * @param line the command
+    * @return true when the command succeeded
+    */
+   public boolean execute(int lineNumber, String line) {
+      String[] args;
+      try {
+         args = tokenize(line);
+      } catch (IllegalArgumentException e) {
+         this._out.println("{\"line\":" + lineNumber + ",\"status\":\"error\",\"error\":" + quote(e.getMessage()) + "}");
+         return false;
+      }
+      return "ok".equals(execute(lineNumber, args));
+   }
+
+   /**
+    * Runs one tokenized command and writes its result.
+    *
+    * @param lineNumber reported with the result
+    * @param args the command name, then its arguments
+    * @return the status written: ok, denied or error
+    */
+   String execute(int lineNumber, String[] args) {
+      String op = args[0].toLowerCase();
+      StringBuilder json = new StringBuilder(256);
+      json.append("{\"line\":").append(lineNumber).append(",\"op\":").append(quote(op));
+
+      String status = "ok";
+      String error = null;
+      Object result = null;
+      long start = System.nanoTime();
+      try {
+         result = dispatch(op, args);
+      } catch (PermissionDeniedException e) {
+         status = "denied";
+         error = e.getMessage();
+      } catch (Exception e) {
+         status = "error";
+         error = e.getMessage() == null ? e.toString() : e.getMessage();
+      }
+      long nanos = System.nanoTime() - start;
+      record(op, nanos, !"ok".equals(status));
+
+      json.append(",\"status\":").append(quote(status));
+      json.append(",\"millis\":").append(String.format("%.3f", nanos / 1e6));
+      if (error != null)
+         json.append(",\"error\":").append(quote(error));
+      else if (result != null)
+         appendResult(json, result);
+      json.append('}');
+      this._out.println(json);
+      return status;
+   }//end execute
+
+   // calls the Hotel operation named by the command
+   private Object dispatch(String op, String[] args) throws SQLException {
+      Hotel esql = this._session;
+      switch (op) {
+         case "login":
+            arity(args, 2);
+            return esql.logIn(Integer.parseInt(args[1]), args[2]);
+         case "logout":
+            arity(args, 0);
+            esql.logOut();
+            return null;
+         case "hotels":
+            arity(args, 2);
+            return esql.hotelsNearby(Double.parseDouble(args[1]), Double.parseDouble(args[2]));
+         case "rooms":
+            arity(args, 2);
+            return esql.roomsOn(Integer.parseInt(args[1]), date(args[2]));
+         case "book":
+            arity(args, 3);
+            loggedIn();
+            return esql.bookRoom(Integer.parseInt(args[1]), Integer.parseInt(args[2]), date(args[3]));
+         case "free":
+            arity(args, 3);
+            return esql.freeRooms(Integer.parseInt(args[1]), date(args[2]), date(args[3]));
+         case "stay":
+            arity(args, 4);
+            loggedIn();
+            return esql.bookStay(Integer.parseInt(args[1]), Integer.parseInt(args[2]), date(args[3]), date(args[4]));
+         case "bookings":
+            loggedIn();
+            return esql.recentBookings(cursor(args));
+         case "update":
+            arity(args, 4);
+            return esql.updateRoom(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), args[4]);
+         case "prices":
+            if (args.length < 4 || args.length % 2 != 0)
+               throw new IllegalArgumentException("prices takes a hotelID and room/price pairs");
+            int[] rooms = new int[(args.length - 2) / 2], prices = new int[rooms.length];
+            for (int i = 0; i < rooms.length; i++) {
+               rooms[i] = Integer.parseInt(args[2 + 2 * i]);
+               prices[i] = Integer.parseInt(args[3 + 2 * i]);
+            }
+            return esql.updatePrices(Integer.parseInt(args[1]), rooms, prices);
+         case "updates":
+            return esql.recentUpdates(cursor(args));
+         case "history":
+            return esql.hotelBookings(cursor(args));
+         case "customers":
+            arity(args, 0);
+            return esql.regularCustomers();
+         case "repair":
+            arity(args, 3);
+            return esql.placeRepairRequest(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+         case "repairmany":
+            if (args.length < 4 || args.length % 2 != 0)
+               throw new IllegalArgumentException("repairmany takes a companyID and hotel/room pairs");
+            int[] repairHotels = new int[(args.length - 2) / 2], repairRooms = new int[repairHotels.length];
+            for (int i = 0; i < repairHotels.length; i++) {
+               repairHotels[i] = Integer.parseInt(args[2 + 2 * i]);
+               repairRooms[i] = Integer.parseInt(args[3 + 2 * i]);
+            }
+            return esql.placeRepairRequests(Integer.parseInt(args[1]), repairHotels, repairRooms);
+         case "repairs":
+            arity(args, 0);
+            return esql.repairHistory();
+         case "stats":
+            if (args.length != 4 && args.length != 5)
+               throw new IllegalArgumentException("stats takes 3 or 4 argument(s), got " + (args.length - 1));
+            return esql.hotelStats(Integer.parseInt(args[1]), date(args[2]), date(args[3]),
+                                   args.length == 5 && "monthly".equalsIgnoreCase(args[4]));
+         case "refreshstats":
+            // stats reads HotelDailyStats as of its last refresh
+            arity(args, 0);
+            return esql.refreshDailyStats();
+         default:
+            throw new IllegalArgumentException("Unknown command: " + op);
+      }
+   }//end dispatch
+
+   private void loggedIn() throws PermissionDeniedException {
+      if (this._session.getAuthorisedUser() < 0)
+         throw new PermissionDeniedException("Not logged in.");
+   }
+
+   private static void arity(String[] args, int n) {
+      if (args.length - 1 != n)
+         throw new IllegalArgumentException(args[0] + " takes " + n + " argument(s), got " + (args.length - 1));
+   }
+
+   // the optional page cursor of the history commands
+   private static String cursor(String[] args) {
+      if (args.length > 2)
+         throw new IllegalArgumentException(args[0] + " takes 0 or 1 argument(s), got " + (args.length - 1));
+      return args.length == 2 ? args[1] : null;
+   }
+
+   private static LocalDate date(String s) {
+      return s.indexOf('/') >= 0 ? Hotel.parseDate(s) : LocalDate.parse(s);
+   }
+
+   // splits a line on blanks, keeping "quoted strings" together
+   static String[] tokenize(String line) {
+      List<String> tokens = new ArrayList<String>();
+      StringBuilder token = new StringBuilder();
+      boolean quoted = false, inToken = false;
+      for (int i = 0; i < line.length(); i++) {
+         char ch = line.charAt(i);
+         if (ch == '"') {
+            quoted = !quoted;
+            inToken = true;
+         } else if (!quoted && Character.isWhitespace(ch)) {
+            if (inToken)
+               tokens.add(token.toString());
+            token.setLength(0);
+            inToken = false;
+         } else {
+            token.append(ch);
+            inToken = true;
+         }
+      }
+      if (quoted)
+         throw new IllegalArgumentException("Unterminated quote");
+      if (inToken)
+         tokens.add(token.toString());
+      return tokens.toArray(new String[0]);
+   }
+
+   private void appendResult(StringBuilder json, Object result) {
+      if (result instanceof HistoryPage) {
+         HistoryPage page = (HistoryPage) result;
+         json.append(",\"next\":").append(page.getNext() == null ? "null" : quote(page.getNext()));
+         result = page.getRows();
+      }
+      if (!(result instanceof ColumnarResult)) {
+         json.append(",\"result\":");
+         if (result instanceof Boolean || result instanceof Number)
+            json.append(result);
+         else
+            json.append(quote(result.toString()));
+         return;
+      }
+      ColumnarResult table = (ColumnarResult) result;
+      json.append(",\"rowCount\":").append(table.getRowCount());
+      if (!PRINT_ROWS)
+         return;
+      json.append(",\"columns\":[");
+      for (int c = 0; c < table.getColumnCount(); c++) {
+         if (c > 0) json.append(',');
+         json.append(quote(table.getColumnLabel(c)));
+      }
+      json.append("],\"rows\":[");
+      for (int r = 0; r < table.getRowCount(); r++) {
+         json.append(r > 0 ? ",[" : "[");
+         for (int c = 0; c < table.getColumnCount(); c++) {
+            if (c > 0) json.append(',');
+            String value = table.getString(r, c);
+            switch (table.getColumnKind(c)) {
+               case INT: case LONG: case DOUBLE:
+                  json.append(value == null ? "null" : value);
+                  break;
+               case BOOLEAN:
+                  json.append(value == null ? "null" : String.valueOf(table.getBoolean(r, c)));
+                  break;
+               default:
+                  // char(n) columns of a database not yet converted by SchemaMigrator are blank padded
+                  json.append(value == null ? "null" : quote(value.trim()));
+            }
+         }
+         json.append(']');
+      }
+      json.append(']');
+   }//end appendResult
+
+   static String quote(String s) {
+      StringBuilder q = new StringBuilder(s.length() + 2).append('"');
+      for (int i = 0; i < s.length(); i++) {
+         char ch = s.charAt(i);
+         switch (ch) {
+            case '"': q.append("\\\""); break;
+            case '\\': q.append("\\\\"); break;
+            case '\n': q.append("\\n"); break;
+            case '\r': q.append("\\r"); break;
+            case '\t': q.append("\\t"); break;
+            default:
+               if (ch < 0x20)
+                  q.append(String.format("\\u%04x", (int) ch));
+               else
+                  q.append(ch);
+         }
+      }
+      return q.append('"').toString();
+   }
+
+   private void record(String op, long nanos, boolean failed) {
+      long[] lat = this._latencies.get(op);
+      int n = this._counts.containsKey(op) ? this._counts.get(op) : 0;
+      if (lat == null || n == lat.length) {
+         lat = lat == null ? new long[64] : Arrays.copyOf(lat, n * 2);
+         this._latencies.put(op, lat);
+      }
+      lat[n] = nanos;
+      this._counts.put(op, n + 1);
+      if (failed)
+         this._failures.put(op, (this._failures.containsKey(op) ? this._failures.get(op) : 0) + 1);
+   }
+
+   /**
+    * Prints count, failures and latency percentiles of every command.
+    *
+    * @param out where the summary is written
+    */
+   public void printSummary(PrintStream out) {
+      out.println(String.format("%-10s %8s %8s %10s %10s %10s %10s %10s",
+         "command", "count", "failed", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+      for (Map.Entry<String, long[]> e : this._latencies.entrySet()) {
+         int n = this._counts.get(e.getKey());
+         long[] lat = Arrays.copyOf(e.getValue(), n);
+         Arrays.sort(lat);
+         long sum = 0;
+         for (long l : lat)
+            sum += l;
+         Integer failed = this._failures.get(e.getKey());
+         out.println(String.format("%-10s %8d %8d %10.3f %10.3f %10.3f %10.3f %10.3f",
+            e.getKey(), n, failed == null ? 0 : failed, sum / 1e6 / n,
+            lat[n / 2] / 1e6, lat[(int) (n * 0.95)] / 1e6, lat[(int) (n * 0.99)] / 1e6, lat[n - 1] / 1e6));
+      }
+   }//end printSummary
+
+   public static void main(String[] args) {
+      if (args.length != 3 && args.length != 4) {
+         System.err.println("Usage: java CommandRunner <dbname> <port> <user> [commands file, default stdin]");
+         return;
+      }
+      Hotel esql = null;
+      int failed = 0;
+      try {
+         Class.forName("org.postgresql.Driver");
+         // connection messages go to standard error, results to standard out
+         PrintStream stdout = System.out;
+         System.setOut(System.err);
+         esql = new Hotel(args[0], args[1], args[2], "");
+         System.setOut(stdout);
+
+         BufferedReader reader = args.length == 4 && !"-".equals(args[3])
+            ? new BufferedReader(new FileReader(args[3]))
+            : new BufferedReader(new InputStreamReader(System.in));
+         CommandRunner runner = new CommandRunner(esql.newSession(), System.out);
+         try {
+            failed = runner.run(reader);
+         } finally {
+            reader.close();
+         }
+         runner.printSummary(System.err);
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         failed = 1;
+      } finally {
+         if (esql != null)
+            esql.cleanup();
+      }
+      System.exit(failed == 0 ? 0 : 1);
+   }//end main
+
+}//end CommandRunner
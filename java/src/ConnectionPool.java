@@ -0,0 +1,452 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of physical PostgreSQL connections shared by every Hotel
+ * session of the JVM.
+ *
+ * The pool keeps at least minSize connections open and never more than
+ * maxSize. Connections idle for longer than the idle timeout are closed by
+ * a background evictor (down to minSize), connections are validated with a
+ * cheap query when they are borrowed, and a borrower waits at most the
+ * borrow timeout for a connection before an SQLException is thrown.
+ *
+ */
+public class ConnectionPool {
+
+   // validation query; the bundled JDBC3 driver has no Connection.isValid()
+   private static final String VALIDATION_QUERY = "SELECT 1";
+
+   private final String _url;
+   private final String _user;
+   private final String _passwd;
+
+   private final int _minSize;
+   private final int _maxSize;
+   private final long _idleTimeoutMillis;
+   private final long _borrowTimeoutMillis;
+
+   // idle connections, most recently returned first
+   private final Deque<IdleConnection> _idle = new ArrayDeque<IdleConnection>();
+
+   // prepared statement cache of every open physical connection
+   private final Map<Connection, StatementCache> _statementCaches =
+      new IdentityHashMap<Connection, StatementCache>();
+   private final int _statementCacheSize;
+
+   // number of physical connections currently open (idle + borrowed)
+   private int _total = 0;
+   private boolean _closed = false;
+
+   private final ReentrantLock _lock = new ReentrantLock();
+   private final Condition _available = _lock.newCondition();
+
+   private final ScheduledExecutorService _evictor;
+
+   // metrics
+   private final AtomicLong _borrows = new AtomicLong();
+   private final AtomicLong _borrowWaitNanos = new AtomicLong();
+   private final AtomicLong _maxBorrowWaitNanos = new AtomicLong();
+   private final AtomicLong _borrowTimeouts = new AtomicLong();
+   private final AtomicLong _created = new AtomicLong();
+   private final AtomicLong _evicted = new AtomicLong();
+   private final AtomicLong _validationFailures = new AtomicLong();
+
+   /*
+    * An idle physical connection together with the time it was returned.
+    */
+   private static class IdleConnection {
+      final Connection connection;
+      final long idleSince;
+
+      IdleConnection(Connection connection, long idleSince) {
+         this.connection = connection;
+         this.idleSince = idleSince;
+      }
+   }//end IdleConnection
+
+   /**
+    * Creates a new pool and opens minSize connections eagerly.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param minSize number of connections kept open even when idle
+    * @param maxSize upper bound on open connections
+    * @param idleTimeoutMillis idle time after which a connection above minSize is closed
+    * @param borrowTimeoutMillis maximum time borrow() waits for a connection
+    * @param statementCacheSize prepared statements cached per connection
+    * @throws java.sql.SQLException when failed to make the initial connections.
+    */
+   public ConnectionPool(String url, String user, String passwd,
+                         int minSize, int maxSize,
+                         long idleTimeoutMillis, long borrowTimeoutMillis,
+                         int statementCacheSize) throws SQLException {
+      if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+         throw new IllegalArgumentException("invalid pool size: min=" + minSize + ", max=" + maxSize);
+
+      this._url = url;
+      this._user = user;
+      this._passwd = passwd;
+      this._minSize = minSize;
+      this._maxSize = maxSize;
+      this._idleTimeoutMillis = idleTimeoutMillis;
+      this._borrowTimeoutMillis = borrowTimeoutMillis;
+      this._statementCacheSize = statementCacheSize;
+
+      for (int i = 0; i < minSize; i++) {
+         this._idle.push(new IdleConnection(openConnection(), System.currentTimeMillis()));
+         this._total++;
+      }
+
+      this._evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ConnectionPool-evictor");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      long period = Math.max(1000L, idleTimeoutMillis / 2);
+      this._evictor.scheduleWithFixedDelay(new Runnable() {
+         public void run() { evictIdle(); }
+      }, period, period, TimeUnit.MILLISECONDS);
+   }//end ConnectionPool
+
+   /**
+    * Borrows a validated connection from the pool, opening a new physical
+    * connection if none is idle and the pool is below maxSize. Every
+    * borrowed connection must be handed back with release().
+    *
+    * @return a connection with auto-commit enabled
+    * @throws java.sql.SQLException when no connection became available within the borrow timeout
+    */
+   public Connection borrow() throws SQLException {
+      long start = System.nanoTime();
+      long deadline = start + TimeUnit.MILLISECONDS.toNanos(this._borrowTimeoutMillis);
+
+      while (true) {
+         Connection candidate = null;
+         boolean mustOpen = false;
+
+         this._lock.lock();
+         try {
+            while (true) {
+               if (this._closed)
+                  throw new SQLException("Connection pool is closed");
+               if (!this._idle.isEmpty()) {
+                  candidate = this._idle.pop().connection;
+                  break;
+               }
+               if (this._total < this._maxSize) {
+                  this._total++;
+                  mustOpen = true;
+                  break;
+               }
+               long remaining = deadline - System.nanoTime();
+               if (remaining <= 0) {
+                  this._borrowTimeouts.incrementAndGet();
+                  throw new SQLException(
+                     "Timed out after " + this._borrowTimeoutMillis + " ms waiting for a database connection");
+               }
+               try {
+                  this._available.awaitNanos(remaining);
+               } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  throw new SQLException("Interrupted while waiting for a database connection");
+               }
+            }//end while
+         } finally {
+            this._lock.unlock();
+         }
+
+         if (mustOpen) {
+            try {
+               candidate = openConnection();
+            } catch (SQLException e) {
+               discardSlot();
+               throw e;
+            }
+         } else if (!validate(candidate)) {
+            // stale connection (server restart, network drop): replace it
+            this._validationFailures.incrementAndGet();
+            closeQuietly(candidate);
+            discardSlot();
+            continue;
+         }
+
+         recordBorrow(System.nanoTime() - start);
+         return candidate;
+      }//end while
+   }//end borrow
+
+   /**
+    * Returns a borrowed connection to the pool. A connection left inside an
+    * open transaction is rolled back first; a broken one is closed.
+    *
+    * @param connection the connection obtained from borrow(), may be null
+    */
+   public void release(Connection connection) {
+      if (connection == null)
+         return;
+
+      boolean reusable = true;
+      try {
+         if (connection.isClosed()) {
+            reusable = false;
+         } else if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+         }
+      } catch (SQLException e) {
+         reusable = false;
+      }
+
+      this._lock.lock();
+      try {
+         if (reusable && !this._closed) {
+            this._idle.push(new IdleConnection(connection, System.currentTimeMillis()));
+            this._available.signal();
+            return;
+         }
+      } finally {
+         this._lock.unlock();
+      }
+
+      closeQuietly(connection);
+      discardSlot();
+   }//end release
+
+   /**
+    * Closes every idle connection and stops the evictor. Connections that are
+    * still borrowed are closed when they are released.
+    */
+   public void close() {
+      this._evictor.shutdownNow();
+      this._lock.lock();
+      try {
+         this._closed = true;
+         while (!this._idle.isEmpty()) {
+            closeQuietly(this._idle.pop().connection);
+            this._total--;
+         }
+         this._available.signalAll();
+      } finally {
+         this._lock.unlock();
+      }
+   }//end close
+
+   /*
+    * Closes connections that have been idle for longer than the idle timeout,
+    * oldest first, while keeping minSize connections open.
+    */
+   private void evictIdle() {
+      long cutoff = System.currentTimeMillis() - this._idleTimeoutMillis;
+      this._lock.lock();
+      try {
+         Iterator<IdleConnection> it = this._idle.descendingIterator();
+         while (it.hasNext() && this._total > this._minSize) {
+            IdleConnection idle = it.next();
+            if (idle.idleSince > cutoff)
+               break;
+            it.remove();
+            this._total--;
+            this._evicted.incrementAndGet();
+            closeQuietly(idle.connection);
+         }
+      } finally {
+         this._lock.unlock();
+      }
+   }//end evictIdle
+
+   /**
+    * Opens a connection that is not counted by the pool, for long-lived
+    * work such as a LISTEN loop. The caller closes it.
+    *
+    * @return a new physical connection
+    * @throws java.sql.SQLException when failed to connect
+    */
+   public Connection connect() throws SQLException {
+      return DriverManager.getConnection(this._url, this._user, this._passwd);
+   }
+
+   private Connection openConnection() throws SQLException {
+      Connection connection = DriverManager.getConnection(this._url, this._user, this._passwd);
+      this._created.incrementAndGet();
+      return connection;
+   }
+
+   private boolean validate(Connection connection) {
+      try {
+         if (connection.isClosed())
+            return false;
+         Statement stmt = connection.createStatement();
+         try {
+            stmt.executeQuery(VALIDATION_QUERY).close();
+         } finally {
+            stmt.close();
+         }
+         return true;
+      } catch (SQLException e) {
+         return false;
+      }
+   }//end validate
+
+   // gives back the slot of a connection that was closed or never opened
+   private void discardSlot() {
+      this._lock.lock();
+      try {
+         this._total--;
+         this._available.signal();
+      } finally {
+         this._lock.unlock();
+      }
+   }
+
+   private void recordBorrow(long waitNanos) {
+      this._borrows.incrementAndGet();
+      this._borrowWaitNanos.addAndGet(waitNanos);
+      long max;
+      do {
+         max = this._maxBorrowWaitNanos.get();
+      } while (waitNanos > max && !this._maxBorrowWaitNanos.compareAndSet(max, waitNanos));
+   }
+
+   /**
+    * Returns the prepared statement cache of a borrowed connection. The
+    * cache lives as long as the physical connection and must only be used
+    * while the connection is borrowed.
+    *
+    * @param connection a connection obtained from borrow()
+    * @return the statement cache of that connection
+    */
+   public StatementCache statementCache(Connection connection) {
+      synchronized (this._statementCaches) {
+         StatementCache cache = this._statementCaches.get(connection);
+         if (cache == null) {
+            cache = new StatementCache(connection, this._statementCacheSize);
+            this._statementCaches.put(connection, cache);
+         }
+         return cache;
+      }
+   }//end statementCache
+
+   private void closeQuietly(Connection connection) {
+      StatementCache cache;
+      synchronized (this._statementCaches) {
+         cache = this._statementCaches.remove(connection);
+      }
+      if (cache != null)
+         cache.close();
+      try {
+         connection.close();
+      } catch (SQLException e) {
+         // ignored.
+      }
+   }
+
+   public String getUrl() { return this._url; }
+
+   public int getMaxSize() { return this._maxSize; }
+
+   /**
+    * @return the number of physical connections currently open
+    */
+   public int getTotalCount() {
+      this._lock.lock();
+      try {
+         return this._total;
+      } finally {
+         this._lock.unlock();
+      }
+   }
+
+   /**
+    * @return the number of open connections not currently borrowed
+    */
+   public int getIdleCount() {
+      this._lock.lock();
+      try {
+         return this._idle.size();
+      } finally {
+         this._lock.unlock();
+      }
+   }
+
+   public long getBorrowCount() { return this._borrows.get(); }
+
+   public long getBorrowTimeoutCount() { return this._borrowTimeouts.get(); }
+
+   public long getCreatedCount() { return this._created.get(); }
+
+   public long getEvictedCount() { return this._evicted.get(); }
+
+   public long getValidationFailureCount() { return this._validationFailures.get(); }
+
+   /**
+    * @return the mean time spent waiting in borrow(), in milliseconds
+    */
+   public double getMeanBorrowWaitMillis() {
+      long n = this._borrows.get();
+      return n == 0 ? 0.0 : this._borrowWaitNanos.get() / (n * 1e6);
+   }
+
+   /**
+    * @return the longest time spent waiting in borrow(), in milliseconds
+    */
+   public double getMaxBorrowWaitMillis() {
+      return this._maxBorrowWaitNanos.get() / 1e6;
+   }
+
+   /**
+    * @return the statement cache hit ratio over all connections of the pool
+    */
+   public double getStatementCacheHitRatio() {
+      long hits = 0, misses = 0;
+      synchronized (this._statementCaches) {
+         for (StatementCache cache : this._statementCaches.values()) {
+            hits += cache.getHitCount();
+            misses += cache.getMissCount();
+         }
+      }
+      return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+   }
+
+   /**
+    * @return a one line summary of the pool state and metrics
+    */
+   public String stats() {
+      return String.format(
+         "pool: open=%d idle=%d max=%d borrows=%d timeouts=%d created=%d evicted=%d invalid=%d wait(mean=%.3fms max=%.3fms) stmt-cache-hit=%.1f%%",
+         getTotalCount(), getIdleCount(), this._maxSize, getBorrowCount(), getBorrowTimeoutCount(),
+         getCreatedCount(), getEvictedCount(), getValidationFailureCount(),
+         getMeanBorrowWaitMillis(), getMaxBorrowWaitMillis(), getStatementCacheHitRatio() * 100);
+   }
+
+}//end ConnectionPool
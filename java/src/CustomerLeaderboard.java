@@ -0,0 +1,199 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory leaderboard of the customers with the most bookings per hotel.
+ *
+ * Every hotel keeps a count map (customer -> bookings) and its top K
+ * customers ordered by count, then by lower userID. Counts only grow, so a
+ * booking either moves its customer up inside the top K or lets it replace
+ * the last entry: recordBooking() is O(K) and top() copies K entries,
+ * whatever the number of bookings. The board is filled from a snapshot at
+ * startup and shared by all sessions; bookings deleted outside the program
+ * are only seen after a reload.
+ *
+ */
+public class CustomerLeaderboard {
+
+   /*
+    * One customer of a hotel and the number of nights they booked there.
+    */
+   public static class Entry {
+      public final int hotelID;
+      public final int customerID;
+      public final long bookings;
+
+      Entry(int hotelID, int customerID, long bookings) {
+         this.hotelID = hotelID;
+         this.customerID = customerID;
+         this.bookings = bookings;
+      }
+
+      // more bookings first, then the lower userID
+      boolean before(long bookings, int customerID) {
+         return this.bookings > bookings || (this.bookings == bookings && this.customerID < customerID);
+      }
+   }//end Entry
+
+   /*
+    * The counts and the top K of one hotel.
+    */
+   private static class Board {
+      final Map<Integer, long[]> counts = new HashMap<Integer, long[]>();
+      // customers in leaderboard order; only the first size entries are used
+      final int[] top;
+      int size = 0;
+
+      Board(int k) {
+         this.top = new int[k];
+      }
+
+      long count(int customerID) {
+         long[] c = this.counts.get(customerID);
+         return c == null ? 0 : c[0];
+      }
+
+      boolean ahead(int a, int b) {
+         long ca = count(a), cb = count(b);
+         return ca > cb || (ca == cb && a < b);
+      }
+
+      void add(int customerID, long n) {
+         long[] c = this.counts.get(customerID);
+         if (c == null)
+            this.counts.put(customerID, c = new long[1]);
+         c[0] += n;
+
+         int pos = -1;
+         for (int i = 0; i < this.size; i++) {
+            if (this.top[i] == customerID) {
+               pos = i;
+               break;
+            }
+         }
+         if (pos < 0) {
+            if (this.size < this.top.length)
+               pos = this.size++;
+            else if (ahead(customerID, this.top[this.size - 1]))
+               pos = this.size - 1;
+            else
+               return;
+            this.top[pos] = customerID;
+         }
+         // bubble up to its place
+         while (pos > 0 && ahead(customerID, this.top[pos - 1])) {
+            this.top[pos] = this.top[pos - 1];
+            this.top[--pos] = customerID;
+         }
+      }
+   }//end Board
+
+   private final int _k;
+   private final Map<Integer, Board> _hotels = new HashMap<Integer, Board>();
+
+   /**
+    * Creates an empty leaderboard.
+    *
+    * @param k the number of customers ranked per hotel
+    */
+   public CustomerLeaderboard(int k) {
+      if (k < 1)
+         throw new IllegalArgumentException("invalid leaderboard size: " + k);
+      this._k = k;
+   }
+
+   /**
+    * @return the number of customers ranked per hotel
+    */
+   public int getK() { return this._k; }
+
+   /**
+    * Removes every count.
+    */
+   public synchronized void clear() {
+      this._hotels.clear();
+   }
+
+   /**
+    * Adds bookings of a customer in a hotel, e.g. one row of a
+    * GROUP BY hotelID, customerID snapshot.
+    *
+    * @param hotelID the hotel
+    * @param customerID the customer
+    * @param bookings the number of bookings to add
+    */
+   public synchronized void add(int hotelID, int customerID, long bookings) {
+      Board board = this._hotels.get(hotelID);
+      if (board == null)
+         this._hotels.put(hotelID, board = new Board(this._k));
+      board.add(customerID, bookings);
+   }
+
+   /**
+    * Counts one new booking.
+    *
+    * @param hotelID the hotel
+    * @param customerID the customer who booked
+    */
+   public void recordBooking(int hotelID, int customerID) {
+      add(hotelID, customerID, 1);
+   }
+
+   /**
+    * @param hotelID the hotel
+    * @param customerID the customer
+    * @return the number of bookings of the customer in the hotel
+    */
+   public synchronized long getBookings(int hotelID, int customerID) {
+      Board board = this._hotels.get(hotelID);
+      return board == null ? 0 : board.count(customerID);
+   }
+
+   /**
+    * Returns the top customers over several hotels: the best K of the
+    * (hotel, customer) pairs, ordered by bookings, then by lower userID.
+    *
+    * @param hotelIDs the hotels, e.g. those of a manager
+    * @param limit the number of entries wanted, at most K
+    * @return the entries, best first
+    */
+   public synchronized List<Entry> top(int[] hotelIDs, int limit) {
+      limit = Math.min(limit, this._k);
+      List<Entry> best = new ArrayList<Entry>(limit + 1);
+      for (int hotelID : hotelIDs) {
+         Board board = this._hotels.get(hotelID);
+         if (board == null)
+            continue;
+         for (int i = 0; i < board.size; i++) {
+            int customerID = board.top[i];
+            long bookings = board.count(customerID);
+            int pos = best.size();
+            while (pos > 0 && !best.get(pos - 1).before(bookings, customerID))
+               pos--;
+            // the boards are sorted, so the rest of this one cannot make it either
+            if (pos >= limit)
+               break;
+            best.add(pos, new Entry(hotelID, customerID, bookings));
+            if (best.size() > limit)
+               best.remove(limit);
+         }
+      }
+      return best;
+   }//end top
+
+}//end CustomerLeaderboard
@@ -0,0 +1,412 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Generates the data/ CSV files at any scale, for load and performance
+ * tests.
+ *
+ * Scale 1 matches the shipped fixtures (20 hotels, about 200 rooms, 100
+ * users, 500 bookings, ...); every table grows linearly with the scale.
+ * The files have the names, headers and formats of data/, so
+ * load_data.sql loads them unchanged (see sql/scripts/load_generated.sh).
+ *
+ * Rows are written as they are generated and every value is a function of
+ * the seed and the row's id, so memory use does not depend on the scale
+ * and the same seed always gives the same files. This is also how foreign
+ * keys stay valid without remembering earlier rows: the manager of a hotel,
+ * the number of rooms of a hotel and the room of a repair are recomputed
+ * wherever they are needed.
+ *
+ * Bookings are skewed like real traffic: some hotels are much more popular
+ * than others, recent years have more bookings than early ones, summers
+ * and weekends are busier, and regular customers book often. A room
+ * is never booked twice for the same night.
+ *
+ * Options: -Dgen.bookings=N (default 500 * scale), -Dgen.from=yyyy-mm-dd
+ * and -Dgen.to=yyyy-mm-dd (booking dates, default 2000-01-01 to
+ * 2018-12-31).
+ *
+ * Usage: java DataGenerator outputDir scale [seed]
+ *
+ */
+public class DataGenerator {
+
+   // salts that make the random streams of the tables independent
+   private static final long HOTEL = 1, ROOM = 2, USER = 3, BOOKING = 4, REPAIR = 5, REQUEST = 6, UPDATE = 7, COMPANY = 8;
+
+   private static final String[] FIRST_NAMES = {
+      "Amy", "Abdullah", "Maci", "Juan", "Wei", "Olga", "Priya", "Kofi", "Lena", "Omar",
+      "Sofia", "Hiro", "Noah", "Aisha", "Mateo", "Chloe", "Ivan", "Zara", "Liam", "Mei" };
+
+   private final long _seed;
+   private final int _hotels, _managers, _users, _companies;
+   private final long _bookings, _repairs, _requests, _updates;
+   private final LocalDate _from;
+   private final int _days;
+
+   // expected bookings per room, before popularity
+   private final double _bookingsPerRoom;
+
+   // reused per booked room to keep its nights distinct
+   private long[] _nights;
+   private int[] _nightList;
+
+   /*
+    * SplitMix64: a tiny reseedable generator, so each row gets its own
+    * stream without allocating.
+    */
+   private static final class Rng {
+      private long _state;
+
+      void seed(long seed) { this._state = seed; }
+
+      long nextLong() {
+         long z = (this._state += 0x9E3779B97F4A7C15L);
+         return mix(z);
+      }
+
+      double nextDouble() { return (nextLong() >>> 11) * 0x1.0p-53; }
+
+      int nextInt(int bound) { return (int) ((nextLong() >>> 1) % bound); }
+   }
+
+   private final Rng _rng = new Rng();
+
+   public DataGenerator(long seed, double scale, long bookings, LocalDate from, LocalDate to) {
+      this._seed = seed;
+      this._hotels = (int) Math.max(1, Math.round(20 * scale));
+      this._managers = Math.max(1, this._hotels / 3);
+      this._users = (int) Math.max(this._managers + 2, Math.round(100 * scale));
+      this._companies = (int) Math.max(1, Math.round(5 * scale));
+      this._bookings = bookings;
+      this._repairs = Math.max(1, Math.round(10 * scale));
+      this._requests = Math.round(10 * scale);
+      this._updates = Math.round(50 * scale);
+      this._from = from;
+      this._days = (int) (to.toEpochDay() - from.toEpochDay()) + 1;
+      this._bookingsPerRoom = bookings / (10.0 * this._hotels);
+      this._nights = new long[(this._days + 63) / 64];
+      this._nightList = new int[16];
+   }
+
+   static long mix(long z) {
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+   }
+
+   // reseeds the shared generator for one row of one table
+   private Rng rng(long table, long id) {
+      this._rng.seed(mix(this._seed * 31 + table) ^ mix(id));
+      return this._rng;
+   }
+
+   // a value in [0, bound) fixed by the seed, the table, the id and a key
+   private int pick(long table, long id, long key, int bound) {
+      return (int) ((mix(mix(this._seed * 31 + table) ^ mix(id * 8191 + key)) >>> 1) % bound);
+   }
+
+   int managerOf(int hotelID) {
+      return 2 + pick(HOTEL, hotelID, 1, this._managers);
+   }
+
+   int roomsOf(int hotelID) {
+      return 5 + pick(HOTEL, hotelID, 2, 11); // 5 to 15, 10 on average
+   }
+
+   // how popular a hotel is compared to the average (exponential, mean 1)
+   double popularityOf(int hotelID) {
+      double u = (pick(HOTEL, hotelID, 3, 1 << 30) + 0.5) / (1 << 30);
+      return -Math.log(u);
+   }
+
+   int hotelOfRepair(long repairID) {
+      return 1 + pick(REPAIR, repairID, 1, this._hotels);
+   }
+
+   /**
+    * Writes all tables into a directory.
+    *
+    * @param dir the output directory, created when missing
+    * @throws java.io.IOException when writing fails
+    */
+   public void generate(File dir) throws IOException {
+      dir.mkdirs();
+      long t0 = System.nanoTime();
+      report("users.csv", writeUsers(new File(dir, "users.csv")), t0);
+      report("hotels.csv", writeHotels(new File(dir, "hotels.csv")), t0);
+      report("rooms.csv", writeRooms(new File(dir, "rooms.csv")), t0);
+      report("company.csv", writeCompanies(new File(dir, "company.csv")), t0);
+      report("bookings.csv", writeBookings(new File(dir, "bookings.csv")), t0);
+      report("roomRepairs.csv", writeRepairs(new File(dir, "roomRepairs.csv")), t0);
+      report("roomRepairRequests.csv", writeRequests(new File(dir, "roomRepairRequests.csv")), t0);
+      report("roomUpdatesLog.csv", writeUpdates(new File(dir, "roomUpdatesLog.csv")), t0);
+   }//end generate
+
+   private static void report(String file, long rows, long t0) {
+      System.err.println(String.format("%-24s %,14d rows  %8.1f s", file, rows, (System.nanoTime() - t0) / 1e9));
+   }
+
+   private static Writer open(File file, String header) throws IOException {
+      Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+      out.write(header);
+      out.write('\n');
+      return out;
+   }
+
+   private long writeUsers(File file) throws IOException {
+      Writer out = open(file, "userID,name,password,userType");
+      StringBuilder line = new StringBuilder(64);
+      for (int id = 1; id <= this._users; id++) {
+         Rng r = rng(USER, id);
+         line.setLength(0);
+         line.append(id).append(',');
+         if (id == 1) {
+            line.append("Admin");
+         } else {
+            line.append(FIRST_NAMES[r.nextInt(FIRST_NAMES.length)]).append('_');
+            letters(line, r, 6);
+         }
+         line.append(",xyz,").append(id == 1 ? "admin" : id <= this._managers + 1 ? "manager" : "customer").append('\n');
+         out.append(line);
+      }
+      out.close();
+      return this._users;
+   }
+
+   private long writeHotels(File file) throws IOException {
+      Writer out = open(file, "hotelID,hotelName,latitude,longitude,dateEstablished,managerUserID");
+      StringBuilder line = new StringBuilder(96);
+      for (int id = 1; id <= this._hotels; id++) {
+         Rng r = rng(HOTEL, id);
+         line.setLength(0);
+         line.append(id).append(',');
+         letters(line, r, 4);
+         line.append(',');
+         decimal(line, r.nextDouble() * 99.99999, 5);
+         line.append(',');
+         decimal(line, r.nextDouble() * 99.99999, 5);
+         line.append(',');
+         date(line, LocalDate.of(1900, 1, 1).plusDays(r.nextInt(120 * 365)));
+         line.append(',').append(managerOf(id)).append('\n');
+         out.append(line);
+      }
+      out.close();
+      return this._hotels;
+   }
+
+   private long writeRooms(File file) throws IOException {
+      Writer out = open(file, "hotelID,roomNumber,price,imageURL");
+      StringBuilder line = new StringBuilder(64);
+      long rows = 0;
+      for (int h = 1; h <= this._hotels; h++) {
+         int rooms = roomsOf(h);
+         for (int n = 1; n <= rooms; n++) {
+            Rng r = rng(ROOM, (long) h * 65536 + n);
+            line.setLength(0);
+            line.append(h).append(',').append(n).append(',').append(100 + r.nextInt(1901)).append(',');
+            letters(line, r, 4);
+            line.append('\n');
+            out.append(line);
+            rows++;
+         }
+      }
+      out.close();
+      return rows;
+   }
+
+   private long writeCompanies(File file) throws IOException {
+      Writer out = open(file, "companyID,name,address");
+      StringBuilder line = new StringBuilder(64);
+      for (int id = 1; id <= this._companies; id++) {
+         Rng r = rng(COMPANY, id);
+         line.setLength(0);
+         line.append(id).append(',');
+         letters(line, r, 1);
+         line.append("-com,");
+         letters(line, r, 4);
+         line.append('\n');
+         out.append(line);
+      }
+      out.close();
+      return this._companies;
+   }
+
+   private long writeBookings(File file) throws IOException {
+      Writer out = open(file, "bookingID,customerID,hotelID,roomNumber,bookingDate");
+      StringBuilder line = new StringBuilder(64);
+      int customers = this._users - this._managers - 1;
+      long bookingID = 0;
+      for (int h = 1; h <= this._hotels && bookingID < this._bookings; h++) {
+         double perRoom = this._bookingsPerRoom * popularityOf(h);
+         int rooms = roomsOf(h);
+         for (int n = 1; n <= rooms && bookingID < this._bookings; n++) {
+            Rng r = rng(BOOKING, (long) h * 65536 + n);
+            // stochastic rounding keeps the expected total on target
+            int count = (int) perRoom + (r.nextDouble() < perRoom - (int) perRoom ? 1 : 0);
+            count = (int) Math.min(Math.min(count, this._days), this._bookings - bookingID);
+            int nights = pickNights(r, count);
+            for (int i = 0; i < nights; i++) {
+               // regular customers: a third of the bookings come from the first 5% of customers
+               int customer = this._managers + 2 + (r.nextDouble() < 0.3
+                  ? r.nextInt(Math.max(1, customers / 20)) : r.nextInt(customers));
+               line.setLength(0);
+               line.append(++bookingID).append(',').append(customer).append(',')
+                   .append(h).append(',').append(n).append(',');
+               date(line, this._from.plusDays(this._nightList[i]));
+               line.append('\n');
+               out.append(line);
+            }
+         }
+      }
+      out.close();
+      return bookingID;
+   }//end writeBookings
+
+   /*
+    * Fills _nightList with count distinct night offsets for one room and
+    * returns how many were picked.
+    */
+   private int pickNights(Rng r, int count) {
+      if (this._nightList.length < count)
+         this._nightList = new int[Math.max(count, this._nightList.length * 2)];
+      int picked = 0;
+      int attempts = 0;
+      while (picked < count && attempts++ < count * 50) {
+         int day = skewedDay(r);
+         long bit = 1L << (day & 63);
+         if ((this._nights[day >>> 6] & bit) != 0)
+            continue;
+         this._nights[day >>> 6] |= bit;
+         this._nightList[picked++] = day;
+      }
+      // clear only the words that were touched
+      for (int i = 0; i < picked; i++)
+         this._nights[this._nightList[i] >>> 6] = 0;
+      return picked;
+   }
+
+   // growth over the years, busier summers and weekends
+   private int skewedDay(Rng r) {
+      final double growth = 1.5;
+      while (true) {
+         double t = Math.log(1 + r.nextDouble() * (Math.exp(growth) - 1)) / growth;
+         int day = Math.min(this._days - 1, (int) (t * this._days));
+         LocalDate date = this._from.plusDays(day);
+         int month = date.getMonthValue();
+         double weight = (month >= 6 && month <= 8) ? 1.0 : month == 12 ? 0.9 : 0.6;
+         int dow = date.getDayOfWeek().getValue();
+         weight *= (dow == 5 || dow == 6) ? 1.0 : 0.7;
+         if (r.nextDouble() < weight)
+            return day;
+      }
+   }
+
+   private long writeRepairs(File file) throws IOException {
+      Writer out = open(file, "repairID,companyID,hotelID,roomNumber,repairDate");
+      StringBuilder line = new StringBuilder(64);
+      for (long id = 1; id <= this._repairs; id++) {
+         int h = hotelOfRepair(id);
+         Rng r = rng(REPAIR, id);
+         line.setLength(0);
+         line.append(id).append(',').append(1 + r.nextInt(this._companies)).append(',')
+             .append(h).append(',').append(1 + r.nextInt(roomsOf(h))).append(',');
+         date(line, this._from.plusDays(r.nextInt(this._days)));
+         line.append('\n');
+         out.append(line);
+      }
+      out.close();
+      return this._repairs;
+   }
+
+   private long writeRequests(File file) throws IOException {
+      Writer out = open(file, "requestNumber,managerID,repairID");
+      StringBuilder line = new StringBuilder(32);
+      for (long id = 1; id <= this._requests; id++) {
+         // most requests are for repairs on record, one request each
+         long repair = id <= this._repairs ? id : 1 + rng(REQUEST, id).nextInt((int) Math.min(this._repairs, Integer.MAX_VALUE));
+         line.setLength(0);
+         line.append(id).append(',').append(managerOf(hotelOfRepair(repair))).append(',').append(repair).append('\n');
+         out.append(line);
+      }
+      out.close();
+      return this._requests;
+   }
+
+   private long writeUpdates(File file) throws IOException {
+      Writer out = open(file, "updateNumber,managerID,hotelID,roomNumber,updatedOn");
+      StringBuilder line = new StringBuilder(64);
+      for (long id = 1; id <= this._updates; id++) {
+         Rng r = rng(UPDATE, id);
+         int h = 1 + r.nextInt(this._hotels);
+         line.setLength(0);
+         line.append(id).append(',').append(managerOf(h)).append(',').append(h).append(',')
+             .append(1 + r.nextInt(roomsOf(h))).append(',');
+         LocalDate day = this._from.plusDays(r.nextInt(this._days));
+         line.append(day.getYear()).append('-');
+         pad2(line, day.getMonthValue()).append('-');
+         pad2(line, day.getDayOfMonth()).append(' ');
+         pad2(line, r.nextInt(24)).append(':');
+         pad2(line, r.nextInt(60)).append(":00\n");
+         out.append(line);
+      }
+      out.close();
+      return this._updates;
+   }
+
+   private static void letters(StringBuilder line, Rng r, int n) {
+      for (int i = 0; i < n; i++)
+         line.append((char) ('a' + r.nextInt(26)));
+   }
+
+   private static void decimal(StringBuilder line, double value, int digits) {
+      long scaled = Math.round(value * Math.pow(10, digits));
+      line.append(scaled / (long) Math.pow(10, digits)).append('.');
+      String frac = Long.toString(scaled % (long) Math.pow(10, digits));
+      for (int i = frac.length(); i < digits; i++)
+         line.append('0');
+      line.append(frac);
+   }
+
+   // m/d/yyyy, as in the shipped files
+   private static void date(StringBuilder line, LocalDate d) {
+      line.append(d.getMonthValue()).append('/').append(d.getDayOfMonth()).append('/').append(d.getYear());
+   }
+
+   private static StringBuilder pad2(StringBuilder line, int v) {
+      return line.append(v < 10 ? "0" : "").append(v);
+   }
+
+   public static void main(String[] args) throws IOException {
+      if (args.length < 2 || args.length > 3) {
+         System.err.println("Usage: java DataGenerator <outputDir> <scale> [seed]");
+         return;
+      }
+      double scale = Double.parseDouble(args[1]);
+      long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+      long bookings = Long.getLong("gen.bookings", Math.round(500 * scale));
+      LocalDate from = LocalDate.parse(System.getProperty("gen.from", "2000-01-01"));
+      LocalDate to = LocalDate.parse(System.getProperty("gen.to", "2018-12-31"));
+      new DataGenerator(seed, scale, bookings, from, to).generate(new File(args[0]));
+   }//end main
+
+}//end DataGenerator
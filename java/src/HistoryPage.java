@@ -0,0 +1,102 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+/**
+ * One page of a history view, newest first, and the cursor of the next one.
+ *
+ * History views are ordered by (date, id) descending, or by id alone when
+ * ids follow time, and paged with a seek cursor: the next page starts after
+ * the (date, id) of the last row shown, so a composite index answers page N
+ * as fast as page 1, and rows inserted meanwhile do not shift the pages.
+ * The cursor is an opaque token, "<date>:<id>" with the date as an epoch
+ * day, or "<id>".
+ *
+ */
+public class HistoryPage {
+
+   private final ColumnarResult _rows;
+   private final String _next;
+
+   /**
+    * Creates a page from the rows of a query that asked for one row more
+    * than the page size.
+    *
+    * @param rows the rows fetched, at most pageSize + 1
+    * @param pageSize the number of rows of a page
+    * @param keyColumn the DATE column the view is ordered by, or -1 when it is ordered by id alone
+    * @param idColumn the INT column that breaks ties
+    */
+   HistoryPage(ColumnarResult rows, int pageSize, int keyColumn, int idColumn) {
+      if (rows.getRowCount() > pageSize) {
+         // the extra row only tells that there is a next page
+         int last = pageSize - 1;
+         this._next = (keyColumn < 0 ? "" : rows.getLong(last, keyColumn) + ":") + rows.getInt(last, idColumn);
+         rows.truncate(pageSize);
+      } else {
+         this._next = null;
+      }
+      this._rows = rows;
+   }
+
+   /**
+    * Creates a page of a view ordered by id alone.
+    *
+    * @param rows the rows fetched, at most pageSize + 1
+    * @param pageSize the number of rows of a page
+    * @param idColumn the INT column the view is ordered by
+    */
+   HistoryPage(ColumnarResult rows, int pageSize, int idColumn) {
+      this(rows, pageSize, -1, idColumn);
+   }
+
+   /**
+    * @return the rows of this page
+    */
+   public ColumnarResult getRows() { return this._rows; }
+
+   /**
+    * @return the cursor of the next page, or null on the last page
+    */
+   public String getNext() { return this._next; }
+
+   /**
+    * Reads the date of a cursor.
+    *
+    * @param cursor a cursor returned by getNext()
+    * @return the epoch day of the last row shown
+    * @throws IllegalArgumentException when the cursor is malformed
+    */
+   static long key(String cursor) {
+      try {
+         return Long.parseLong(cursor.substring(0, cursor.indexOf(':')));
+      } catch (RuntimeException e) {
+         throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+      }
+   }
+
+   /**
+    * Reads the id of a cursor, with or without a date.
+    *
+    * @param cursor a cursor returned by getNext()
+    * @return the id of the last row shown
+    * @throws IllegalArgumentException when the cursor is malformed
+    */
+   static int id(String cursor) {
+      try {
+         return Integer.parseInt(cursor.substring(cursor.indexOf(':') + 1));
+      } catch (RuntimeException e) {
+         throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+      }
+   }
+
+}//end HistoryPage
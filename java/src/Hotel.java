@@ -13,6 +13,7 @@
 
 import java.sql.DriverManager;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -21,10 +22,23 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.lang.Math;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 /**
@@ -34,42 +48,1592 @@ import java.time.format.DateTimeFormatter;
  */
 public class Hotel {
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // pool of physical database connections, shared by all sessions of this JVM.
+   private final ConnectionPool _pool;
+
+   // only the Hotel that created the pool closes it in cleanup()
+   private final boolean _ownsPool;
+
+   // radius of the "hotels nearby" search, also the spatial grid cell size
+   static final double NEARBY_RADIUS = 30;
+
+   // columns kept for each indexed hotel, in display order
+   static final String[] HOTEL_COLUMNS = { "hotelid", "latitude", "longitude", "dateestablished", "hotelname" };
+
+   // spatial index over Hotel(latitude, longitude), shared by all sessions
+   private final HotelLocator _hotelLocator;
+
+   // per-room booked-day bitsets over a rolling horizon, shared by all sessions; the bookings
+   // of other programs reach it through the bookings_changed notifications
+   private final RoomAvailability _availability;
+
+   // user types and managed hotels of logged in users, shared by all sessions
+   private final PrincipalCache _principals;
+
+   // booking counts and top customers per hotel, shared by all sessions
+   private final CustomerLeaderboard _leaderboard;
+
+   // rooms, prices and images of recently used hotels, shared by all sessions
+   private final RoomCatalog _rooms;
+
+   // writes bulk room changes and their log records in batches, shared by all sessions
+   private final AuditLogWriter _audit;
+
+   // drops _rooms entries when any program changes Rooms, moves hotels in _hotelLocator when
+   // any program changes Hotel and marks the nights any program books or frees in _availability;
+   // only on the instance that owns the pool
+   private final RoomCatalogListener _roomListener;
+
+   // latency, row and error counters per operation and SQL template, shared by all sessions
+   private final Metrics _metrics;
+
+   // publishes _metrics when -Dhotel.metrics.* is set; only on the instance that owns the pool
+   private final MetricsExporter _exporter;
+
+   // folds the queued booking changes into HotelDailyStats every -Dhotel.stats.refreshSeconds
+   // (default 60, 0 = never); only on the instance that owns the pool
+   private final ScheduledExecutorService _statsRefresher;
 
    private int _authorisedUser = -1;
 
-   // handling the keyboard inputs through a BufferedReader
-   // This variable can be global for convenience.
-   static BufferedReader in = new BufferedReader(
-                                new InputStreamReader(System.in));
+   // rows fetched per round trip by the table printer through a cursor (-Dhotel.fetchSize, 0 = all at once)
+   static final int FETCH_SIZE = Integer.getInteger("hotel.fetchSize", 256);
+
+   // rows printed before asking to continue (-Dhotel.pageSize, 0 = no paging)
+   static final int PAGE_SIZE = Integer.getInteger("hotel.pageSize", 0);
+
+   // asks on the console whether to print the next page of a long table
+   static final TableRenderer.Pager CONSOLE_PAGER = new TableRenderer.Pager() {
+      public boolean nextPage(int rowsSoFar) {
+         System.out.print("  -- " + rowsSoFar + " rows shown. More? (Y/N): ");
+         try {
+            String answer = in.readLine();
+            return answer != null && answer.toLowerCase().contains("y");
+         } catch (IOException e) {
+            return false;
+         }
+      }
+   };
+
+   // handling the keyboard inputs through a BufferedReader
+   // This variable can be global for convenience.
+   static BufferedReader in = new BufferedReader(
+                                new InputStreamReader(System.in));
+
+   /**
+    * Creates a new instance of Hotel 
+    *
+    * @param hostname the MySQL or PostgreSQL server hostname
+    * @param database the name of the database
+    * @param username the user name used to login to the database
+    * @param password the user login password
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public Hotel(String dbname, String dbport, String user, String passwd) throws SQLException {
+
+      System.out.print("Connecting to database...");
+      ConnectionPool pool = null;
+      try{
+         // constructs the connection URL
+         String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+         System.out.println ("Connection URL: " + url + "\n");
+
+         // open the connection pool; sizes can be tuned with -Dhotel.pool.*
+         pool = new ConnectionPool(url, user, passwd,
+            Integer.getInteger("hotel.pool.min", 1),
+            Integer.getInteger("hotel.pool.max", 8),
+            Long.getLong("hotel.pool.idleTimeoutMillis", 60000L),
+            Long.getLong("hotel.pool.borrowTimeoutMillis", 5000L),
+            Integer.getInteger("hotel.statementCache.size", 64));
+         System.out.println("Done");
+      }catch (Exception e){
+         System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
+         System.out.println("Make sure you started postgres on this machine");
+         System.exit(-1);
+      }//end catch
+      this._pool = pool;
+      this._ownsPool = true;
+      this._hotelLocator = new HotelLocator(NEARBY_RADIUS);
+      this._availability = new RoomAvailability(LocalDate.now(),
+         Integer.getInteger("hotel.availability.pastDays", 365),
+         Integer.getInteger("hotel.availability.futureDays", 730));
+      this._principals = new PrincipalCache(Long.getLong("hotel.principal.ttlMillis", 300000L));
+      this._leaderboard = new CustomerLeaderboard(REGULAR_CUSTOMERS);
+      this._rooms = new RoomCatalog(Integer.getInteger("hotel.roomCache.hotels", 1024),
+         Long.getLong("hotel.roomCache.ttlMillis", 300000L));
+      this._metrics = new Metrics();
+      this._audit = AuditLogWriter.fromSystemProperties(this._pool, this._rooms, this._metrics);
+
+      // listen before the indexes are built, so that no change made meanwhile is missed;
+      // without notifications the room cache relies on its time to live
+      RoomCatalogListener listener = new RoomCatalogListener(this._pool, this._rooms,
+         Long.getLong("hotel.roomCache.pollMillis", 500L));
+      listener.on(HOTELS_CHANNEL, new RoomCatalogListener.Handler() {
+         public void changed(String payload) throws SQLException {
+            // "<hotelID>" for a new or changed hotel, "-<hotelID>" for a deleted one
+            if (payload == null) {
+               reloadHotelIndex();
+            } else if (payload.startsWith("-")) {
+               unindexHotel(Integer.parseInt(payload.substring(1)));
+            } else {
+               indexHotel(Integer.parseInt(payload));
+            }
+         }
+         public void missed() throws SQLException {
+            reloadHotelIndex();
+         }
+      });
+      listener.on(BOOKINGS_CHANNEL, new RoomCatalogListener.Handler() {
+         public void changed(String payload) throws SQLException {
+            applyBookingChange(payload);
+         }
+         public void missed() throws SQLException {
+            reloadAvailability();
+         }
+      });
+      this._roomListener = listener.start(Long.getLong("hotel.listener.startMillis", 5000L)) ? listener : null;
+
+      // build the in-memory indexes once, at startup
+      reloadHotelIndex();
+      reloadAvailability();
+      reloadLeaderboard();
+
+      MetricsExporter exporter = null;
+      try {
+         exporter = MetricsExporter.fromSystemProperties(this._metrics, this._pool, this._rooms);
+      } catch (IOException e) {
+         System.err.println("Unable to export metrics: " + e.getMessage());
+      }
+      this._exporter = exporter;
+
+      int refreshSeconds = Integer.getInteger("hotel.stats.refreshSeconds", 60);
+      ScheduledExecutorService refresher = null;
+      if (refreshSeconds > 0) {
+         refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+               Thread t = new Thread(r, "HotelDailyStats-refresher");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+         refresher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+               try {
+                  refreshDailyStats();
+               } catch (SQLException e) {
+                  // the changes stay queued for the next run
+                  System.err.println("Unable to refresh HotelDailyStats: " + e.getMessage());
+               }
+            }
+         }, 0, refreshSeconds, TimeUnit.SECONDS);
+      }
+      this._statsRefresher = refresher;
+   }//end Hotel
+
+   /**
+    * Creates a new session that shares the connection pool and in-memory
+    * indexes of an existing Hotel instance. The session starts logged out.
+    *
+    * @param parent the instance whose shared state is reused
+    */
+   private Hotel(Hotel parent) {
+      this._pool = parent._pool;
+      this._ownsPool = false;
+      this._hotelLocator = parent._hotelLocator;
+      this._availability = parent._availability;
+      this._principals = parent._principals;
+      this._leaderboard = parent._leaderboard;
+      this._rooms = parent._rooms;
+      this._metrics = parent._metrics;
+      this._audit = parent._audit;
+      this._exporter = null;
+      this._roomListener = null;
+      this._statsRefresher = null;
+   }//end Hotel
+
+   /**
+    * @return a new logged out session sharing this instance's connection pool
+    */
+   public Hotel newSession() {
+      return new Hotel(this);
+   }
+
+   // notified by the hotels_changed trigger of create_tables.sql
+   static final String HOTELS_CHANNEL = "hotels_changed";
+
+   /**
+    * Rebuilds the spatial hotel index from the Hotel table. The changes of
+    * any program are applied one hotel at a time with indexHotel() and
+    * unindexHotel() when the hotels_changed trigger notifies them; without
+    * notifications, call this after hotels are added, moved or removed.
+    *
+    * @throws java.sql.SQLException when failed to read the Hotel table
+    */
+   public void reloadHotelIndex() throws SQLException {
+      ColumnarResult hotels = executeQueryAndReturnColumns(
+         "SELECT H.hotelID, H.latitude, H.longitude, H.dateEstablished, H.hotelName FROM Hotel H");
+      List<HotelLocator.Entry> entries = new ArrayList<HotelLocator.Entry>(hotels.getRowCount());
+      for (int r = 0; r < hotels.getRowCount(); r++) {
+         if (hotels.isNull(r, 1) || hotels.isNull(r, 2))
+            continue; // hotels without a location can never be nearby
+         entries.add(new HotelLocator.Entry(
+            hotels.getInt(r, 0), hotels.getDouble(r, 1), hotels.getDouble(r, 2), hotels.rowStrings(r)));
+      }
+      this._hotelLocator.reload(entries);
+   }//end reloadHotelIndex
+
+   /**
+    * Adds or moves one hotel in the spatial index after it was inserted or
+    * updated in the Hotel table.
+    *
+    * @param hotelID the hotel to (re)index
+    * @throws java.sql.SQLException when failed to read the hotel
+    */
+   public void indexHotel(int hotelID) throws SQLException {
+      ColumnarResult hotel = executeQueryAndReturnColumns(
+         "SELECT H.hotelID, H.latitude, H.longitude, H.dateEstablished, H.hotelName FROM Hotel H WHERE H.hotelID = ?",
+         hotelID);
+      if (hotel.getRowCount() == 0 || hotel.isNull(0, 1) || hotel.isNull(0, 2)) {
+         this._hotelLocator.remove(hotelID);
+         return;
+      }
+      this._hotelLocator.put(new HotelLocator.Entry(
+         hotelID, hotel.getDouble(0, 1), hotel.getDouble(0, 2), hotel.rowStrings(0)));
+   }//end indexHotel
+
+   /**
+    * Removes a deleted hotel from the spatial index.
+    *
+    * @param hotelID the deleted hotel
+    */
+   public void unindexHotel(int hotelID) {
+      this._hotelLocator.remove(hotelID);
+   }
+
+   /**
+    * Rebuilds the availability engine from the Rooms and RoomBookings tables.
+    *
+    * @throws java.sql.SQLException when failed to read the tables
+    */
+   public void reloadAvailability() throws SQLException {
+      this._availability.clear();
+      ColumnarResult rooms = executeQueryAndReturnColumns("SELECT R.hotelID, R.roomNumber FROM Rooms R");
+      int[] hotelIDs = rooms.intColumn(0), roomNumbers = rooms.intColumn(1);
+      for (int r = 0; r < rooms.getRowCount(); r++) {
+         this._availability.addRoom(hotelIDs[r], roomNumbers[r]);
+      }
+      LocalDate from = this._availability.getStart(), to = this._availability.getEnd();
+      loadBookedDays(from, to);
+      this._availability.loaded(from, to);
+   }//end reloadAvailability
+
+   static final String BOOKED_DAYS_QUERY = "" +
+      "SELECT B.hotelID, B.roomNumber, B.bookingDate \n" +
+      "FROM RoomBookings B \n" +
+      "WHERE B.bookingDate >= ? \n" +
+      "AND B.bookingDate < ? \n";
+
+   static final String STAY_DAYS_QUERY = "" +
+      "SELECT S.hotelID, S.roomNumber, lower(S.stay), upper(S.stay) \n" +
+      "FROM RoomStays S \n" +
+      "WHERE S.stay && daterange(?, ?) \n";
+
+   /*
+    * Marks the bookings and stays of the day range [from, to) in the availability engine.
+    */
+   private void loadBookedDays(LocalDate from, LocalDate to) throws SQLException {
+      ColumnarResult booked = executeQueryAndReturnColumns(BOOKED_DAYS_QUERY, from, to);
+      int[] hotelIDs = booked.intColumn(0), roomNumbers = booked.intColumn(1);
+      for (int r = 0; r < booked.getRowCount(); r++) {
+         this._availability.markBooked(hotelIDs[r], roomNumbers[r], booked.getDate(r, 2));
+      }
+      // the engine clips each stay to the horizon
+      ColumnarResult stays = executeQueryAndReturnColumns(STAY_DAYS_QUERY, from, to);
+      for (int r = 0; r < stays.getRowCount(); r++) {
+         this._availability.markBooked(stays.getInt(r, 0), stays.getInt(r, 1), stays.getDate(r, 2), stays.getDate(r, 3));
+      }
+   }
+
+   // notified by the bookings_changed triggers of create_tables.sql
+   static final String BOOKINGS_CHANNEL = "bookings_changed";
+
+   /*
+    * Applies a bookings_changed notification to the availability engine:
+    * "+<hotelID>,<roomNumber>,<from>,<to>" for nights [from, to) of a room
+    * that were booked, "-..." for nights that were freed, and "*" after a
+    * statement that wrote too many rows to list.
+    */
+   private void applyBookingChange(String payload) throws SQLException {
+      if (payload == null || payload.equals("*")) {
+         reloadAvailability();
+         return;
+      }
+      String[] f = payload.substring(1).split(",");
+      int hotelID = Integer.parseInt(f[0]), roomNumber = Integer.parseInt(f[1]);
+      LocalDate from = LocalDate.parse(f[2]), to = LocalDate.parse(f[3]);
+      if (payload.charAt(0) == '+')
+         this._availability.markBooked(hotelID, roomNumber, from, to);
+      else
+         this._availability.markOpen(hotelID, roomNumber, from, to);
+   }
+
+   /**
+    * Returns the availability engine, first moving its horizon forward when
+    * the date has changed and loading the bookings of the newly covered days.
+    * Until they are loaded the engine leaves those days to the database.
+    *
+    * @return the shared availability engine
+    * @throws java.sql.SQLException when failed to load the new days
+    */
+   public RoomAvailability availability() throws SQLException {
+      LocalDate newDays = this._availability.rollTo(LocalDate.now());
+      if (newDays != null) {
+         LocalDate end = this._availability.getEnd();
+         loadBookedDays(newDays, end);
+         this._availability.loaded(newDays, end);
+      }
+      return this._availability;
+   }
+
+   // nights booked per hotel and customer, single nights and stays
+   static final String BOOKING_COUNTS_QUERY = "" +
+      "SELECT N.hotelID, N.customerID, SUM(N.nights) \n" +
+      "FROM (SELECT B.hotelID, B.customerID, 1 AS nights FROM RoomBookings B \n" +
+      "      UNION ALL \n" +
+      "      SELECT S.hotelID, S.customerID, upper(S.stay) - lower(S.stay) FROM RoomStays S) N \n" +
+      "GROUP BY N.hotelID, N.customerID \n";
+
+   /**
+    * Rebuilds the regular customer leaderboard from the RoomBookings table.
+    * Call after bookings are changed outside of bookRoom()/bookRoomBatch().
+    *
+    * @throws java.sql.SQLException when failed to read the bookings
+    */
+   public void reloadLeaderboard() throws SQLException {
+      this._leaderboard.clear();
+      ColumnarResult counts = executeQueryAndReturnColumns(BOOKING_COUNTS_QUERY);
+      int[] hotelIDs = counts.intColumn(0), customerIDs = counts.intColumn(1);
+      for (int r = 0; r < counts.getRowCount(); r++) {
+         this._leaderboard.add(hotelIDs[r], customerIDs[r], counts.getLong(r, 2));
+      }
+   }
+
+   /**
+    * Checks the credentials of a user and, when they match, makes this
+    * session act on behalf of that user.
+    *
+    * @param userID the user to log in
+    * @param password the password of the user
+    * @return true when the credentials are valid
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public boolean logIn(int userID, String password) throws SQLException {
+      Metrics.Series m = this._metrics.operation("logIn");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         // checks the password and loads the principal in one round trip
+         long generation = this._principals.generation();
+         Principal principal = loadPrincipal(LOGIN_QUERY, userID, password);
+         ok = true;
+         if (principal == null)
+            return false;
+         this._principals.put(principal, generation);
+         this._authorisedUser = userID;
+         return true;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end logIn
+
+   /**
+    * Makes this session act on behalf of a user whose credentials were
+    * already checked by logIn() in another session, e.g. by HotelServer
+    * for each request of a logged in client.
+    *
+    * @param userID the user
+    */
+   void resume(int userID) {
+      this._authorisedUser = userID;
+   }
+
+   /**
+    * @return the logged in user of this session, or -1
+    */
+   public int getAuthorisedUser() {
+      return this._authorisedUser;
+   }
+
+   /**
+    * Ends the session of the logged in user.
+    */
+   public void logOut() {
+      this._authorisedUser = -1;
+   }
+
+   // the user type, plus one row per managed hotel (or a single NULL hotel)
+   static final String PRINCIPAL_QUERY =
+      "SELECT U.userType, H.hotelID FROM Users U LEFT JOIN Hotel H ON H.managerUserID = U.userID " +
+      "WHERE U.userID = ? ";
+
+   static final String LOGIN_QUERY = PRINCIPAL_QUERY + "AND U.password = ?";
+
+   private Principal loadPrincipal(String query, Object... params) throws SQLException {
+      ColumnarResult rows = executeQueryAndReturnColumns(query, params);
+      if (rows.getRowCount() == 0)
+         return null;
+      int[] hotels = new int[rows.getRowCount()];
+      int n = 0;
+      for (int r = 0; r < rows.getRowCount(); r++) {
+         if (!rows.isNull(r, 1))
+            hotels[n++] = rows.getInt(r, 1);
+      }
+      return new Principal((Integer) params[0], rows.getString(0, 0), Arrays.copyOf(hotels, n));
+   }
+
+   /**
+    * Returns the user type and managed hotels of the logged in user, from
+    * the shared cache when possible.
+    *
+    * @return the principal, or null when nobody is logged in or the user no longer exists
+    * @throws java.sql.SQLException when failed to load the principal
+    */
+   public Principal getPrincipal() throws SQLException {
+      if (this._authorisedUser < 0)
+         return null;
+      Principal principal = this._principals.get(this._authorisedUser);
+      if (principal == null) {
+         long generation = this._principals.generation();
+         principal = loadPrincipal(PRINCIPAL_QUERY, this._authorisedUser);
+         if (principal != null)
+            this._principals.put(principal, generation);
+      }
+      return principal;
+   }
+
+   /**
+    * Drops the cached principal of a user. Call after changing the user's
+    * row in Users.
+    *
+    * @param userID the changed user
+    */
+   public void invalidatePrincipal(int userID) {
+      this._principals.invalidate(userID);
+   }
+
+   /**
+    * Drops every cached principal. Call after changing Hotel.managerUserID.
+    */
+   public void invalidatePrincipals() {
+      this._principals.invalidateAll();
+   }
+
+   /**
+    * @return the shared principal cache, for its metrics
+    */
+   public PrincipalCache getPrincipalCache() {
+      return this._principals;
+   }
+
+   /**
+    * Books one room-night for the logged in user.
+    *
+    * The insert itself is the serialization point: the unique constraint on
+    * RoomBookings(hotelID, roomNumber, bookingDate) lets exactly one of any
+    * number of concurrent sessions book a given room and date, and the
+    * others get CONFLICT back immediately instead of an error. A night
+    * inside a stay of RoomStays is rejected by a trigger and reported as
+    * CONFLICT too. A night the availability engine shows as booked is still
+    * tried, since its booking may have been deleted outside this program.
+    *
+    * @param hotelID the hotel
+    * @param roomNumber the room in the hotel
+    * @param date the night to book
+    * @return BOOKED, CONFLICT (retryable) or NO_SUCH_ROOM
+    * @throws java.sql.SQLException when the insert fails for another reason
+    */
+   public BookingResult bookRoom(int hotelID, int roomNumber, LocalDate date) throws SQLException {
+      Metrics.Series m = this._metrics.operation("bookRooms");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         BookingResult result = insertBooking(hotelID, roomNumber, date);
+         m.addRows(result == BookingResult.BOOKED ? 1 : 0);
+         ok = true;
+         return result;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end bookRoom
+
+   static final String BOOK_QUERY = "" +
+      "INSERT INTO RoomBookings(customerID, hotelID, roomNumber, bookingDate, price) \n" +
+      "SELECT ?, R.hotelID, R.roomNumber, ?, R.price \n" +
+      "FROM Rooms R \n" +
+      "WHERE R.hotelID = ? \n" +
+      "AND R.roomNumber = ? \n" +
+      "ON CONFLICT (hotelID, roomNumber, bookingDate) DO NOTHING";
+
+   static final String ROOM_EXISTS_QUERY = "SELECT R.roomNumber FROM Rooms R WHERE R.hotelID = ? AND R.roomNumber = ?";
+
+   // raised by the triggers of create_tables.sql when a night and a stay of a room overlap
+   private static boolean isExclusionViolation(SQLException e) {
+      // a failed JDBC batch chains the error of the statement
+      for (SQLException x = e; x != null; x = x.getNextException()) {
+         if ("23P01".equals(x.getSQLState()))
+            return true;
+      }
+      return false;
+   }
+
+   private BookingResult insertBooking(int hotelID, int roomNumber, LocalDate date) throws SQLException {
+      RoomAvailability availability = availability();
+      int inserted;
+      try {
+         inserted = executeUpdate(BOOK_QUERY, this._authorisedUser, date, hotelID, roomNumber);
+      } catch (SQLException e) {
+         if (!isExclusionViolation(e))
+            throw e;
+         // the night is part of a stay
+         availability.markBooked(hotelID, roomNumber, date);
+         return BookingResult.CONFLICT;
+      }
+      if (inserted == 1) {
+         availability.markBooked(hotelID, roomNumber, date);
+         this._leaderboard.recordBooking(hotelID, this._authorisedUser);
+         return BookingResult.BOOKED;
+      }
+
+      // nothing inserted: either the room does not exist or someone else holds it
+      if (executeQuery(ROOM_EXISTS_QUERY, hotelID, roomNumber) == 0)
+         return BookingResult.NO_SUCH_ROOM;
+      availability.markBooked(hotelID, roomNumber, date);
+      return BookingResult.CONFLICT;
+   }//end insertBooking
+
+   // rooms with no stay and no single-night booking in [from, to): one probe of the RoomStays exclusion
+   // index and one range scan of the RoomBookings unique index per room, whatever the length of the range
+   static final String FREE_ROOMS_QUERY = "" +
+      "SELECT R.roomNumber, R.price \n" +
+      "FROM Rooms R \n" +
+      "WHERE R.hotelID = ? \n" +
+      "AND NOT EXISTS (SELECT * FROM RoomStays S \n" +
+      "                WHERE S.hotelID = R.hotelID AND S.roomNumber = R.roomNumber AND S.stay && daterange(?, ?)) \n" +
+      "AND NOT EXISTS (SELECT * FROM RoomBookings B \n" +
+      "                WHERE B.hotelID = R.hotelID AND B.roomNumber = R.roomNumber \n" +
+      "                AND B.bookingDate >= ? AND B.bookingDate < ?) \n" +
+      "ORDER BY R.roomNumber";
+
+   /**
+    * Returns the rooms of a hotel that are free every night of [checkIn, checkOut).
+    *
+    * @param hotelID the hotel
+    * @param checkIn the first night
+    * @param checkOut the day after the last night
+    * @return the room numbers and prices, by room number
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ColumnarResult freeRooms(int hotelID, LocalDate checkIn, LocalDate checkOut) throws SQLException {
+      Metrics.Series m = this._metrics.operation("freeRooms");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         if (!checkIn.isBefore(checkOut))
+            throw new IllegalArgumentException("The check-out date must be after the check-in date.");
+         ColumnarResult rooms = executeQueryAndReturnColumns(FREE_ROOMS_QUERY, hotelID, checkIn, checkOut, checkIn, checkOut);
+         m.addRows(rooms.getRowCount());
+         ok = true;
+         return rooms;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end freeRooms
+
+   static final String STAY_QUERY = "" +
+      "INSERT INTO RoomStays(customerID, hotelID, roomNumber, stay, price) \n" +
+      "SELECT ?, R.hotelID, R.roomNumber, daterange(?, ?), R.price \n" +
+      "FROM Rooms R \n" +
+      "WHERE R.hotelID = ? \n" +
+      "AND R.roomNumber = ? \n" +
+      "ON CONFLICT DO NOTHING";
+
+   /**
+    * Books the nights [checkIn, checkOut) of one room for the logged in
+    * user as one RoomStays row, in one statement.
+    *
+    * As with bookRoom(), the insert is the serialization point: the
+    * exclusion constraint of RoomStays lets one of any overlapping stays in,
+    * and the triggers of create_tables.sql reject a stay that overlaps a
+    * single-night booking (and the reverse), so a lost race is reported as
+    * CONFLICT. As with bookRoom(), nights the availability engine shows as
+    * booked are still tried.
+    *
+    * @param hotelID the hotel
+    * @param roomNumber the room in the hotel
+    * @param checkIn the first night
+    * @param checkOut the day after the last night
+    * @return BOOKED, CONFLICT (retryable) or NO_SUCH_ROOM
+    * @throws java.sql.SQLException when the insert fails for another reason
+    */
+   public BookingResult bookStay(int hotelID, int roomNumber, LocalDate checkIn, LocalDate checkOut) throws SQLException {
+      Metrics.Series m = this._metrics.operation("bookStay");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         if (!checkIn.isBefore(checkOut))
+            throw new IllegalArgumentException("The check-out date must be after the check-in date.");
+         BookingResult result = insertStay(hotelID, roomNumber, checkIn, checkOut);
+         m.addRows(result == BookingResult.BOOKED ? 1 : 0);
+         ok = true;
+         return result;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end bookStay
+
+   private BookingResult insertStay(int hotelID, int roomNumber, LocalDate checkIn, LocalDate checkOut) throws SQLException {
+      RoomAvailability availability = availability();
+      int inserted;
+      try {
+         inserted = executeUpdate(STAY_QUERY, this._authorisedUser, checkIn, checkOut, hotelID, roomNumber);
+      } catch (SQLException e) {
+         if (!isExclusionViolation(e))
+            throw e;
+         // a night of the stay is booked on its own
+         return BookingResult.CONFLICT;
+      }
+      if (inserted == 1) {
+         availability.markBooked(hotelID, roomNumber, checkIn, checkOut);
+         this._leaderboard.add(hotelID, this._authorisedUser, checkOut.toEpochDay() - checkIn.toEpochDay());
+         return BookingResult.BOOKED;
+      }
+
+      // nothing inserted: either the room does not exist or some night is taken
+      if (executeQuery(ROOM_EXISTS_QUERY, hotelID, roomNumber) == 0)
+         return BookingResult.NO_SUCH_ROOM;
+      return BookingResult.CONFLICT;
+   }//end insertStay
+
+   // the arrays are bound as literals so the template is the same for any batch size
+   static final String BATCH_VALIDATE_QUERY = "" +
+      "SELECT V.ord, R.roomNumber IS NOT NULL, \n" +
+      "       EXISTS (SELECT * FROM RoomBookings B \n" +
+      "               WHERE B.hotelID = V.hotelID AND B.roomNumber = V.roomNumber AND B.bookingDate = V.bookingDate) \n" +
+      "       OR EXISTS (SELECT * FROM RoomStays S \n" +
+      "               WHERE S.hotelID = V.hotelID AND S.roomNumber = V.roomNumber AND S.stay @> V.bookingDate) \n" +
+      "FROM unnest(?::integer[], ?::integer[], ?::date[]) WITH ORDINALITY AS V(hotelID, roomNumber, bookingDate, ord) \n" +
+      "LEFT JOIN Rooms R ON R.hotelID = V.hotelID AND R.roomNumber = V.roomNumber \n";
+
+   // tries of a batch whose insert hits a stay committed after its validation
+   static final int BATCH_ATTEMPTS = 3;
+
+   // BOOK_QUERY, which records the price the room is booked at
+   static final String BATCH_INSERT_QUERY = BOOK_QUERY;
+
+   /**
+    * Books many room-nights for the logged in user with a constant number
+    * of round trips: one set-based query validates every item against Rooms
+    * and RoomBookings, then the valid items are inserted with one JDBC batch
+    * in a single transaction. An item that loses a race with another session
+    * between the two steps (or repeats an earlier item of the same batch) is
+    * reported as CONFLICT instead of failing the batch; a night that became
+    * part of a stay meanwhile makes the batch start over.
+    *
+    * @param requests the room-nights to book
+    * @return one result per request, in the same order
+    * @throws java.sql.SQLException when the batch fails for another reason; nothing is booked then
+    */
+   public List<BookingResult> bookRoomBatch(List<BookingRequest> requests) throws SQLException {
+      Metrics.Series m = this._metrics.operation("bookRoomBatch");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         List<BookingResult> results = insertBookings(requests);
+         m.addRows(Collections.frequency(results, BookingResult.BOOKED));
+         ok = true;
+         return results;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end bookRoomBatch
+
+   private List<BookingResult> insertBookings(List<BookingRequest> requests) throws SQLException {
+      int n = requests.size();
+      BookingResult[] results = new BookingResult[n];
+      if (n == 0)
+         return new ArrayList<BookingResult>();
+
+      int[] hotels = new int[n], rooms = new int[n];
+      String[] dates = new String[n];
+      for (int i = 0; i < n; i++) {
+         hotels[i] = requests.get(i).hotelID;
+         rooms[i] = requests.get(i).roomNumber;
+         dates[i] = requests.get(i).date.toString();
+      }
+
+      for (int attempt = 1; ; attempt++) {
+         Arrays.fill(results, null);
+         Connection conn = this._pool.borrow();
+         try {
+            StatementCache cache = this._pool.statementCache(conn);
+            conn.setAutoCommit(false);
+
+            long start = System.nanoTime();
+            ResultSet rs = cache.prepare(BATCH_VALIDATE_QUERY, arrayLiteral(hotels), arrayLiteral(rooms), arrayLiteral(dates)).executeQuery();
+            while (rs.next()) {
+               int i = rs.getInt(1) - 1;
+               if (!rs.getBoolean(2))
+                  results[i] = BookingResult.NO_SUCH_ROOM;
+               else if (rs.getBoolean(3))
+                  results[i] = BookingResult.CONFLICT;
+            }
+            rs.close();
+            this._metrics.sql(BATCH_VALIDATE_QUERY).addRows(n);
+            this._metrics.sql(BATCH_VALIDATE_QUERY).record(System.nanoTime() - start, true);
+
+            PreparedStatement insert = cache.prepare(BATCH_INSERT_QUERY);
+            List<Integer> batched = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+               if (results[i] != null)
+                  continue;
+               BookingRequest r = requests.get(i);
+               StatementCache.bind(insert, this._authorisedUser, r.date, r.hotelID, r.roomNumber);
+               insert.addBatch();
+               batched.add(i);
+            }
+            if (!batched.isEmpty()) {
+               start = System.nanoTime();
+               int[] counts = insert.executeBatch();
+               this._metrics.sql(BATCH_INSERT_QUERY).addRows(counts.length);
+               this._metrics.sql(BATCH_INSERT_QUERY).record(System.nanoTime() - start, true);
+               for (int k = 0; k < counts.length; k++) {
+                  // SUCCESS_NO_INFO means the driver did not report a count
+                  boolean inserted = counts[k] > 0 || counts[k] == Statement.SUCCESS_NO_INFO;
+                  results[batched.get(k)] = inserted ? BookingResult.BOOKED : BookingResult.CONFLICT;
+               }
+            }
+            conn.commit();
+            break;
+         } catch (SQLException e) {
+            conn.rollback();
+            // a night inserted into a stay committed since the validation: validate again
+            if (!isExclusionViolation(e) || attempt >= BATCH_ATTEMPTS)
+               throw e;
+         } finally {
+            this._pool.release(conn);
+         }
+      }
+
+      RoomAvailability availability = availability();
+      List<BookingResult> list = new ArrayList<BookingResult>(n);
+      for (int i = 0; i < n; i++) {
+         if (results[i] != BookingResult.NO_SUCH_ROOM) {
+            BookingRequest r = requests.get(i);
+            availability.markBooked(r.hotelID, r.roomNumber, r.date);
+         }
+         if (results[i] == BookingResult.BOOKED)
+            this._leaderboard.recordBooking(requests.get(i).hotelID, this._authorisedUser);
+         list.add(results[i]);
+      }
+      return list;
+   }//end insertBookings
+
+   // formats values as a postgres array literal, e.g. {1,2,3}
+   private static String arrayLiteral(int[] values) {
+      StringBuilder sb = new StringBuilder("{");
+      for (int i = 0; i < values.length; i++) {
+         if (i > 0)
+            sb.append(',');
+         sb.append(values[i]);
+      }
+      return sb.append('}').toString();
+   }
+
+   private static String arrayLiteral(String[] values) {
+      StringBuilder sb = new StringBuilder("{");
+      for (int i = 0; i < values.length; i++) {
+         if (i > 0)
+            sb.append(',');
+         sb.append(values[i]);
+      }
+      return sb.append('}').toString();
+   }
+
+   /**
+    * Finds the hotels within a radius of a point using the spatial index.
+    * Only the grid cells around the point are visited; candidates are then
+    * filtered exactly with calculateDistance().
+    *
+    * @param latitude the user latitude
+    * @param longitude the user longitude
+    * @param radius the maximum distance
+    * @return the matching hotels ordered by hotelID
+    */
+   public List<HotelLocator.Entry> findHotelsWithin(double latitude, double longitude, double radius) {
+      List<HotelLocator.Entry> result = new ArrayList<HotelLocator.Entry>();
+      for (HotelLocator.Entry e : this._hotelLocator.candidates(latitude, longitude, radius)) {
+         if (calculateDistance(latitude, longitude, e.latitude, e.longitude) <= radius)
+            result.add(e);
+      }
+      Collections.sort(result, new Comparator<HotelLocator.Entry>() {
+         public int compare(HotelLocator.Entry a, HotelLocator.Entry b) {
+            return Integer.compare(a.hotelID, b.hotelID);
+         }
+      });
+      return result;
+   }//end findHotelsWithin
+
+   /*
+    * Operations behind the menu, usable without a console. The menu
+    * functions below read their input, call these (or share their query
+    * templates), and print the result; CommandRunner calls them directly.
+    */
+
+   // the manager operations refuse users that are neither manager nor admin
+   static final String NOT_STAFF = "You are not allowed to perform this operation.";
+
+   static final String ROOMS_QUERY =
+      "SELECT R.roomNumber, R.price, R.imageURL FROM Rooms R WHERE R.hotelID=? ORDER BY R.roomNumber";
+
+   static final String ROOMS_ON_DATE_QUERY =
+      "SELECT R.price, R.roomNumber, " +
+      " CASE WHEN (NOT EXISTS (SELECT * FROM RoomBookings A WHERE A.bookingDate=? AND A.hotelID = R.hotelID AND A.roomNumber = R.roomNumber)" +
+      "  AND NOT EXISTS (SELECT * FROM RoomStays S WHERE S.hotelID = R.hotelID AND S.roomNumber = R.roomNumber AND S.stay @> ?::date))" +
+      " THEN 'open' ELSE 'reserved' END as Status" +
+      " FROM Rooms R" +
+      " WHERE R.hotelID=? ORDER BY R.roomNumber";
+
+   // rows per page of the history views (-Dhotel.historyPageSize)
+   static final int HISTORY_PAGE_SIZE = Integer.getInteger("hotel.historyPageSize", 5);
+
+   // the history views list a stay once, on its first night, with its stayID negated: the ids of
+   // both tables are then distinct, and one (date, id) cursor pages through both. Each side is read
+   // from its own index, newest first, and they are merged; a price is the one the night was booked at
+   private static final String BOOKING_COLUMNS =
+      "X.hotelID, X.roomNumber, X.price, X.bookingDate, X.bookingID, 1 AS nights \n";
+
+   private static final String STAY_COLUMNS =
+      "S.hotelID, S.roomNumber, S.price, lower(S.stay), -S.stayID, upper(S.stay) - lower(S.stay) \n";
+
+   private static final String BOOKINGS_AFTER = "AND (X.bookingDate, X.bookingID) < (?, ?) \n";
+
+   private static final String STAYS_AFTER = "AND (lower(S.stay), -S.stayID) < (?, ?) \n";
+
+   private static final String BOOKINGS_ORDER = "ORDER BY X.bookingDate DESC, X.bookingID DESC LIMIT ?) \n";
+
+   private static final String STAYS_ORDER = "ORDER BY lower(S.stay) DESC, -S.stayID DESC LIMIT ?)) AS A \n";
+
+   // the history views fetch one row more than a page to know whether there is a next one
+   private static String recentBookingsQuery(boolean after) {
+      return "" +
+         "SELECT A.hotelID, A.roomNumber, A.price, A.bookingDate, A.bookingID, A.nights \n" +
+         "FROM ((SELECT " + BOOKING_COLUMNS +
+         "       FROM RoomBookings X \n" +
+         "       WHERE X.customerID = ? \n" + (after ? BOOKINGS_AFTER : "") + BOOKINGS_ORDER +
+         "      UNION ALL \n" +
+         "      (SELECT " + STAY_COLUMNS +
+         "       FROM RoomStays S \n" +
+         "       WHERE S.customerID = ? \n" + (after ? STAYS_AFTER : "") + STAYS_ORDER +
+         "ORDER BY A.bookingDate DESC, A.bookingID DESC \n" +
+         "LIMIT ?";
+   }
+
+   static final String RECENT_BOOKINGS_QUERY = recentBookingsQuery(false);
+
+   static final String RECENT_BOOKINGS_AFTER_QUERY = recentBookingsQuery(true);
+
+   // the room and its log record change in one statement, hence atomically and in one round trip;
+   // a null imageURL keeps the current image, and a missing room logs nothing
+   static final String UPDATE_ROOM_QUERY = "" +
+      "WITH changed AS ( \n" +
+      "   UPDATE Rooms \n" +
+      "   SET price = ?, imageURL = COALESCE(?, imageURL) \n" +
+      "   WHERE hotelID = ? \n" +
+      "   AND roomNumber = ? \n" +
+      "   RETURNING hotelID, roomNumber) \n" +
+      "INSERT INTO RoomUpdatesLog(managerID, hotelID, roomNumber, updatedOn) \n" +
+      "SELECT ?, C.hotelID, C.roomNumber, ? FROM changed C";
+
+   private static final String RECENT_UPDATES_SELECT = "" +
+      "SELECT A.updateNumber, A.managerID, A.hotelID, A.roomNumber, A.updatedOn \n" +
+      "FROM RoomUpdatesLog A \n" +
+      "WHERE A.managerID = ? \n" +
+      "AND EXISTS (SELECT * FROM Hotel B WHERE B.managerUserID=A.managerID AND B.hotelID=A.hotelID)\n";
+
+   // updates are numbered in the order they are logged, so the number alone orders and pages them;
+   // updatedOn has microseconds, which a cursor in epoch milliseconds would cut off
+   private static final String RECENT_UPDATES_ORDER = "" +
+      "ORDER BY A.updateNumber DESC \n" +
+      "LIMIT ?";
+
+   static final String RECENT_UPDATES_QUERY = RECENT_UPDATES_SELECT + RECENT_UPDATES_ORDER;
+
+   static final String RECENT_UPDATES_AFTER_QUERY = RECENT_UPDATES_SELECT +
+      "AND A.updateNumber < ? \n" + RECENT_UPDATES_ORDER;
+
+   // the newest bookings and stays of each managed hotel come from their own index scans,
+   // so a page costs the same whatever the number of bookings
+   private static String hotelBookingsQuery(boolean after) {
+      return "" +
+         "SELECT A.hotelID, A.roomNumber, A.price, A.bookingDate, A.bookingID, A.nights \n" +
+         "FROM unnest(?::integer[]) AS H(hotelID), \n" +
+         "     LATERAL ((SELECT " + BOOKING_COLUMNS +
+         "               FROM RoomBookings X \n" +
+         "               WHERE X.hotelID = H.hotelID \n" + (after ? BOOKINGS_AFTER : "") + BOOKINGS_ORDER +
+         "              UNION ALL \n" +
+         "              (SELECT " + STAY_COLUMNS +
+         "               FROM RoomStays S \n" +
+         "               WHERE S.hotelID = H.hotelID \n" + (after ? STAYS_AFTER : "") + STAYS_ORDER +
+         "ORDER BY A.bookingDate DESC, A.bookingID DESC \n" +
+         "LIMIT ?";
+   }
+
+   static final String HOTEL_BOOKINGS_QUERY = hotelBookingsQuery(false);
+
+   static final String HOTEL_BOOKINGS_AFTER_QUERY = hotelBookingsQuery(true);
+
+   // number of regular customers shown to a manager
+   static final int REGULAR_CUSTOMERS = 5;
+
+   static final String CUSTOMER_NAMES_QUERY =
+      "SELECT U.userID, U.name FROM Users U WHERE U.userID = ANY (?::integer[])";
+
+   // place_repair_request (create_tables.sql) checks that the user manages the hotel, that the
+   // company has a repair of the room and that it was not requested yet, then inserts the request
+   static final String REPAIR_REQUEST_QUERY =
+      "SELECT place_repair_request(?, ?, ?, ?)";
+
+   // the outcome of each (hotel, room) pair, by position starting at 1
+   static final String REPAIR_REQUESTS_QUERY =
+      "SELECT R.ord, R.outcome FROM place_repair_requests(?, ?, ?::integer[], ?::integer[]) R";
+
+   static final String REPAIR_HISTORY_QUERY = "" +
+      "SELECT B.companyID, B.hotelID, B.roomNumber, B.repairDate \n" +
+      "FROM RoomRepairRequests A, RoomRepairs B \n" +
+      "WHERE A.repairID = B.repairID \n" +
+      "AND EXISTS (SELECT D.hotelID \n" +
+      "            FROM Hotel D \n" +
+      "            WHERE D.hotelID = B.hotelID \n" +
+      "            AND D.managerUserID = ?); \n"; // authorizedUser
+
+   // every booking, in the order of roombookings_date_idx so no sort holds the rows back
+   static final String ALL_BOOKINGS_QUERY = "" +
+      "SELECT B.bookingID, B.customerID, B.hotelID, B.roomNumber, B.bookingDate, B.price \n" +
+      "FROM RoomBookings B \n" +
+      "ORDER BY B.bookingDate, B.hotelID, B.roomNumber";
+
+   /**
+    * @return the principal of the logged in user
+    * @throws PermissionDeniedException when the user is neither manager nor admin
+    * @throws java.sql.SQLException when failed to load the principal
+    */
+   public Principal requireStaff() throws SQLException {
+      Principal principal = getPrincipal();
+      if (principal == null || !principal.isStaff())
+         throw new PermissionDeniedException(NOT_STAFF);
+      return principal;
+   }
+
+   /**
+    * @param latitude the position of the user
+    * @param longitude the position of the user
+    * @return the hotels within NEARBY_RADIUS, in the HOTEL_COLUMNS layout
+    */
+   public ColumnarResult hotelsNearby(double latitude, double longitude) {
+      Metrics.Series m = this._metrics.operation("viewHotels");
+      long start = System.nanoTime();
+      ColumnarResult.Builder rows = new ColumnarResult.Builder(HOTEL_COLUMNS, new ColumnarResult.Kind[] {
+         ColumnarResult.Kind.INT, ColumnarResult.Kind.DOUBLE, ColumnarResult.Kind.DOUBLE,
+         ColumnarResult.Kind.DATE, ColumnarResult.Kind.STRING });
+      for (HotelLocator.Entry e : findHotelsWithin(latitude, longitude, NEARBY_RADIUS)) {
+         rows.add(e.hotelID, e.latitude, e.longitude,
+            e.row[3] == null ? null : LocalDate.parse(e.row[3]), e.row[4]);
+      }
+      ColumnarResult result = rows.build();
+      m.addRows(result.getRowCount());
+      m.record(System.nanoTime() - start, true);
+      return result;
+   }
+
+   /**
+    * Lists the rooms of a hotel with their price and whether they are open
+    * or reserved on a date.
+    *
+    * @param hotelID the hotel
+    * @param date the night
+    * @return price, roomnumber and status of each room
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ColumnarResult roomsOn(int hotelID, LocalDate date) throws SQLException {
+      Metrics.Series m = this._metrics.operation("viewRooms");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         ColumnarResult result = listRooms(hotelID, date);
+         m.addRows(result.getRowCount());
+         ok = true;
+         return result;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }
+
+   private ColumnarResult listRooms(int hotelID, LocalDate date) throws SQLException {
+      RoomAvailability availability = availability();
+      if (!availability.covers(date)) {
+         // date outside the tracked horizon: ask the database
+         return executeQueryAndReturnColumns(ROOMS_ON_DATE_QUERY, date, date, hotelID);
+      }
+
+      // rooms from the catalog cache, status is one bit test per room in the availability engine
+      RoomCatalog.Rooms rooms = rooms(hotelID);
+      ColumnarResult.Builder rows = new ColumnarResult.Builder(new String[] { "price", "roomnumber", "status" },
+         new ColumnarResult.Kind[] { ColumnarResult.Kind.INT, ColumnarResult.Kind.INT, ColumnarResult.Kind.STRING });
+      for (int i = 0; i < rooms.size(); i++) {
+         Boolean booked = availability.isBooked(hotelID, rooms.getNumber(i), date);
+         if (booked == null) {
+            // a room the engine does not know yet, e.g. added by another program: ask the database
+            return executeQueryAndReturnColumns(ROOMS_ON_DATE_QUERY, date, date, hotelID);
+         }
+         rows.add(rooms.getPrice(i), rooms.getNumber(i), booked ? "reserved" : "open");
+      }
+      return rows.build();
+   }
+
+   /**
+    * Returns the rooms of a hotel from the room catalog cache, loading them
+    * on a miss.
+    *
+    * @param hotelID the hotel
+    * @return its rooms; empty when the hotel has none
+    * @throws java.sql.SQLException when failed to load the rooms
+    */
+   public RoomCatalog.Rooms rooms(int hotelID) throws SQLException {
+      RoomCatalog.Rooms rooms = this._rooms.get(hotelID);
+      if (rooms != null)
+         return rooms;
+      long generation = this._rooms.generation();
+      ColumnarResult result = executeQueryAndReturnColumns(ROOMS_QUERY, hotelID);
+      int n = result.getRowCount();
+      int[] numbers = new int[n], prices = new int[n];
+      String[] imageURLs = new String[n];
+      for (int r = 0; r < n; r++) {
+         numbers[r] = result.getInt(r, 0);
+         prices[r] = result.getInt(r, 1);
+         imageURLs[r] = result.getString(r, 2);
+      }
+      rooms = new RoomCatalog.Rooms(numbers, prices, imageURLs);
+      this._rooms.put(hotelID, rooms, generation);
+      return rooms;
+   }
+
+   /**
+    * @param hotelID the hotel
+    * @param roomNumber the room
+    * @return the price of the room from the catalog cache, or null when the hotel has no such room
+    * @throws java.sql.SQLException when failed to load the rooms
+    */
+   public Integer roomPrice(int hotelID, int roomNumber) throws SQLException {
+      RoomCatalog.Rooms rooms = rooms(hotelID);
+      int i = rooms.indexOf(roomNumber);
+      return i < 0 ? null : rooms.getPrice(i);
+   }
+
+   /**
+    * @return the room catalog cache shared by all sessions
+    */
+   public RoomCatalog getRoomCatalog() {
+      return this._rooms;
+   }
+
+   /**
+    * Returns a page of the bookings and stays of the logged in user, newest
+    * night first; a stay is one row, on its first night, with its nights.
+    *
+    * @param after the cursor of the previous page, or null for the first page
+    * @return the page and the cursor of the next one
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public HistoryPage recentBookings(String after) throws SQLException {
+      Metrics.Series m = this._metrics.operation("viewRecentBookingsfromCustomer");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         int limit = HISTORY_PAGE_SIZE + 1;
+         ColumnarResult result;
+         if (after == null) {
+            result = executeQueryAndReturnColumns(RECENT_BOOKINGS_QUERY,
+               this._authorisedUser, limit, this._authorisedUser, limit, limit);
+         } else {
+            LocalDate date = LocalDate.ofEpochDay(HistoryPage.key(after));
+            int id = HistoryPage.id(after);
+            result = executeQueryAndReturnColumns(RECENT_BOOKINGS_AFTER_QUERY,
+               this._authorisedUser, date, id, limit, this._authorisedUser, date, id, limit, limit);
+         }
+         HistoryPage page = new HistoryPage(result, HISTORY_PAGE_SIZE, 3, 4);
+         m.addRows(page.getRows().getRowCount());
+         ok = true;
+         return page;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }
+
+   /**
+    * Changes the price and image of a room and records the change in
+    * RoomUpdatesLog, both in one statement. Managers may update rooms of
+    * their hotels, admins of any hotel.
+    *
+    * @param hotelID the hotel
+    * @param roomNumber the room
+    * @param price the new price
+    * @param imageURL the new image url
+    * @return false when the hotel has no such room
+    * @throws PermissionDeniedException when the user may not update the room
+    * @throws java.sql.SQLException when failed to execute the update
+    */
+   public boolean updateRoom(int hotelID, int roomNumber, int price, String imageURL) throws SQLException {
+      Metrics.Series m = this._metrics.operation("updateRoomInfo");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         Principal principal = requireStaff();
+         // they must manage the hotel they chose, unless they are an admin
+         if (!principal.manages(hotelID) && !principal.isAdmin())
+            throw new PermissionDeniedException("You are not allowed to perform this operation in hotels you do not manage.");
+
+         int rows = executeUpdate(UPDATE_ROOM_QUERY, price, imageURL, hotelID, roomNumber,
+                                  this._authorisedUser, LocalDateTime.now());
+         this._rooms.invalidate(hotelID);
+         m.addRows(rows);
+         ok = true;
+         return rows > 0;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end updateRoom
+
+   /**
+    * Changes the prices of many rooms of a hotel through the audit log
+    * writer, e.g. for a bulk price change. Each room change is committed
+    * with its RoomUpdatesLog record; depending on hotel.audit.durability
+    * the call returns once the changes are committed or once they are
+    * queued. Rooms the hotel does not have are skipped.
+    *
+    * @param hotelID the hotel
+    * @param roomNumbers the rooms
+    * @param prices the new price of each room
+    * @return the number of changes committed or queued
+    * @throws PermissionDeniedException when the user may not update the rooms
+    * @throws java.sql.SQLException when the audit log queue stays full or a change fails
+    */
+   public int updatePrices(int hotelID, int[] roomNumbers, int[] prices) throws SQLException {
+      Metrics.Series m = this._metrics.operation("updatePrices");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         Principal principal = requireStaff();
+         if (!principal.manages(hotelID) && !principal.isAdmin())
+            throw new PermissionDeniedException("You are not allowed to perform this operation in hotels you do not manage.");
+         if (roomNumbers.length != prices.length)
+            throw new IllegalArgumentException("Expected one price per room.");
+
+         int count = 0;
+         for (int i = 0; i < roomNumbers.length; i++) {
+            if (this._audit.submit(this._authorisedUser, hotelID, roomNumbers[i], prices[i], null))
+               count++;
+         }
+         m.addRows(count);
+         ok = true;
+         return count;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end updatePrices
+
+   /**
+    * @return the write-behind writer of room changes, shared by all sessions
+    */
+   public AuditLogWriter getAuditLog() {
+      return this._audit;
+   }
+
+   /**
+    * Returns a page of the room updates made by the logged in manager,
+    * newest first.
+    *
+    * @param after the cursor of the previous page, or null for the first page
+    * @return the page and the cursor of the next one
+    * @throws PermissionDeniedException when the user is neither manager nor admin
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public HistoryPage recentUpdates(String after) throws SQLException {
+      Metrics.Series m = this._metrics.operation("viewRecentUpdates");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         requireStaff();
+         ColumnarResult result = after == null
+            ? executeQueryAndReturnColumns(RECENT_UPDATES_QUERY, this._authorisedUser, HISTORY_PAGE_SIZE + 1)
+            : executeQueryAndReturnColumns(RECENT_UPDATES_AFTER_QUERY, this._authorisedUser,
+                 HistoryPage.id(after), HISTORY_PAGE_SIZE + 1);
+         HistoryPage page = new HistoryPage(result, HISTORY_PAGE_SIZE, 0);
+         m.addRows(page.getRows().getRowCount());
+         ok = true;
+         return page;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }
+
+   /**
+    * Returns a page of the bookings and stays of the hotels managed by the
+    * logged in user, newest night first; a stay is one row, on its first
+    * night, with its nights.
+    *
+    * @param after the cursor of the previous page, or null for the first page
+    * @return the page and the cursor of the next one
+    * @throws PermissionDeniedException when the user is neither manager nor admin
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public HistoryPage hotelBookings(String after) throws SQLException {
+      Metrics.Series m = this._metrics.operation("viewBookingHistoryofHotel");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         String hotels = arrayLiteral(requireStaff().getManagedHotels());
+         int limit = HISTORY_PAGE_SIZE + 1;
+         ColumnarResult result;
+         if (after == null) {
+            result = executeQueryAndReturnColumns(HOTEL_BOOKINGS_QUERY, hotels, limit, limit, limit);
+         } else {
+            LocalDate date = LocalDate.ofEpochDay(HistoryPage.key(after));
+            int id = HistoryPage.id(after);
+            result = executeQueryAndReturnColumns(HOTEL_BOOKINGS_AFTER_QUERY, hotels,
+               date, id, limit, date, id, limit, limit);
+         }
+         HistoryPage page = new HistoryPage(result, HISTORY_PAGE_SIZE, 3, 4);
+         m.addRows(page.getRows().getRowCount());
+         ok = true;
+         return page;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }
+
+   /**
+    * Returns the customers with the most bookings in the managed hotels,
+    * read from the leaderboard; only their names come from the database.
+    *
+    * @return hotelid, userid, name and count of the top customers
+    * @throws PermissionDeniedException when the user is neither manager nor admin
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ColumnarResult regularCustomers() throws SQLException {
+      Metrics.Series m = this._metrics.operation("viewRegularCustomers");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         Principal principal = requireStaff();
+         List<CustomerLeaderboard.Entry> top = this._leaderboard.top(principal.getManagedHotels(), REGULAR_CUSTOMERS);
+
+         int[] customerIDs = new int[top.size()];
+         for (int i = 0; i < customerIDs.length; i++)
+            customerIDs[i] = top.get(i).customerID;
+         Map<Integer, String> names = new HashMap<Integer, String>();
+         if (customerIDs.length > 0) {
+            ColumnarResult rows = executeQueryAndReturnColumns(CUSTOMER_NAMES_QUERY, arrayLiteral(customerIDs));
+            for (int r = 0; r < rows.getRowCount(); r++)
+               names.put(rows.getInt(r, 0), rows.getString(r, 1));
+         }
+
+         ColumnarResult.Builder builder = new ColumnarResult.Builder(
+            new String[] {"hotelid", "userid", "name", "count"},
+            new ColumnarResult.Kind[] {ColumnarResult.Kind.INT, ColumnarResult.Kind.INT,
+                                       ColumnarResult.Kind.STRING, ColumnarResult.Kind.LONG});
+         for (CustomerLeaderboard.Entry e : top)
+            builder.add(e.hotelID, e.customerID, names.get(e.customerID), e.bookings);
+         ColumnarResult result = builder.build();
+         m.addRows(result.getRowCount());
+         ok = true;
+         return result;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }
+
+   /**
+    * Requests a repair of a room from a maintenance company.
+    *
+    * @param hotelID the hotel, which the user must manage
+    * @param roomNumber the room
+    * @param companyID the maintenance company
+    * @return OK when the request was placed, otherwise why not
+    * @throws PermissionDeniedException when the user is neither manager nor admin
+    * @throws java.sql.SQLException when failed to execute a query
+    */
+   public RepairOutcome placeRepairRequest(int hotelID, int roomNumber, int companyID) throws SQLException {
+      Metrics.Series m = this._metrics.operation("placeRoomRepairRequests");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         RepairOutcome outcome = requestRepair(hotelID, roomNumber, companyID);
+         m.addRows(outcome == RepairOutcome.OK ? 1 : 0);
+         ok = true;
+         return outcome;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end placeRepairRequest
+
+   // the checks and the insert run in one statement, so in one transaction
+   private RepairOutcome requestRepair(int hotelID, int roomNumber, int companyID) throws SQLException {
+      requireStaff();
+      ColumnarResult result = executeQueryAndReturnColumns(REPAIR_REQUEST_QUERY,
+         this._authorisedUser, companyID, hotelID, roomNumber);
+      return RepairOutcome.valueOf(result.getString(0, 0));
+   }//end requestRepair
+
+   /**
+    * Requests repairs of many rooms from a maintenance company at once. The
+    * requests are checked and placed in one statement; each room gets the
+    * outcome placeRepairRequest would give it.
+    *
+    * @param companyID the maintenance company
+    * @param hotelIDs the hotel of each room
+    * @param roomNumbers the rooms
+    * @return the outcome of each room, in the order given
+    * @throws PermissionDeniedException when the user is neither manager nor admin
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<RepairOutcome> placeRepairRequests(int companyID, int[] hotelIDs, int[] roomNumbers) throws SQLException {
+      if (hotelIDs.length != roomNumbers.length)
+         throw new IllegalArgumentException("hotelIDs and roomNumbers differ in length");
+      Metrics.Series m = this._metrics.operation("placeRoomRepairRequestsBulk");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         requireStaff();
+         ColumnarResult rows = executeQueryAndReturnColumns(REPAIR_REQUESTS_QUERY,
+            this._authorisedUser, companyID, arrayLiteral(hotelIDs), arrayLiteral(roomNumbers));
+         RepairOutcome[] outcomes = new RepairOutcome[hotelIDs.length];
+         int placed = 0;
+         for (int r = 0; r < rows.getRowCount(); r++) {
+            RepairOutcome outcome = RepairOutcome.valueOf(rows.getString(r, 1));
+            outcomes[(int) rows.getLong(r, 0) - 1] = outcome;
+            if (outcome == RepairOutcome.OK)
+               placed++;
+         }
+         m.addRows(placed);
+         ok = true;
+         return Arrays.asList(outcomes);
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end placeRepairRequests
+
+   /**
+    * @return the repair requests of the hotels managed by the logged in user
+    * @throws PermissionDeniedException when the user is neither manager nor admin
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ColumnarResult repairHistory() throws SQLException {
+      Metrics.Series m = this._metrics.operation("viewRoomRepairHistory");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         requireStaff();
+         ColumnarResult result = executeQueryAndReturnColumns(REPAIR_HISTORY_QUERY, this._authorisedUser);
+         m.addRows(result.getRowCount());
+         ok = true;
+         return result;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }
+
+   // one refresh at a time: a refresh that wrote a day from an older snapshot after a newer one would
+   // leave it stale; the others skip instead of waiting, the changes stay queued for the next one
+   static final String TRY_LOCK_STATS_QUERY =
+      "SELECT pg_try_advisory_xact_lock('HotelDailyStats'::regclass::oid::bigint)";
+
+   static final String LOCK_STATS_QUERY =
+      "SELECT pg_advisory_xact_lock('HotelDailyStats'::regclass::oid::bigint)";
+
+   // recomputes every (hotel, day) the triggers queued in HotelStatsChanges from the bookings and
+   // stays of that day, at the prices they were booked at, and takes them off the queue; the DELETE
+   // and the SELECT share one snapshot, so a change that commits meanwhile stays queued. A day without
+   // bookings left gets a zero row
+   static final String REFRESH_STATS_QUERY = "" +
+      "WITH changed AS (DELETE FROM HotelStatsChanges RETURNING hotelID, statDate) \n" +
+      "INSERT INTO HotelDailyStats(hotelID, statDate, bookedRooms, revenue) \n" +
+      "SELECT D.hotelID, D.statDate, N.rooms + S.rooms, N.revenue + S.revenue \n" +
+      "FROM (SELECT DISTINCT C.hotelID, C.statDate FROM changed C) AS D, \n" +
+      "     LATERAL (SELECT COUNT(*) AS rooms, COALESCE(SUM(B.price), 0) AS revenue \n" +
+      "              FROM RoomBookings B \n" +
+      "              WHERE B.hotelID = D.hotelID AND B.bookingDate = D.statDate) AS N, \n" +
+      "     LATERAL (SELECT COUNT(*) AS rooms, COALESCE(SUM(T.price), 0) AS revenue \n" +
+      "              FROM RoomStays T \n" +
+      "              WHERE T.hotelID = D.hotelID AND T.stay @> D.statDate) AS S \n" +
+      "ON CONFLICT (hotelID, statDate) DO UPDATE \n" +
+      "SET bookedRooms = EXCLUDED.bookedRooms, revenue = EXCLUDED.revenue";
+
+   // a stay counts on each of its nights
+   static final String RELOAD_STATS_QUERY = "" +
+      "INSERT INTO HotelDailyStats(hotelID, statDate, bookedRooms, revenue) \n" +
+      "SELECT N.hotelID, N.statDate, COUNT(*), SUM(N.price) \n" +
+      "FROM (SELECT B.hotelID, B.bookingDate AS statDate, B.price FROM RoomBookings B \n" +
+      "      UNION ALL \n" +
+      "      SELECT T.hotelID, generate_series(lower(T.stay), upper(T.stay) - 1, interval '1 day')::date, T.price \n" +
+      "      FROM RoomStays T) AS N \n" +
+      "GROUP BY N.hotelID, N.statDate";
+
+   static final String DAILY_STATS_QUERY = "" +
+      "SELECT S.statDate, S.bookedRooms, \n" +
+      "       ROUND(100.0 * S.bookedRooms / NULLIF(R.rooms, 0), 1) AS occupancy, S.revenue \n" +
+      "FROM HotelDailyStats S, (SELECT COUNT(*) AS rooms FROM Rooms WHERE hotelID = ?) R \n" +
+      "WHERE S.hotelID = ? \n" +
+      "AND S.statDate >= ? \n" +
+      "AND S.statDate < ? \n" +
+      "ORDER BY S.statDate";
+
+   // occupancy of a month counts only its days inside [from, to)
+   static final String MONTHLY_STATS_QUERY = "" +
+      "SELECT M.month, M.bookedRooms, \n" +
+      "       ROUND(100.0 * M.bookedRooms / NULLIF(R.rooms * \n" +
+      "             (LEAST((M.month + interval '1 month')::date, ?::date) - GREATEST(M.month, ?::date)), 0), 1) AS occupancy, \n" +
+      "       M.revenue \n" +
+      "FROM (SELECT date_trunc('month', S.statDate)::date AS month, \n" +
+      "             SUM(S.bookedRooms) AS bookedRooms, SUM(S.revenue) AS revenue \n" +
+      "      FROM HotelDailyStats S \n" +
+      "      WHERE S.hotelID = ? \n" +
+      "      AND S.statDate >= ? \n" +
+      "      AND S.statDate < ? \n" +
+      "      GROUP BY 1) AS M, \n" +
+      "     (SELECT COUNT(*) AS rooms FROM Rooms WHERE hotelID = ?) R \n" +
+      "ORDER BY M.month";
 
    /**
-    * Creates a new instance of Hotel 
+    * Folds the booking changes queued since the last refresh into
+    * HotelDailyStats. The triggers of create_tables.sql queue the (hotel,
+    * day) of every booking and every night of a stay inserted, moved,
+    * deleted or repriced by a room price change; each is recomputed from
+    * the bookings and stays of that day at the prices they were booked at,
+    * so the work depends on the changed days only. A change is queued in the transaction that makes it, so one that
+    * commits late is folded in by the refresh that first sees it. The owner
+    * instance runs this every hotel.stats.refreshSeconds.
     *
-    * @param hostname the MySQL or PostgreSQL server hostname
-    * @param database the name of the database
-    * @param username the user name used to login to the database
-    * @param password the user login password
-    * @throws java.sql.SQLException when failed to make a connection.
+    * @return the number of (hotel, day) rows written, 0 when another refresh was running
+    * @throws java.sql.SQLException when the refresh fails; nothing is changed then
     */
-   public Hotel(String dbname, String dbport, String user, String passwd) throws SQLException {
+   public int refreshDailyStats() throws SQLException {
+      Connection conn = this._pool.borrow();
+      try {
+         StatementCache cache = this._pool.statementCache(conn);
+         conn.setAutoCommit(false);
+
+         int written = 0;
+         if (lockStats(cache, false)) {
+            long start = System.nanoTime();
+            written = cache.prepare(REFRESH_STATS_QUERY).executeUpdate();
+            this._metrics.sql(REFRESH_STATS_QUERY).addRows(written);
+            this._metrics.sql(REFRESH_STATS_QUERY).record(System.nanoTime() - start, true);
+         }
+         conn.commit();
+         return written;
+      } catch (SQLException e) {
+         conn.rollback();
+         throw e;
+      } finally {
+         this._pool.release(conn);
+      }
+   }//end refreshDailyStats
 
-      System.out.print("Connecting to database...");
-      try{
-         // constructs the connection URL
-         String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-         System.out.println ("Connection URL: " + url + "\n");
+   /**
+    * Rebuilds HotelDailyStats from scratch, e.g. after it was lost. Waits
+    * for a running refresh; the changes that commit meanwhile stay queued.
+    *
+    * @return the number of (hotel, day) rows written
+    * @throws java.sql.SQLException when failed to rebuild the table
+    */
+   public int reloadDailyStats() throws SQLException {
+      Connection conn = this._pool.borrow();
+      try {
+         StatementCache cache = this._pool.statementCache(conn);
+         conn.setAutoCommit(false);
+
+         lockStats(cache, true);
+         cache.prepare("DELETE FROM HotelStatsChanges").executeUpdate();
+         cache.prepare("DELETE FROM HotelDailyStats").executeUpdate();
+         int written = cache.prepare(RELOAD_STATS_QUERY).executeUpdate();
+         conn.commit();
+         return written;
+      } catch (SQLException e) {
+         conn.rollback();
+         throw e;
+      } finally {
+         this._pool.release(conn);
+      }
+   }//end reloadDailyStats
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
-         System.out.println("Done");
-      }catch (Exception e){
-         System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
-         System.out.println("Make sure you started postgres on this machine");
-         System.exit(-1);
-      }//end catch
-   }//end Hotel
+   // takes the transaction lock of the refreshes; false when it is taken and wait is false
+   private static boolean lockStats(StatementCache cache, boolean wait) throws SQLException {
+      ResultSet rs = cache.prepare(wait ? LOCK_STATS_QUERY : TRY_LOCK_STATS_QUERY).executeQuery();
+      try {
+         rs.next();
+         return wait || rs.getBoolean(1);
+      } finally {
+         rs.close();
+      }
+   }
+
+   /**
+    * Returns booked rooms, occupancy (percent of the rooms) and revenue of a
+    * hotel per day or per month, from HotelDailyStats as of its last
+    * refresh (see refreshDailyStats), so reading costs no refresh. Days
+    * without bookings have no row or a zero one.
+    *
+    * @param hotelID the hotel, which the user must manage unless an admin
+    * @param from the first day
+    * @param to the day after the last one
+    * @param monthly true for one row per month, false for one per day
+    * @return the rows, oldest first
+    * @throws PermissionDeniedException when the user may not see the hotel
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ColumnarResult hotelStats(int hotelID, LocalDate from, LocalDate to, boolean monthly) throws SQLException {
+      Metrics.Series m = this._metrics.operation("viewHotelStats");
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         Principal principal = requireStaff();
+         if (!principal.manages(hotelID) && !principal.isAdmin())
+            throw new PermissionDeniedException("You are not allowed to perform this operation in hotels you do not manage.");
+
+         ColumnarResult result = monthly
+            ? executeQueryAndReturnColumns(MONTHLY_STATS_QUERY, to, from, hotelID, from, to, hotelID)
+            : executeQueryAndReturnColumns(DAILY_STATS_QUERY, hotelID, hotelID, from, to);
+         m.addRows(result.getRowCount());
+         ok = true;
+         return result;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end hotelStats
+
+   /**
+    * @return the counters shared by all sessions
+    */
+   public Metrics getMetrics() {
+      return this._metrics;
+   }
+
+   /**
+    * @return the connection pool backing this session
+    */
+   public ConnectionPool getPool() {
+      return this._pool;
+   }
 
    // Method to calculate euclidean distance between two latitude, longitude pairs. 
    public double calculateDistance (double lat1, double long1, double lat2, double long2){
@@ -77,22 +1641,59 @@ public class Hotel {
       double t2 = (long1 - long2) * (long1 - long2);
       return Math.sqrt(t1 + t2); 
    }
+
+   // dates are entered as mm/dd/yyyy, leading zeros optional
+   private static final DateTimeFormatter DATE_INPUT = DateTimeFormatter.ofPattern("M/d/yyyy");
+
+   /**
+    * Parses a date typed by the user so it can be bound as a DATE parameter.
+    *
+    * @param input the date in mm/dd/yyyy format
+    * @return the date
+    * @throws java.time.format.DateTimeParseException when the input is not a valid date
+    */
+   public static LocalDate parseDate(String input) {
+      return LocalDate.parse(input.trim(), DATE_INPUT);
+   }
+
    /**
     * Method to execute an update SQL statement.  Update SQL instructions
     * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
     *
-    * @param sql the input SQL string
+    * The statement is prepared once per pooled connection and reused from
+    * the connection's statement cache; params are bound to the '?'
+    * placeholders in order.
+    *
+    * @param sql the input SQL template
+    * @param params values bound to the template placeholders
+    * @return the number of rows affected
     * @throws java.sql.SQLException when update failed
     */
-   public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the update instruction
-      stmt.executeUpdate (sql);
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      Connection conn = this._pool.borrow();
+      try {
+         return executeUpdate(conn, sql, params);
+      } finally {
+         this._pool.release(conn);
+      }
+   }//end executeUpdate
 
-      // close the instruction
-      stmt.close ();
+   private int executeUpdate (Connection conn, String sql, Object... params) throws SQLException {
+      Metrics.Series m = this._metrics.sql(sql);
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         // fetches the cached statement and binds the parameters
+         PreparedStatement stmt = this._pool.statementCache(conn).prepare(sql, params);
+
+         // issues the update instruction
+         int rows = stmt.executeUpdate ();
+         m.addRows(rows);
+         ok = true;
+         return rows;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
    }//end executeUpdate
 
    /**
@@ -100,16 +1701,37 @@ public class Hotel {
     * method issues the query to the DBMS and outputs the results to
     * standard out.
     *
-    * @param query the input query string
+    * @param query the input query template
+    * @param params values bound to the template placeholders
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      Connection conn = this._pool.borrow();
+      try {
+         return executeQueryAndPrintResult(conn, query, params);
+      } finally {
+         this._pool.release(conn);
+      }
+   }//end executeQueryAndPrintResult
+
+   private int executeQueryAndPrintResult (Connection conn, String query, Object... params) throws SQLException {
+      Metrics.Series m = this._metrics.sql(query);
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         int rows = printResult(conn, query, params);
+         m.addRows(rows);
+         ok = true;
+         return rows;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end executeQueryAndPrintResult
 
+   private int printResult (Connection conn, String query, Object... params) throws SQLException {
       // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
+      ResultSet rs = this._pool.statementCache(conn).prepare(query, params).executeQuery ();
 
       /*
        ** obtains the metadata object for the returned result set.  The metadata
@@ -134,7 +1756,7 @@ public class Hotel {
          System.out.println ();
          ++rowCount;
       }//end while
-      stmt.close ();
+      rs.close ();
       return rowCount;
    }//end executeQuery
 
@@ -143,16 +1765,37 @@ public class Hotel {
     * method issues the query to the DBMS and returns the results as
     * a list of records. Each record in turn is a list of attribute values
     *
-    * @param query the input query string
+    * @param query the input query template
+    * @param params values bound to the template placeholders
     * @return the query result as a list of records
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      Connection conn = this._pool.borrow();
+      try {
+         return executeQueryAndReturnResult(conn, query, params);
+      } finally {
+         this._pool.release(conn);
+      }
+   }//end executeQueryAndReturnResult
 
+   private List<List<String>> executeQueryAndReturnResult (Connection conn, String query, Object... params) throws SQLException {
+      Metrics.Series m = this._metrics.sql(query);
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         List<List<String>> result = returnResult(conn, query, params);
+         m.addRows(result.size());
+         ok = true;
+         return result;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end executeQueryAndReturnResult
+
+   private List<List<String>> returnResult (Connection conn, String query, Object... params) throws SQLException {
       // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
+      ResultSet rs = this._pool.statementCache(conn).prepare(query, params).executeQuery ();
 
       /*
        ** obtains the metadata object for the returned result set.  The metadata
@@ -171,71 +1814,150 @@ public class Hotel {
 			record.add(rs.getString (i));
         result.add(record);
       }//end while
-      stmt.close ();
+      rs.close ();
       return result;
    }//end executeQueryAndReturnResult
 
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the results in typed
+    * columns: numbers and dates as primitive arrays, text dictionary
+    * encoded. Prefer this over executeQueryAndReturnResult for new code.
+    *
+    * @param query the input query template
+    * @param params values bound to the template placeholders
+    * @return the query result, column by column
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public ColumnarResult executeQueryAndReturnColumns (String query, Object... params) throws SQLException {
+      Metrics.Series m = this._metrics.sql(query);
+      long start = System.nanoTime();
+      boolean ok = false;
+      Connection conn = this._pool.borrow();
+      try {
+         ResultSet rs = this._pool.statementCache(conn).prepare(query, params).executeQuery ();
+         try {
+            ColumnarResult result = ColumnarResult.from(rs);
+            m.addRows(result.getRowCount());
+            ok = true;
+            return result;
+         } finally {
+            rs.close();
+         }
+      } finally {
+         this._pool.release(conn);
+         m.record(System.nanoTime() - start, ok);
+      }
+   }//end executeQueryAndReturnColumns
+
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and returns the number of results
     *
-    * @param query the input query string
+    * @param query the input query template
+    * @param params values bound to the template placeholders
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
+   public int executeQuery (String query, Object... params) throws SQLException {
+      Connection conn = this._pool.borrow();
+      try {
+         return executeQuery(conn, query, params);
+      } finally {
+         this._pool.release(conn);
+      }
+   }//end executeQuery
 
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
+   private int executeQuery (Connection conn, String query, Object... params) throws SQLException {
+      Metrics.Series m = this._metrics.sql(query);
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         // issues the query instruction
+         ResultSet rs = this._pool.statementCache(conn).prepare(query, params).executeQuery ();
 
-       int rowCount = 0;
+         int rowCount = 0;
 
-       // iterates through the result set and count nuber of results.
-       while (rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
+         // iterates through the result set and count nuber of results.
+         while (rs.next()){
+            rowCount++;
+         }//end while
+         rs.close ();
+         m.addRows(rowCount);
+         ok = true;
+         return rowCount;
+      } finally {
+         m.record(System.nanoTime() - start, ok);
+      }
    }
 
    /**
     * Method to fetch the last value from sequence. This
     * method issues the query to the DBMS and returns the current
-    * value of sequence used for autogenerated keys
+    * value of sequence used for autogenerated keys.
+    *
+    * currval() is scoped to the database session, so with pooled connections
+    * this only works on the connection that ran the insert.
     *
+    * @param conn the connection that ran the insert
     * @param sequence name of the DB sequence
     * @return current value of a sequence
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int getCurrSeqVal(String sequence) throws SQLException {
-      Statement stmt = this._connection.createStatement ();
-
-      ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-      if (rs.next())
-         return rs.getInt(1);
-      return -1;
+   public int getCurrSeqVal(Connection conn, String sequence) throws SQLException {
+      ResultSet rs = this._pool.statementCache(conn).prepare("SELECT currval(?)", sequence).executeQuery ();
+      try {
+         if (rs.next())
+            return rs.getInt(1);
+         return -1;
+      } finally {
+         rs.close();
+      }
    }
 
-   public int getNewUserID(String sql) throws SQLException {
-      Statement stmt = this._connection.createStatement ();
-      ResultSet rs = stmt.executeQuery (sql);
-      if (rs.next())
-         return rs.getInt(1);
-      return -1;
+   // new users are customers; the cast binds the string to the user_type enum
+   static final String CREATE_USER_QUERY =
+      "INSERT INTO Users(name, password, userType) VALUES (?, ?, ?::user_type) RETURNING userID";
+
+   /**
+    * Runs a query, typically an INSERT ... RETURNING, and returns the first
+    * column of its first row.
+    *
+    * @param sql the query
+    * @param params the values of its placeholders
+    * @return the value, or -1 when there is no row
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int getNewUserID(String sql, Object... params) throws SQLException {
+      Connection conn = this._pool.borrow();
+      try {
+         ResultSet rs = this._pool.statementCache(conn).prepare(sql, params).executeQuery ();
+         try {
+            if (rs.next())
+               return rs.getInt(1);
+            return -1;
+         } finally {
+            rs.close();
+         }
+      } finally {
+         this._pool.release(conn);
+      }
    }
    /**
-    * Method to close the physical connection if it is open.
+    * Method to close the connection pool if this instance opened it.
     */
    public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
-      }catch (SQLException e){
-         // ignored.
-      }//end try
+      if (this._exporter != null)
+         this._exporter.close();
+      if (this._statsRefresher != null)
+         this._statsRefresher.shutdownNow();
+      if (this._roomListener != null)
+         this._roomListener.close();
+      if (this._ownsPool && this._audit != null)
+         this._audit.close();
+      if (this._ownsPool && this._pool != null){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -298,6 +2020,9 @@ public class Hotel {
                 System.out.println("8. View 5 regular Customers");
                 System.out.println("9. Place room repair Request to a company");
                 System.out.println("10. View room repair Requests history");
+                System.out.println("11. View occupancy and revenue of a hotel");
+                System.out.println("12. Book a stay of several nights");
+                System.out.println("13. Dump all bookings (admins)");
 
                 System.out.println(".........................");
                 System.out.println("20. Log out");
@@ -312,7 +2037,10 @@ public class Hotel {
                    case 8: viewRegularCustomers(esql); break;
                    case 9: placeRoomRepairRequests(esql); break;
                    case 10: viewRoomRepairHistory(esql); break;
-                   case 20: usermenu = false; break;
+                   case 11: viewHotelStats(esql); break;
+                   case 12: bookStays(esql); break;
+                   case 13: dumpBookings(esql); break;
+                   case 20: esql.logOut(); usermenu = false; break;
                    default : System.out.println("Unrecognized choice!"); break;
                 }
               }
@@ -324,6 +2052,17 @@ public class Hotel {
          // make sure to cleanup the created table and close the connection.
          try{
             if(esql != null) {
+               // pool and statement cache metrics, for sizing with -Dhotel.pool.* / -Dhotel.statementCache.size
+               if (Boolean.getBoolean("hotel.stats")) {
+                  System.out.println(esql.getPool().stats());
+                  System.out.println("principal cache: hits=" + esql.getPrincipalCache().getHits() +
+                     " misses=" + esql.getPrincipalCache().getMisses());
+                  System.out.println(esql.getRoomCatalog().stats());
+                  System.out.println(esql.getAuditLog().stats());
+                  Writer summary = new OutputStreamWriter(System.out);
+                  esql.getMetrics().writeSummary(summary);
+                  summary.flush();
+               }
                System.out.print("Disconnecting from database...");
                esql.cleanup ();
                System.out.println("Done\n\nBye !");
@@ -370,10 +2109,9 @@ public class Hotel {
          String name = in.readLine();
          System.out.print("\tEnter password: ");
          String password = in.readLine(); 
-         String type = "Customer";
-			String query = String.format("INSERT INTO USERS (name, password, userType) VALUES ('%s','%s', '%s')", name, password, type);
-         esql.executeUpdate(query);
-         System.out.println ("User successfully created with userID = " + esql.getNewUserID("SELECT last_value FROM users_userID_seq"));
+         // the new userID comes back from the insert itself, whatever other sessions insert meanwhile
+         int userID = esql.getNewUserID(CREATE_USER_QUERY, name, password, "customer");
+         System.out.println ("User successfully created with userID = " + userID);
          
       }catch(Exception e){
          System.err.println (e.getMessage ());
@@ -392,9 +2130,7 @@ public class Hotel {
          System.out.print("\tEnter password: ");
          String password = in.readLine();
 
-         String query = String.format("SELECT * FROM USERS WHERE userID = '%s' AND password = '%s'", userID, password);
-         int userNum = esql.executeQuery(query);
-         if (userNum > 0)
+         if (esql.logIn(Integer.parseInt(userID), password))
             return userID;
          return null;
       }catch(Exception e){
@@ -414,91 +2150,142 @@ public class Hotel {
 
       Credit to: https://stackoverflow.com/questions/38623194/jdbc-format-resultset-as-tabular-string
    */
-   public void executeQueryAndPrettyPrint(String query) throws SQLException {
-
-      StringBuilder stringResponse = new StringBuilder();
-
-      // Creates a statement object based on our connection
-      Statement stmt = this._connection.createStatement();
-
-      // Execute query argument and save in ResultSet
-      ResultSet res = stmt.executeQuery(query);
-
-      // Get metadata to know how to format this thing lol
-      ResultSetMetaData meta = res.getMetaData();
-
-      // save metadata
-      int tot_cols = meta.getColumnCount();
-      int[] colDisplaySizes = new int[tot_cols];
-      String[] colDisplayLabels = new String[tot_cols];
-      int tot_rows = 0;
-
-      stringResponse.append("\n");
-
-      for (int i = 0; i < tot_cols; i++) {
-         
-         colDisplaySizes[i] = meta.getColumnLabel(i + 1).length() + 5;
-         colDisplayLabels[i] = meta.getColumnLabel(i + 1);
-
-         // // cuts off 
-         if (colDisplayLabels[i].length() > colDisplaySizes[i]) {
-            colDisplayLabels[i] = colDisplayLabels[i].substring(0, colDisplaySizes[i]);
-         }
-
-         for (int j = 0; j < colDisplaySizes[i] + 3; j++) {
-            stringResponse.append("-");
-         }
+   public void executeQueryAndPrettyPrint(String query, Object... params) throws SQLException {
+      Connection conn = this._pool.borrow();
+      try {
+         executeQueryAndPrettyPrint(conn, query, params);
+      } finally {
+         this._pool.release(conn);
       }
-      stringResponse.append("--\n");
+   }
 
-      // print column row
-      for (int i = 0; i < tot_cols; i++) {
-         stringResponse.append(
-            String.format("| %" + colDisplaySizes[i] + "s ", colDisplayLabels[i])
-         );
+   /*
+      Runs a menu operation that prints a query result, counting its
+      latency, rows and printed characters under the operation's name.
+   */
+   void printOperation(String operation, String query, Object... params) throws SQLException {
+      Metrics.Series m = this._metrics.operation(operation);
+      long start = System.nanoTime();
+      boolean ok = false;
+      Connection conn = this._pool.borrow();
+      try {
+         TableRenderer table = executeQueryAndPrettyPrint(conn, query, params);
+         m.addRows(table.getRowCount());
+         m.addBytes(table.getCharCount());
+         ok = true;
+      } finally {
+         this._pool.release(conn);
+         m.record(System.nanoTime() - start, ok);
       }
-      stringResponse.append("|\n");
+   }
 
-      StringBuilder hline = new StringBuilder();
-      
-      for (int i = 0; i < tot_cols; i++) {
-         for (int j = 0; j < colDisplaySizes[i] + 3; j++) {
-            hline.append("-");
+   private TableRenderer executeQueryAndPrettyPrint(Connection conn, String query, Object... params) throws SQLException {
+      Metrics.Series m = this._metrics.sql(query);
+      long start = System.nanoTime();
+      boolean ok = false;
+      try {
+         StatementCache cache = this._pool.statementCache(conn);
+         if (FETCH_SIZE <= 0) {
+            // Execute the cached statement for this query and save in ResultSet
+            ResultSet res = cache.prepare(query, params).executeQuery();
+
+            // rows are written to the output as they arrive
+            TableRenderer table = TableRenderer.forResultSet(res, System.out, PAGE_SIZE, CONSOLE_PAGER);
+            m.addRows(table.render(res));
+            res.close();
+            ok = true;
+            return table;
          }
-      }
-      hline.append("--\n");
-
-      stringResponse.append(hline);
-
-      // System.out.print("printing horizontal line header\n");
-      // print the response - untested thoroughly
-      while (res.next()) {
 
-         tot_rows += 1;
-         for (int i = 0; i < tot_cols; i++) {
-
-            String resString = res.getString(i + 1);
-            if (resString.length() > colDisplayLabels[i].length() + 5) {
-               resString = resString.substring(0, colDisplayLabels[i].length() + 2) + "...";
+         // fetch FETCH_SIZE rows at a time through a cursor, which any driver can do;
+         // the cursor lives until the end of the transaction
+         conn.setAutoCommit(false);
+         try {
+            String select = query.trim();
+            if (select.endsWith(";"))
+               select = select.substring(0, select.length() - 1);
+            cache.prepare("DECLARE print_cursor NO SCROLL CURSOR FOR " + select, params).execute();
+            PreparedStatement fetch = cache.prepare("FETCH FORWARD " + FETCH_SIZE + " FROM print_cursor");
+
+            TableRenderer table = null;
+            boolean more = true;
+            while (more) {
+               ResultSet res = fetch.executeQuery();
+               if (table == null) {
+                  table = TableRenderer.forResultSet(res, System.out, PAGE_SIZE, CONSOLE_PAGER);
+                  table.header();
+               }
+               int fetched = 0;
+               while (more && res.next()) {
+                  fetched++;
+                  more = table.row(res);
+               }
+               res.close();
+               // a short batch is the last one
+               more = more && fetched == FETCH_SIZE;
             }
-
-            stringResponse.append(
-               String.format("| %" + colDisplaySizes[i] + "s ", resString)
-            );
+            table.footer();
+            conn.commit();
+            m.addRows(table.getRowCount());
+            ok = true;
+            return table;
+         } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+         } finally {
+            conn.setAutoCommit(true);
          }
-         stringResponse.append("|\n");
+      } catch (IOException e) {
+         throw new SQLException("Failed to print the result: " + e.getMessage());
+      } finally {
+         m.record(System.nanoTime() - start, ok);
       }
+   }
 
-      stringResponse.append(hline);
-
-      // print response length
-      stringResponse.append(
-         String.format("  -- Rows: %s\n\n", tot_rows)
-      );
+   /**
+    * Prints a page of a history view and asks whether to fetch the next.
+    *
+    * @param operation the operation the printed bytes are counted for
+    * @param page the page to print
+    * @param shown the rows printed by the earlier pages
+    * @param esql the session whose metrics are updated
+    * @return the rows printed so far when the next page is wanted, else 0
+    */
+   static int printPage(String operation, HistoryPage page, int shown, Hotel esql) {
+      esql.getMetrics().operation(operation).addBytes(prettyPrint(page.getRows()));
+      shown += page.getRows().getRowCount();
+      return page.getNext() != null && CONSOLE_PAGER.nextPage(shown) ? shown : 0;
+   }
 
-      stmt.close();
+   /*
+      Prints a result that is already in memory with the same table layout
+      as executeQueryAndPrettyPrint.
+   */
+   public static long prettyPrint(ColumnarResult result) {
+      List<String[]> rows = new ArrayList<String[]>(result.getRowCount());
+      for (int r = 0; r < result.getRowCount(); r++)
+         rows.add(result.rowStrings(r));
+      return prettyPrint(result.getColumnLabels(), rows);
+   }
 
-      System.out.print(stringResponse);
+   /*
+      Prints rows that are already in memory (e.g. answered from an index)
+      with the same table layout as executeQueryAndPrettyPrint. Returns the
+      number of characters printed.
+   */
+   public static long prettyPrint(String[] labels, List<String[]> rows) {
+      TableRenderer table = new TableRenderer(labels, System.out, PAGE_SIZE, CONSOLE_PAGER);
+      try {
+         table.header();
+         for (String[] row : rows) {
+            if (!table.row(row))
+               break;
+         }
+         table.footer();
+      } catch (IOException e) {
+         System.err.println(e.getMessage());
+      }
+      return table.getCharCount();
    }
 
    /*
@@ -525,15 +2312,12 @@ public class Hotel {
          System.out.print("\tEnter longitude: ");
          double user_long = Double.parseDouble(in.readLine());
 
+         // answered from the in-memory grid index instead of running
+         // calculate_distance over every row of Hotel
          // hotel name adds too many empty characters so put it at the end
          // we don't include the managerid since that's not something users need to know 
-         String query = "" +
-            "SELECT H.hotelID, H.latitude, H.longitude, H.dateEstablished, H.hotelName \n" +
-            "FROM HOTEL H \n" +
-            "WHERE calculate_distance(%f, %f, H.latitude, H.longitude) <= 30;\n";
-         query = String.format(query, user_lat, user_long);
-
-         esql.executeQueryAndPrettyPrint(query); // prints the table in a nicer way
+         long printed = prettyPrint(esql.hotelsNearby(user_lat, user_long)); // prints the table in a nicer way
+         esql.getMetrics().operation("viewHotels").addBytes(printed);
 
          return; 
       }catch(Exception e){
@@ -548,14 +2332,10 @@ public class Hotel {
          System.out.print("\tEnter hotel id: ");
          int hotel_id = Integer.parseInt(in.readLine());
          System.out.print("\tEnter booking date (mm/dd/yyyy): ");
-         String view_date = in.readLine();
-
-         String query = "SELECT DISTINCT R.price, R.roomNumber, "; 
-         query += String.format(" CASE WHEN (NOT EXISTS (SELECT * FROM RoomBookings A, Rooms C WHERE A.bookingDate='%s' AND A.roomNumber=R.roomNumber AND A.roomNumber = C.roomNumber AND A.hotelID = C.hotelID )) THEN 'open' ELSE 'reserved' END as Status", view_date); 
-         query += String.format(" FROM Rooms R, RoomBookings B");
-         query += String.format(" WHERE R.hotelID=%d AND B.hotelID=R.hotelID", hotel_id);
+         LocalDate view_date = parseDate(in.readLine());
 
-         esql.executeQueryAndPrettyPrint(query);
+         long printed = prettyPrint(esql.roomsOn(hotel_id, view_date));
+         esql.getMetrics().operation("viewRooms").addBytes(printed);
 
          return; 
       } catch(Exception e){
@@ -564,6 +2344,17 @@ public class Hotel {
       }
    }
 
+   // one row when the room is booked that night, alone or as part of a stay
+   static final String AVAILABILITY_QUERY = "" +
+      "SELECT A.hotelID, A.roomNumber \n" +
+      "FROM Rooms A \n" +
+      "WHERE A.hotelID = ? \n" + // hotel_id
+      "AND A.roomNumber = ? \n" + // room_id
+      "AND (EXISTS (SELECT * FROM RoomBookings B \n" +
+      "             WHERE B.hotelID = A.hotelID AND B.roomNumber = A.roomNumber AND B.bookingDate = ?) \n" + // book_date
+      "     OR EXISTS (SELECT * FROM RoomStays S \n" +
+      "                WHERE S.hotelID = A.hotelID AND S.roomNumber = A.roomNumber AND S.stay @> ?::date)); \n"; // book_date
+
    public static void bookRooms(Hotel esql) {
       try {
          System.out.print("\tEnter hotel id: ");
@@ -572,26 +2363,22 @@ public class Hotel {
          int room_id = Integer.parseInt(in.readLine());
          System.out.print("\tEnter your preferred booking date (mm/dd/yyyy): ");
          String book_date = in.readLine();
-
-         String availabilityQuery = "" +
-            "SELECT A.hotelID, A.roomNumber, B.bookingDate \n" +
-            "FROM Rooms A, RoomBookings B \n" +
-            "WHERE B.bookingDate = '%s' \n" + // book_date
-            "AND B.hotelID = %d \n" + // hotel_id
-            "AND A.hotelID = %d \n" + // hotel_id
-            "AND A.roomNumber = B.roomNumber \n" +
-            "AND A.roomNumber = %d; \n"; // room_id
-
-         availabilityQuery = String.format(
-            availabilityQuery,
-            book_date,
-            hotel_id,
-            hotel_id,
-            room_id
-         );
-
-         // write the sql query 
-         int availabilityResponse = esql.executeQuery(availabilityQuery);
+         LocalDate bookingDate = parseDate(book_date);
+
+         // bit test in the availability engine, or the database when the
+         // date or room is not tracked there; a booked bit is confirmed
+         // there too, since the booking may have been deleted since
+         RoomAvailability availability = esql.availability();
+         Boolean booked = availability.isBooked(hotel_id, room_id, bookingDate);
+         int availabilityResponse;
+         if (Boolean.FALSE.equals(booked)) {
+            availabilityResponse = 0;
+         } else {
+            // write the sql query 
+            availabilityResponse = esql.executeQuery(AVAILABILITY_QUERY, hotel_id, room_id, bookingDate, bookingDate);
+            if (booked != null && availabilityResponse == 0)
+               availability.markOpen(hotel_id, room_id, bookingDate);
+         }
 
          // // to test
          // System.out.print(String.format("res length: %d", availabilityResponse));
@@ -608,21 +2395,11 @@ public class Hotel {
          }
          
          // in this case, it is available
-         String priceQuery = "" +
-            "SELECT DISTINCT A.price \n" +
-            "FROM Rooms A \n" +
-            "WHERE A.roomNumber = %d \n" +
-            "AND A.hotelID = %d; \n"; 
-
-         priceQuery = String.format(
-            priceQuery, room_id, hotel_id
-         );
-
-         // to check if room exists in hotel
-         int priceResponse = esql.executeQueryAndPrintResult(priceQuery);
+         // to check if room exists in hotel; the price comes from the room catalog cache
+         Integer price = esql.roomPrice(hotel_id, room_id);
 
          // this suggests no room in given hotel id
-         if (priceResponse == 0) {
+         if (price == null) {
             String errorString = "  -- Sorry. Room %d is not available in hotel %d" +
             "    You may view the room availability with option 2 in the main menu. Thank you.\n\n";
             System.out.print(
@@ -631,8 +2408,10 @@ public class Hotel {
             return;
          }
 
-         // here is the perfect case, now we must fetch the price
-         // we know there is 1 row at least, so we can fetch
+         // here is the perfect case, now we must show the price
+         List<String[]> priceRows = new ArrayList<String[]>();
+         priceRows.add(new String[] { price.toString() });
+         prettyPrint(new String[] { "price" }, priceRows);
 
          System.out.print("Proceed? (Y/N): ");
          String proceedResponse = "";
@@ -658,19 +2437,16 @@ public class Hotel {
             return;
          }
 
-         String insertQuery = "INSERT INTO RoomBookings(customerID, hotelID, roomNumber, bookingDate) \n" +
-            "VALUES (%d, %d, %d, '%s') \n";
-         insertQuery = String.format(
-            insertQuery,
-            esql._authorisedUser,
-            hotel_id,
-            room_id,
-            book_date
-         );
-
-         // System.out.print(insertQuery);
-
-         esql.executeUpdate(insertQuery);
+         // another session may have taken the room while we were asking
+         BookingResult result = esql.bookRoom(hotel_id, room_id, bookingDate);
+         if (result != BookingResult.BOOKED) {
+            String errorString = "\n  -- Sorry. Room %d in hotel %d was just booked by someone else for date \"%s\".\n" +
+            "    You may view the room availability with option 2 in the main menu. Thank you.\n\n";
+            System.out.print(
+               String.format(errorString, room_id, hotel_id, book_date)
+            );
+            return;
+         }
 
          System.out.print("\n   -- Thank you for booking! \n\n");
 
@@ -686,20 +2462,9 @@ public class Hotel {
    public static void viewRecentBookingsfromCustomer(Hotel esql) {
 
       try {
-         String bookingInfoQuery = "" +
-            "SELECT A.hotelID, A.roomNumber, B.price, A.bookingDate \n" +
-            "FROM RoomBookings A, Rooms B \n" +
-            "WHERE B.hotelID = A.hotelID \n" +
-            "AND A.roomNumber = B.roomNumber \n " +
-            "AND A.customerID = %d \n" +
-            "LIMIT 5;";
-
-         bookingInfoQuery = String.format(
-            bookingInfoQuery,
-            esql._authorisedUser
-         );
-
-         esql.executeQueryAndPrettyPrint(bookingInfoQuery);
+         HistoryPage page = esql.recentBookings(null);
+         for (int shown = 0; (shown = printPage("viewRecentBookingsfromCustomer", page, shown, esql)) > 0; )
+            page = esql.recentBookings(page.getNext());
 
          return; 
       } catch(Exception e){
@@ -712,24 +2477,8 @@ public class Hotel {
       try {
 
          // security check...
-         String securityCheckQuery = "" +
-            "SELECT DISTINCT A.userID \n" +
-            "FROM Users A \n" +
-            "WHERE (A.userType = 'manager' OR A.userType = 'admin') \n" +
-            "AND A.userID = %d;";
-
-         securityCheckQuery = String.format(
-            securityCheckQuery,
-            esql._authorisedUser
-         );
+         Principal principal = esql.requireStaff();
 
-         int securityResponse = esql.executeQuery(securityCheckQuery);
-
-         if (securityResponse == 0) {
-            System.out.print("  - Permission Error: You are not allowed to perform this operation.\n\n");
-            return;
-         }
-         
          // manager successfully identified
 
          // identifying info
@@ -739,34 +2488,7 @@ public class Hotel {
          int roomNumber = Integer.parseInt(in.readLine());
 
          // now we need to check whether they can manage the hotel they chose...
-         String hotelsManagedQuery = "" +
-            "SELECT DISTINCT A.hotelID \n" +
-            "FROM Hotel A \n" +
-            "WHERE A.managerUserID = %d \n" +
-            "AND A.hotelID = %d; \n";
-
-         hotelsManagedQuery = String.format(
-            hotelsManagedQuery,
-            esql._authorisedUser,
-            hotelID
-         );
-
-         // now we need to check whether they are an admin...
-         String isAdminQuery = "" +
-            "SELECT * \n" +
-            "FROM  Users A \n" +
-            "WHERE A.userID = %d \n" +
-            "AND A.userType = 'admin'; \n";
-
-         isAdminQuery = String.format(
-            isAdminQuery,
-            esql._authorisedUser
-         );
-
-         int hotelsManagedQueryResponse = esql.executeQuery(hotelsManagedQuery);
-         int isAdminResponse = esql.executeQuery(isAdminQuery);
-
-         if (hotelsManagedQueryResponse == 0 && isAdminResponse == 0) {
+         if (!principal.manages(hotelID) && !principal.isAdmin()) {
             System.out.print("  - Permission Error: You are not allowed to perform this operation in hotels you do not manage.\n\n");
             return;
          }
@@ -777,45 +2499,17 @@ public class Hotel {
          System.out.print("\tEnter new image url: ");
          String newImageUrl = in.readLine();
 
-         String updateRoomsQuery = "" +
-            "UPDATE Rooms \n" +
-            "SET price = %d, imageURL = '%s', hotelID = %d, roomNumber = %d \n" +
-            "WHERE hotelID = %d \n" +
-            "AND roomNumber = %d \n";
-
-         updateRoomsQuery = String.format(
-            updateRoomsQuery,
-            newPrice,
-            newImageUrl,
-            hotelID,
-            roomNumber,
-            hotelID,
-            roomNumber
-         );
-
-         String updateLogQuery = "" +
-            "INSERT INTO RoomUpdatesLog(managerID, hotelID, roomNumber, updatedOn) \n" +
-            "VALUES (%d, %d, %d, '%s'); \n";
-
-         // credit: https://www.tutorialkart.com/java/how-to-get-current-date-in-mm-dd-yyyy-format-in-java/
-         LocalDate currDate = LocalDate.now();
-         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yyyy");
-         String date = currDate.format(formatter);
-
-         updateLogQuery = String.format(
-            updateLogQuery,
-            esql._authorisedUser,
-            hotelID,
-            roomNumber,
-            date
-         );
-
-         esql.executeUpdate(updateRoomsQuery);
+         if (!esql.updateRoom(hotelID, roomNumber, newPrice, newImageUrl)) {
+            System.out.print("  -- Sorry. There is no room " + roomNumber + " in hotel " + hotelID + ".\n\n");
+            return;
+         }
          System.out.print("\n   -- Updated Rooms successfully! \n\n");
-         esql.executeUpdate(updateLogQuery);
          System.out.print("\n   -- Updated Log successfully! \n\n");
 
          return; 
+      } catch (PermissionDeniedException e) {
+         System.out.print("  - Permission Error: " + e.getMessage() + "\n\n");
+         return;
       } catch(Exception e){
          System.err.println (e.getMessage ());
          return;
@@ -825,41 +2519,17 @@ public class Hotel {
    public static void viewRecentUpdates(Hotel esql) {
       try {
          // security check...
-         String securityCheckQuery = "" +
-            "SELECT DISTINCT A.userID \n" +
-            "FROM Users A \n" +
-            "WHERE (A.userType = 'manager' OR A.userType = 'admin') \n" +
-            "AND A.userID = %d;";
-
-         securityCheckQuery = String.format(
-            securityCheckQuery,
-            esql._authorisedUser
-         );
-
-         int securityResponse = esql.executeQuery(securityCheckQuery);
-
-         if (securityResponse == 0) {
-            System.out.print("  - Permission Error: You are not allowed to perform this operation.\n\n");
-            return;
-         }
+         esql.requireStaff();
 
          // we need to find all the updates with this manager userID
-
-         String latestUpdatesQuery = "" +
-            "SELECT A.updateNumber, A.managerID, A.hotelID, A.roomNumber, A.updatedOn \n" +
-            "FROM RoomUpdatesLog A \n" +
-            "WHERE A.managerID = %d \n" +
-            "AND EXISTS (SELECT * FROM Hotel B WHERE B.managerUserID=A.managerID AND B.hotelID=A.hotelID)\n" +
-            "LIMIT 5; \n";
-
-         latestUpdatesQuery = String.format(
-            latestUpdatesQuery,
-            esql._authorisedUser
-         );
-
-         esql.executeQueryAndPrettyPrint(latestUpdatesQuery);
+         HistoryPage page = esql.recentUpdates(null);
+         for (int shown = 0; (shown = printPage("viewRecentUpdates", page, shown, esql)) > 0; )
+            page = esql.recentUpdates(page.getNext());
 
          return; 
+      } catch (PermissionDeniedException e) {
+         System.out.print("  - Permission Error: " + e.getMessage() + "\n\n");
+         return;
       } catch(Exception e){
          System.err.println (e.getMessage ());
          return;
@@ -870,40 +2540,16 @@ public class Hotel {
       try {
 
          // security check...
-         String securityCheckQuery = "" +
-            "SELECT DISTINCT A.userID \n" +
-            "FROM Users A \n" +
-            "WHERE (A.userType = 'manager' OR A.userType = 'admin') \n" +
-            "AND A.userID = %d;";
-
-         securityCheckQuery = String.format(
-            securityCheckQuery,
-            esql._authorisedUser
-         );
-
-         int securityResponse = esql.executeQuery(securityCheckQuery);
-
-         if (securityResponse == 0) {
-            System.out.print("  - Permission Error: You are not allowed to perform this operation.\n\n");
-            return;
-         }
-
-         String bookingInfoQuery = "" +
-            "SELECT A.hotelID, A.roomNumber, B.price, A.bookingDate \n" +
-            "FROM RoomBookings A, Rooms B \n" +
-            "WHERE B.hotelID = A.hotelID \n" +
-            "AND A.roomNumber = B.roomNumber \n " +
-            "AND EXISTS (SELECT * FROM Hotel C WHERE C.managerUserID = %d AND B.hotelID = C.hotelID) \n" +
-            "LIMIT 5;";
+         esql.requireStaff();
 
-         bookingInfoQuery = String.format(
-            bookingInfoQuery,
-            esql._authorisedUser
-         );
-
-         esql.executeQueryAndPrettyPrint(bookingInfoQuery);
+         HistoryPage page = esql.hotelBookings(null);
+         for (int shown = 0; (shown = printPage("viewBookingHistoryofHotel", page, shown, esql)) > 0; )
+            page = esql.hotelBookings(page.getNext());
 
          return; 
+      } catch (PermissionDeniedException e) {
+         System.out.print("  - Permission Error: " + e.getMessage() + "\n\n");
+         return;
       } catch(Exception e){
          System.err.println (e.getMessage ());
          return;
@@ -913,41 +2559,15 @@ public class Hotel {
    public static void viewRegularCustomers(Hotel esql) {
       try {
          // security check...
-         String securityCheckQuery = "" +
-            "SELECT DISTINCT A.userID \n" +
-            "FROM Users A \n" +
-            "WHERE (A.userType = 'manager' OR A.userType = 'admin') \n" +
-            "AND A.userID = %d;";
-
-         securityCheckQuery = String.format(
-            securityCheckQuery,
-            esql._authorisedUser
-         );
-
-         int securityResponse = esql.executeQuery(securityCheckQuery);
-
-         if (securityResponse == 0) {
-            System.out.print("  - Permission Error: You are not allowed to perform this operation.\n\n");
-            return;
-         }
-
-         String viewMostBookingCustomersQuery = "" +
-            "SELECT D.hotelID, A.userID, A.name, COUNT(B.customerID) \n" +
-            "FROM Hotel D, Users A, RoomBookings B \n" +
-            "WHERE A.userID = B.customerID \n" +
-            "AND D.hotelID = B.hotelID \n" +
-            "AND EXISTS (SELECT * FROM Hotel C WHERE C.managerUserID = %d AND D.hotelID = C.hotelID AND B.hotelID = C.hotelID) \n" +
-            "GROUP BY A.userID, D.hotelID \n" +
-            "ORDER BY COUNT(B.customerID) DESC \n" +
-            "LIMIT 5; \n";
-         
-         viewMostBookingCustomersQuery = String.format(
-            viewMostBookingCustomersQuery,
-            esql._authorisedUser
-         );
+         esql.requireStaff();
 
-         esql.executeQueryAndPrettyPrint(viewMostBookingCustomersQuery);
+         // ranked in memory; see CustomerLeaderboard
+         long printed = prettyPrint(esql.regularCustomers());
+         esql.getMetrics().operation("viewRegularCustomers").addBytes(printed);
 
+         return;
+      } catch (PermissionDeniedException e) {
+         System.out.print("  - Permission Error: " + e.getMessage() + "\n\n");
          return;
       } catch(Exception e){
          System.err.println (e.getMessage ());
@@ -959,23 +2579,7 @@ public class Hotel {
    public static void placeRoomRepairRequests(Hotel esql) {
       try {
          // security check...
-         String securityCheckQuery = "" +
-            "SELECT DISTINCT A.userID \n" +
-            "FROM Users A \n" +
-            "WHERE (A.userType = 'manager' OR A.userType = 'admin') \n" +
-            "AND A.userID = %d;";
-
-         securityCheckQuery = String.format(
-            securityCheckQuery,
-            esql._authorisedUser
-         );
-
-         int securityResponse = esql.executeQuery(securityCheckQuery);
-
-         if (securityResponse == 0) {
-            System.out.print("  - Permission Error: You are not allowed to perform this operation.\n\n");
-            return;
-         }
+         esql.requireStaff();
    
          System.out.print("\tEnter hotel id: ");
          int hotelID = Integer.parseInt(in.readLine());
@@ -984,106 +2588,35 @@ public class Hotel {
          System.out.print("\tEnter the maintenance company ID: ");
          int companyID = Integer.parseInt(in.readLine());
 
-         // Check if they manage the hotel
-         String hotelManagedQuery = "" +
-            "SELECT A.hotelID \n" +
-            "FROM Hotel A \n" +
-            "WHERE A.hotelID = %d \n" + // hotelID
-            "AND A.managerUserID = %d \n"; // managerUserID
-
-         hotelManagedQuery = String.format(
-            hotelManagedQuery,
-            hotelID,
-            esql._authorisedUser
-         );
-
-         int hotelManagedResponse = esql.executeQuery(hotelManagedQuery);
-
-         if (hotelManagedResponse == 0) {
-            System.out.print(
-               "\n  - Sorry. You cannot place repair requests on hotels you do not manage.\n\n"
-            );
-            return;
-         }
-
-         // Check if room repair request has already been made for the current room/hotel by companyID
-         String alreadyMadeQuery = "" +
-         "SELECT A.requestNumber \n" +
-         "FROM RoomRepairRequests A \n" +
-         "WHERE A.repairID = (SELECT B.repairID \n" +
-         "                    FROM RoomRepairs B \n" +
-         "                    WHERE B.companyID = %d \n" +
-         "                    AND   B.hotelID = %d \n" +
-         "                    AND   B.roomNumber = %d); \n";
-
-         alreadyMadeQuery = String.format(
-            alreadyMadeQuery,
-            companyID,
-            hotelID,
-            roomNumber
-         );
-
-         int alreadyMadeResponse = esql.executeQuery(alreadyMadeQuery);
-
-         if (alreadyMadeResponse != 0) {
-            System.out.print(
-               "\n  - Sorry. This request from the company to the particular hotel and room already exists.\n\n"
-            );
-            return;
-         }
-
-         // Check if the company ID exists for given hotel and room number combination
-         String availabilityQuery = "" +
-            "SELECT A.repairID \n" +
-            "FROM RoomRepairs A \n" +
-            "WHERE A.companyID = %d \n" + // companyID
-            "AND A.hotelID = %d \n" + // hotelID
-            "AND A.roomNumber = %d; \n"; // roomNumber
-
-         availabilityQuery = String.format(
-            availabilityQuery,
-            companyID,
-            hotelID,
-            roomNumber
-         );
-
-         // write the sql query 
-         int availabilityResponse = esql.executeQuery(availabilityQuery);
-
-         if (availabilityResponse == 0) {
-            System.out.print(
-               String.format(
-                  "\n  - Sorry. Room %d in hotel %d is not currently repaired by company %d\n\n",
-                  roomNumber,
-                  hotelID,
-                  companyID
-               )
-            );
-            return;
+         switch (esql.placeRepairRequest(hotelID, roomNumber, companyID)) {
+            case NOT_MANAGER:
+               System.out.print(
+                  "\n  - Sorry. You cannot place repair requests on hotels you do not manage.\n\n"
+               );
+               return;
+            case DUPLICATE:
+               System.out.print(
+                  "\n  - Sorry. This request from the company to the particular hotel and room already exists.\n\n"
+               );
+               return;
+            case NO_REPAIR:
+               System.out.print(
+                  String.format(
+                     "\n  - Sorry. Room %d in hotel %d is not currently repaired by company %d\n\n",
+                     roomNumber,
+                     hotelID,
+                     companyID
+                  )
+               );
+               return;
+            default:
+               System.out.print(
+                  "\n  - Updated repair requests successfully\n\n"
+               );
+               return;
          }
-
-         String maintenanceRequestQuery = "" +
-         "INSERT INTO RoomRepairRequests(managerID, repairID) \n" +
-         "VALUES (%d, (SELECT B.repairID \n" +
-         "             FROM roomRepairs B \n" +
-         "             WHERE B.companyID=%d \n" +
-         "             AND B.hotelID=%d \n" +
-         "             AND B.roomNumber=%d)); \n";
-
-         maintenanceRequestQuery = String.format(
-            maintenanceRequestQuery,
-            esql._authorisedUser,
-            companyID,
-            hotelID,
-            roomNumber
-         );
-
-         esql.executeUpdate(maintenanceRequestQuery);
-
-         System.out.print(
-            "\n  - Updated repair requests successfully\n\n"
-         );
-
+      } catch (PermissionDeniedException e) {
+         System.out.print("  - Permission Error: " + e.getMessage() + "\n\n");
          return;
       } catch(Exception e){
          System.err.println (e.getMessage ());
@@ -1094,41 +2627,76 @@ public class Hotel {
    public static void viewRoomRepairHistory(Hotel esql) {
       try {
          // security check...
-         String securityCheckQuery = "" +
-            "SELECT DISTINCT A.userID \n" +
-            "FROM Users A \n" +
-            "WHERE (A.userType = 'manager' OR A.userType = 'admin') \n" +
-            "AND A.userID = %d;";
+         esql.requireStaff();
 
-         securityCheckQuery = String.format(
-            securityCheckQuery,
-            esql._authorisedUser
-         );
+         esql.printOperation("viewRoomRepairHistory", REPAIR_HISTORY_QUERY, esql._authorisedUser);
 
-         int securityResponse = esql.executeQuery(securityCheckQuery);
+         return;
+      } catch (PermissionDeniedException e) {
+         System.out.print("  - Permission Error: " + e.getMessage() + "\n\n");
+         return;
+      } catch(Exception e){
+         System.err.println (e.getMessage ());
+         return;
+      }
+   }
 
-         if (securityResponse == 0) {
-            System.out.print("  - Permission Error: You are not allowed to perform this operation.\n\n");
-            return;
-         }
+   public static void viewHotelStats(Hotel esql) {
+      try {
+         // security check...
+         esql.requireStaff();
 
-         // Check if room repair request has already been made for the current room/hotel by companyID
-         String repairHistoryQuery = "" +
-         "SELECT B.companyID, B.hotelID, B.roomNumber, B.repairDate \n" +
-         "FROM RoomRepairRequests A, RoomRepairs B \n" +
-         "WHERE A.repairID = B.repairID \n" +
-         "AND EXISTS (SELECT D.hotelID \n" +
-         "            FROM Hotel D \n" +
-         "            WHERE D.hotelID = B.hotelID \n" +
-         "            AND D.managerUserID = %d); \n"; // authorizedUser
+         System.out.print("\tEnter hotel id: ");
+         int hotelID = Integer.parseInt(in.readLine());
+         System.out.print("\tEnter first date (mm/dd/yyyy): ");
+         LocalDate from = parseDate(in.readLine());
+         System.out.print("\tEnter last date (mm/dd/yyyy): ");
+         LocalDate to = parseDate(in.readLine()).plusDays(1);
+         System.out.print("\tPer day or per month? (D/M): ");
+         String answer = in.readLine();
+         boolean monthly = answer != null && answer.toLowerCase().contains("m");
+
+         // read from the HotelDailyStats rollup instead of joining every booking
+         long printed = prettyPrint(esql.hotelStats(hotelID, from, to, monthly));
+         esql.getMetrics().operation("viewHotelStats").addBytes(printed);
 
-         repairHistoryQuery = String.format(
-            repairHistoryQuery,
-            esql._authorisedUser
-         );
+         return;
+      } catch (PermissionDeniedException e) {
+         System.out.print("  - Permission Error: " + e.getMessage() + "\n\n");
+         return;
+      } catch(Exception e){
+         System.err.println (e.getMessage ());
+         return;
+      }
+   }
 
-         esql.executeQueryAndPrettyPrint(repairHistoryQuery);
+   public static void bookStays(Hotel esql) {
+      try {
+         System.out.print("\tEnter hotel id: ");
+         int hotelID = Integer.parseInt(in.readLine());
+         System.out.print("\tEnter check-in date (mm/dd/yyyy): ");
+         LocalDate checkIn = parseDate(in.readLine());
+         System.out.print("\tEnter check-out date (mm/dd/yyyy): ");
+         LocalDate checkOut = parseDate(in.readLine());
+
+         // one query whatever the number of nights
+         ColumnarResult free = esql.freeRooms(hotelID, checkIn, checkOut);
+         if (free.getRowCount() == 0) {
+            System.out.print("  -- Sorry. No room of hotel " + hotelID + " is free for all these nights.\n\n");
+            return;
+         }
+         long printed = prettyPrint(free);
+         esql.getMetrics().operation("freeRooms").addBytes(printed);
 
+         System.out.print("\tEnter room number: ");
+         int roomNumber = Integer.parseInt(in.readLine());
+         BookingResult result = esql.bookStay(hotelID, roomNumber, checkIn, checkOut);
+         if (result == BookingResult.BOOKED)
+            System.out.print("\n   -- Booked room " + roomNumber + " from " + checkIn + " to " + checkOut + ". Thank you!\n\n");
+         else if (result == BookingResult.NO_SUCH_ROOM)
+            System.out.print("  -- Sorry. There is no room " + roomNumber + " in hotel " + hotelID + ".\n\n");
+         else
+            System.out.print("  -- Sorry. Room " + roomNumber + " was booked for some of these nights meanwhile.\n\n");
          return;
       } catch(Exception e){
          System.err.println (e.getMessage ());
@@ -1136,5 +2704,21 @@ public class Hotel {
       }
    }
 
+   public static void dumpBookings(Hotel esql) {
+      try {
+         // security check...
+         Principal principal = esql.getPrincipal();
+         if (principal == null || !principal.isAdmin())
+            throw new PermissionDeniedException("Only admins may dump all bookings.");
+
+         // streamed through a cursor, so memory does not grow with the number of bookings
+         esql.printOperation("dumpBookings", ALL_BOOKINGS_QUERY);
+      } catch (PermissionDeniedException e) {
+         System.out.print("  - Permission Error: " + e.getMessage() + "\n\n");
+      } catch(Exception e){
+         System.err.println (e.getMessage ());
+      }
+   }
+
 }//end Hotel
 
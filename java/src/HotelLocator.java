@@ -0,0 +1,193 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory uniform grid index over hotel (latitude, longitude).
+ *
+ * Each hotel is stored in the square cell containing its coordinates. A
+ * radius query only visits the cells overlapping the query's bounding box
+ * and returns the hotels stored there as candidates; the caller filters
+ * them with the exact distance. With the cell size equal to the usual
+ * query radius a lookup touches 3x3 cells, so its cost follows the number
+ * of nearby hotels rather than the size of the Hotel table.
+ *
+ * The index is shared by all sessions: reads run concurrently and updates
+ * take an exclusive lock.
+ *
+ */
+public class HotelLocator {
+
+   /*
+    * One indexed hotel: its coordinates and the row shown to the user.
+    */
+   public static class Entry {
+      public final int hotelID;
+      public final double latitude;
+      public final double longitude;
+      public final String[] row;
+
+      public Entry(int hotelID, double latitude, double longitude, String[] row) {
+         this.hotelID = hotelID;
+         this.latitude = latitude;
+         this.longitude = longitude;
+         this.row = row;
+      }
+   }//end Entry
+
+   private final double _cellSize;
+
+   // cell key -> hotels in that cell
+   private final Map<Long, List<Entry>> _cells = new HashMap<Long, List<Entry>>();
+
+   // hotelID -> entry, to move or remove a hotel without knowing its cell
+   private final Map<Integer, Entry> _byID = new HashMap<Integer, Entry>();
+
+   private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+   /**
+    * Creates an empty index.
+    *
+    * @param cellSize side length of a grid cell, in coordinate units
+    */
+   public HotelLocator(double cellSize) {
+      if (!(cellSize > 0))
+         throw new IllegalArgumentException("cell size must be positive: " + cellSize);
+      this._cellSize = cellSize;
+   }
+
+   /**
+    * Adds a hotel, replacing any previous entry with the same hotelID.
+    *
+    * @param entry the hotel to index
+    */
+   public void put(Entry entry) {
+      this._lock.writeLock().lock();
+      try {
+         removeLocked(entry.hotelID);
+         long key = cellKey(cellOf(entry.latitude), cellOf(entry.longitude));
+         List<Entry> cell = this._cells.get(key);
+         if (cell == null) {
+            cell = new ArrayList<Entry>();
+            this._cells.put(key, cell);
+         }
+         cell.add(entry);
+         this._byID.put(entry.hotelID, entry);
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end put
+
+   /**
+    * Removes a hotel from the index.
+    *
+    * @param hotelID the hotel to remove
+    */
+   public void remove(int hotelID) {
+      this._lock.writeLock().lock();
+      try {
+         removeLocked(hotelID);
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Replaces the whole content of the index.
+    *
+    * @param entries every hotel to index
+    */
+   public void reload(List<Entry> entries) {
+      this._lock.writeLock().lock();
+      try {
+         this._cells.clear();
+         this._byID.clear();
+         for (Entry e : entries)
+            put(e);
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Returns the hotels stored in the cells overlapping the square of side
+    * 2 * radius centered on the point. The result is a superset of the
+    * hotels within the radius and must be filtered by exact distance.
+    *
+    * @param latitude the query latitude
+    * @param longitude the query longitude
+    * @param radius the query radius
+    * @return the candidate hotels, in no particular order
+    */
+   public List<Entry> candidates(double latitude, double longitude, double radius) {
+      long minX = cellOf(latitude - radius), maxX = cellOf(latitude + radius);
+      long minY = cellOf(longitude - radius), maxY = cellOf(longitude + radius);
+
+      List<Entry> result = new ArrayList<Entry>();
+      this._lock.readLock().lock();
+      try {
+         // a huge radius would visit more (empty) cells than there are hotels
+         if ((maxX - minX + 1) * (maxY - minY + 1) > this._cells.size()) {
+            result.addAll(this._byID.values());
+            return result;
+         }
+         for (long x = minX; x <= maxX; x++) {
+            for (long y = minY; y <= maxY; y++) {
+               List<Entry> cell = this._cells.get(cellKey(x, y));
+               if (cell != null)
+                  result.addAll(cell);
+            }
+         }
+         return result;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end candidates
+
+   /**
+    * @return the number of indexed hotels
+    */
+   public int size() {
+      this._lock.readLock().lock();
+      try {
+         return this._byID.size();
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   private void removeLocked(int hotelID) {
+      Entry old = this._byID.remove(hotelID);
+      if (old == null)
+         return;
+      long key = cellKey(cellOf(old.latitude), cellOf(old.longitude));
+      List<Entry> cell = this._cells.get(key);
+      cell.remove(old);
+      if (cell.isEmpty())
+         this._cells.remove(key);
+   }
+
+   private long cellOf(double coordinate) {
+      return (long) Math.floor(coordinate / this._cellSize);
+   }
+
+   private static long cellKey(long x, long y) {
+      return (x << 32) ^ (y & 0xffffffffL);
+   }
+
+}//end HotelLocator
@@ -0,0 +1,333 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the Hotel operations over HTTP, so that one process serves many
+ * clients over the shared connection pool.
+ *
+ *    POST /login    user=<userID>&password=<password>, as a form or query;
+ *                   returns {"token": ...}
+ *    POST /logout   ends the session of the bearer token
+ *    GET  /api/<command>/<arg>/...
+ *                   runs one CommandRunner command (except login and logout),
+ *                   e.g. /api/rooms/12/2024-05-01; arguments are URL encoded
+ *
+ * Commands of a logged in client send "Authorization: Bearer <token>". The
+ * response is the JSON object CommandRunner prints, with HTTP status 200,
+ * 401 (unknown or expired token), 403 (denied) or 400 (error).
+ *
+ * Every request runs on a fresh session from Hotel.newSession(), resumed
+ * as the user of its token, so no session state is shared between requests
+ * and the handlers need no locks. Requests run on a virtual thread each
+ * when the JVM has them (Java 21+); otherwise on hotel.server.threads
+ * platform threads with a queue of hotel.server.queue requests, beyond
+ * which the accepting thread runs the request itself and stops accepting
+ * meanwhile. Either way the connection pool bounds the database work.
+ *
+ * Usage: java HotelServer dbname port user
+ *    -Dhotel.server.host (default 127.0.0.1), -Dhotel.server.port (8080),
+ *    -Dhotel.server.threads (64), -Dhotel.server.queue (1024),
+ *    -Dhotel.server.sessionMinutes (30)
+ *
+ */
+public class HotelServer {
+
+   /*
+    * The user of a login token and when it was last used.
+    */
+   private static class Token {
+      final int userID;
+      volatile long lastUsed = System.currentTimeMillis();
+
+      Token(int userID) {
+         this.userID = userID;
+      }
+   }//end Token
+
+   private final Hotel _hotel;
+   private final long _sessionMillis;
+   private final Map<String, Token> _tokens = new ConcurrentHashMap<String, Token>();
+   private final SecureRandom _random = new SecureRandom();
+   private final AtomicLong _requests = new AtomicLong();
+   private HttpServer _server;
+   private ExecutorService _executor;
+   private ScheduledExecutorService _sweeper;
+
+   /**
+    * @param hotel the instance owning the connection pool; each request runs in a new session of it
+    * @param sessionMinutes how long an unused token stays valid
+    */
+   public HotelServer(Hotel hotel, long sessionMinutes) {
+      this._hotel = hotel;
+      this._sessionMillis = TimeUnit.MINUTES.toMillis(sessionMinutes);
+   }
+
+   /**
+    * Starts listening.
+    *
+    * @param host the address to bind
+    * @param port the port
+    * @param threads the platform threads used when there are no virtual threads
+    * @param queue the requests waiting for a platform thread
+    * @throws java.io.IOException when the port cannot be opened
+    */
+   public void start(String host, int port, int threads, int queue) throws IOException {
+      this._executor = newExecutor(threads, queue);
+      this._server = HttpServer.create(new InetSocketAddress(host, port), 0);
+      this._server.createContext("/login", new HttpHandler() {
+         public void handle(HttpExchange exchange) throws IOException { login(exchange); }
+      });
+      this._server.createContext("/logout", new HttpHandler() {
+         public void handle(HttpExchange exchange) throws IOException { logout(exchange); }
+      });
+      this._server.createContext("/api/", new HttpHandler() {
+         public void handle(HttpExchange exchange) throws IOException { command(exchange); }
+      });
+      this._server.setExecutor(this._executor);
+      this._server.start();
+
+      this._sweeper = Executors.newSingleThreadScheduledExecutor(daemon("server-sweeper"));
+      this._sweeper.scheduleAtFixedRate(new Runnable() {
+         public void run() { sweep(); }
+      }, 1, 1, TimeUnit.MINUTES);
+   }//end start
+
+   /**
+    * Stops accepting, waits a little for the requests running, and stops the threads.
+    */
+   public void stop() {
+      if (this._server != null)
+         this._server.stop(2);
+      if (this._executor != null)
+         this._executor.shutdown();
+      if (this._sweeper != null)
+         this._sweeper.shutdownNow();
+   }
+
+   /**
+    * @return the virtual thread executor when the JVM has one, otherwise a
+    *         bounded pool of platform threads
+    */
+   static ExecutorService newExecutor(int threads, int queue) {
+      try {
+         // Java 21+; looked up by reflection so that the server still builds for Java 8
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (Exception e) {
+         ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queue), daemon("server-worker"), new ThreadPoolExecutor.CallerRunsPolicy());
+         executor.allowCoreThreadTimeOut(true);
+         return executor;
+      }
+   }
+
+   private void login(HttpExchange exchange) throws IOException {
+      try {
+         Map<String, String> form = form(exchange);
+         String user = form.get("user"), password = form.get("password");
+         if (user == null || password == null) {
+            respond(exchange, 400, error("user and password are required"));
+            return;
+         }
+         Hotel session = this._hotel.newSession();
+         if (!session.logIn(Integer.parseInt(user), password)) {
+            respond(exchange, 401, error("Invalid credentials"));
+            return;
+         }
+         String token = newToken();
+         this._tokens.put(token, new Token(session.getAuthorisedUser()));
+         respond(exchange, 200, "{\"token\":" + CommandRunner.quote(token) + "}");
+      } catch (Exception e) {
+         respond(exchange, 400, error(e.getMessage() == null ? e.toString() : e.getMessage()));
+      }
+   }//end login
+
+   private void logout(HttpExchange exchange) throws IOException {
+      String token = bearer(exchange);
+      if (token != null)
+         this._tokens.remove(token);
+      respond(exchange, 200, "{\"status\":\"ok\"}");
+   }
+
+   private void command(HttpExchange exchange) throws IOException {
+      Hotel session = this._hotel.newSession();
+      String token = bearer(exchange);
+      if (token != null) {
+         Token t = this._tokens.get(token);
+         if (t == null || expired(t)) {
+            this._tokens.remove(token);
+            respond(exchange, 401, error("Unknown or expired token"));
+            return;
+         }
+         t.lastUsed = System.currentTimeMillis();
+         session.resume(t.userID);
+      }
+
+      String[] args = args(exchange.getRequestURI().getRawPath().substring("/api/".length()));
+      if (args.length == 0 || "login".equalsIgnoreCase(args[0]) || "logout".equalsIgnoreCase(args[0])) {
+         respond(exchange, 400, error("Expected /api/<command>/<arg>/..., login and logout have their own paths"));
+         return;
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+      PrintStream out = new PrintStream(bytes, false, "UTF-8");
+      String status = new CommandRunner(session, out).execute((int) this._requests.incrementAndGet(), args);
+      out.flush();
+      int code = "ok".equals(status) ? 200 : "denied".equals(status) ? 403 : 400;
+      respond(exchange, code, new String(bytes.toByteArray(), StandardCharsets.UTF_8).trim());
+   }//end command
+
+   private boolean expired(Token token) {
+      return System.currentTimeMillis() - token.lastUsed > this._sessionMillis;
+   }
+
+   // drops the tokens not used for a while
+   private void sweep() {
+      for (Iterator<Token> it = this._tokens.values().iterator(); it.hasNext(); ) {
+         if (expired(it.next()))
+            it.remove();
+      }
+   }
+
+   private String newToken() {
+      byte[] bytes = new byte[16];
+      this._random.nextBytes(bytes);
+      StringBuilder token = new StringBuilder(32);
+      for (byte b : bytes)
+         token.append(String.format("%02x", b & 0xff));
+      return token.toString();
+   }
+
+   private static String bearer(HttpExchange exchange) {
+      String header = exchange.getRequestHeaders().getFirst("Authorization");
+      if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7))
+         return null;
+      return header.substring(7).trim();
+   }
+
+   // the URL decoded path segments
+   static String[] args(String path) throws UnsupportedEncodingException {
+      List<String> args = new ArrayList<String>();
+      for (String segment : path.split("/")) {
+         if (!segment.isEmpty())
+            args.add(URLDecoder.decode(segment.replace("+", "%2B"), "UTF-8"));
+      }
+      return args.toArray(new String[0]);
+   }
+
+   // the parameters of the query string and of a form body
+   private static Map<String, String> form(HttpExchange exchange) throws IOException {
+      Map<String, String> form = new HashMap<String, String>();
+      parse(exchange.getRequestURI().getRawQuery(), form);
+      InputStream in = exchange.getRequestBody();
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      for (int n; (n = in.read(buffer)) > 0 && body.size() < 8192; )
+         body.write(buffer, 0, n);
+      in.close();
+      parse(new String(body.toByteArray(), StandardCharsets.UTF_8), form);
+      return form;
+   }
+
+   private static void parse(String query, Map<String, String> form) throws UnsupportedEncodingException {
+      if (query == null || query.isEmpty())
+         return;
+      for (String pair : query.split("&")) {
+         int eq = pair.indexOf('=');
+         if (eq > 0)
+            form.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+      }
+   }
+
+   private static String error(String message) {
+      return "{\"status\":\"error\",\"error\":" + CommandRunner.quote(message) + "}";
+   }
+
+   private static void respond(HttpExchange exchange, int code, String json) throws IOException {
+      byte[] body = json.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(code, body.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(body);
+      out.close();
+   }
+
+   private static ThreadFactory daemon(final String name) {
+      final AtomicInteger count = new AtomicInteger();
+      return new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      };
+   }
+
+   /**
+    * Starts the server and serves until the process is stopped.
+    *
+    * @param args dbname port user
+    */
+   public static void main(String[] args) {
+      if (args.length != 3) {
+         System.err.println("Usage: java HotelServer <dbname> <port> <user>");
+         return;
+      }
+      try {
+         Class.forName("org.postgresql.Driver");
+         final Hotel esql = new Hotel(args[0], args[1], args[2], "");
+         final HotelServer server = new HotelServer(esql, Long.getLong("hotel.server.sessionMinutes", 30L));
+         String host = System.getProperty("hotel.server.host", "127.0.0.1");
+         int port = Integer.getInteger("hotel.server.port", 8080);
+         server.start(host, port, Integer.getInteger("hotel.server.threads", 64), Integer.getInteger("hotel.server.queue", 1024));
+         Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+               server.stop();
+               esql.cleanup();
+            }
+         });
+         System.err.println("Serving on http://" + host + ":" + port + "/");
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      }
+   }//end main
+
+}//end HotelServer
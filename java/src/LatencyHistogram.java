@@ -0,0 +1,106 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe latency histogram with HDR-style log-linear buckets.
+ *
+ * Values are nanoseconds. Each power of two is split into 32 equal
+ * buckets, so any recorded value is known within about 3%, from 1 ns up to
+ * about 18 minutes (longer values land in the last bucket). Recording is
+ * two atomic increments and an atomic add on preallocated counters, with
+ * no allocation and no lock.
+ *
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BITS = 5;
+   private static final int SUB = 1 << SUB_BITS;
+   private static final int MAX_BIT = 40;
+   private static final int BUCKETS = (MAX_BIT - SUB_BITS + 2) * SUB;
+
+   private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong _count = new AtomicLong();
+   private final AtomicLong _sum = new AtomicLong();
+   private final AtomicLong _max = new AtomicLong();
+
+   static int bucketOf(long value) {
+      if (value < SUB)
+         return value < 0 ? 0 : (int) value;
+      int msb = 63 - Long.numberOfLeadingZeros(value);
+      if (msb > MAX_BIT)
+         return BUCKETS - 1;
+      int group = msb - SUB_BITS + 1;
+      int sub = (int) (value >>> (msb - SUB_BITS)) & (SUB - 1);
+      return group * SUB + sub;
+   }
+
+   // the largest value that falls into a bucket
+   static long upperBoundOf(int bucket) {
+      if (bucket < SUB)
+         return bucket;
+      int group = bucket / SUB;
+      long lower = (long) (SUB + bucket % SUB) << (group - 1);
+      return lower + (1L << (group - 1)) - 1;
+   }
+
+   /**
+    * @param nanos the latency to record
+    */
+   public void record(long nanos) {
+      this._counts.incrementAndGet(bucketOf(nanos));
+      this._count.incrementAndGet();
+      this._sum.addAndGet(nanos);
+      long max = this._max.get();
+      while (nanos > max && !this._max.compareAndSet(max, nanos))
+         max = this._max.get();
+   }
+
+   public long getCount() { return this._count.get(); }
+
+   public long getSumNanos() { return this._sum.get(); }
+
+   public long getMaxNanos() { return this._max.get(); }
+
+   /**
+    * @param percentile between 0 and 100
+    * @return the latency below which the given share of values fall, in nanoseconds
+    */
+   public long getValueAtPercentile(double percentile) {
+      long count = this._count.get();
+      if (count == 0)
+         return 0;
+      long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += this._counts.get(i);
+         if (seen >= target)
+            return Math.min(upperBoundOf(i), this._max.get());
+      }
+      return this._max.get();
+   }
+
+   /**
+    * @param nanos an upper bound
+    * @return how many recorded values were at most the bound, as far as the buckets tell
+    */
+   public long getCountAtOrBelow(long nanos) {
+      long seen = 0;
+      for (int i = 0; i < BUCKETS && upperBoundOf(i) <= nanos; i++)
+         seen += this._counts.get(i);
+      return seen;
+   }
+
+}//end LatencyHistogram
@@ -0,0 +1,217 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, row, byte and error counters per Hotel operation and per SQL
+ * template, shared by all sessions.
+ *
+ * Series are created on first use; afterwards looking one up is a hash
+ * lookup on a string whose hash code is cached, and recording only touches
+ * preallocated atomics, so the hot path does not allocate.
+ *
+ */
+public class Metrics {
+
+   /*
+    * The counters of one operation or SQL template.
+    */
+   public static class Series {
+      private final String _name;
+      private final LatencyHistogram _latency = new LatencyHistogram();
+      private final AtomicLong _errors = new AtomicLong();
+      private final AtomicLong _rows = new AtomicLong();
+      private final AtomicLong _bytes = new AtomicLong();
+
+      Series(String name) {
+         this._name = name;
+      }
+
+      /**
+       * @param nanos how long the call took
+       * @param ok false when the call failed
+       */
+      public void record(long nanos, boolean ok) {
+         this._latency.record(nanos);
+         if (!ok)
+            this._errors.incrementAndGet();
+      }
+
+      public void addRows(long rows) { this._rows.addAndGet(rows); }
+
+      public void addBytes(long bytes) { this._bytes.addAndGet(bytes); }
+
+      public String getName() { return this._name; }
+
+      public LatencyHistogram getLatency() { return this._latency; }
+
+      public long getErrors() { return this._errors.get(); }
+
+      public long getRows() { return this._rows.get(); }
+
+      public long getBytes() { return this._bytes.get(); }
+   }//end Series
+
+   // templates beyond this many share one series, in case SQL is built dynamically
+   static final int MAX_TEMPLATES = 1000;
+
+   // latency bucket bounds of the exported histograms, in seconds
+   static final double[] EXPORT_BOUNDS = {
+      0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+   private final ConcurrentHashMap<String, Series> _operations = new ConcurrentHashMap<String, Series>();
+   private final ConcurrentHashMap<String, Series> _templates = new ConcurrentHashMap<String, Series>();
+   private final Series _otherTemplates = new Series("(other)");
+
+   /**
+    * @param name the operation, e.g. "viewRooms"
+    * @return its series
+    */
+   public Series operation(String name) {
+      Series s = this._operations.get(name);
+      if (s == null) {
+         Series created = new Series(name);
+         s = this._operations.putIfAbsent(name, created);
+         if (s == null)
+            s = created;
+      }
+      return s;
+   }
+
+   /**
+    * @param template the SQL template as passed to the driver
+    * @return its series, labeled with the template on one line
+    */
+   public Series sql(String template) {
+      Series s = this._templates.get(template);
+      if (s == null) {
+         if (this._templates.size() >= MAX_TEMPLATES)
+            return this._otherTemplates;
+         Series created = new Series(template.trim().replaceAll("\\s+", " "));
+         s = this._templates.putIfAbsent(template, created);
+         if (s == null)
+            s = created;
+      }
+      return s;
+   }
+
+   public List<Series> getOperations() {
+      return sorted(this._operations.values());
+   }
+
+   public List<Series> getTemplates() {
+      List<Series> list = sorted(this._templates.values());
+      if (this._otherTemplates.getLatency().getCount() > 0)
+         list.add(this._otherTemplates);
+      return list;
+   }
+
+   private static List<Series> sorted(Iterable<Series> values) {
+      List<Series> list = new ArrayList<Series>();
+      for (Series s : values)
+         list.add(s);
+      Collections.sort(list, new Comparator<Series>() {
+         public int compare(Series a, Series b) { return a.getName().compareTo(b.getName()); }
+      });
+      return list;
+   }
+
+   /**
+    * Writes every series in the Prometheus text exposition format.
+    *
+    * @param out where the text is written
+    * @throws java.io.IOException when writing fails
+    */
+   public void writePrometheus(Writer out) throws IOException {
+      writeFamily(out, "hotel_operation", "operation", getOperations(), "Hotel operations");
+      writeFamily(out, "hotel_sql", "template", getTemplates(), "SQL statements, per template");
+   }
+
+   private static void writeFamily(Writer out, String prefix, String label, List<Series> series, String what) throws IOException {
+      out.write("# HELP " + prefix + "_duration_seconds Latency of " + what + ".\n");
+      out.write("# TYPE " + prefix + "_duration_seconds histogram\n");
+      for (Series s : series) {
+         String l = label + "=\"" + escape(s.getName()) + "\"";
+         LatencyHistogram h = s.getLatency();
+         for (double bound : EXPORT_BOUNDS) {
+            out.write(prefix + "_duration_seconds_bucket{" + l + ",le=\"" + BigDecimal.valueOf(bound).stripTrailingZeros().toPlainString() + "\"} "
+               + h.getCountAtOrBelow((long) (bound * 1e9)) + "\n");
+         }
+         out.write(prefix + "_duration_seconds_bucket{" + l + ",le=\"+Inf\"} " + h.getCount() + "\n");
+         out.write(prefix + "_duration_seconds_sum{" + l + "} " + h.getSumNanos() / 1e9 + "\n");
+         out.write(prefix + "_duration_seconds_count{" + l + "} " + h.getCount() + "\n");
+      }
+      out.write("# HELP " + prefix + "_duration_quantile_seconds Latency percentiles of " + what + " since start.\n");
+      out.write("# TYPE " + prefix + "_duration_quantile_seconds gauge\n");
+      for (Series s : series) {
+         String l = label + "=\"" + escape(s.getName()) + "\"";
+         LatencyHistogram h = s.getLatency();
+         for (double q : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+            out.write(prefix + "_duration_quantile_seconds{" + l + ",quantile=\"" + q + "\"} "
+               + h.getValueAtPercentile(q * 100) / 1e9 + "\n");
+         }
+         out.write(prefix + "_duration_quantile_seconds{" + l + ",quantile=\"1.0\"} " + h.getMaxNanos() / 1e9 + "\n");
+      }
+      writeCounter(out, prefix + "_errors_total", "Failed " + what + ".", label, series, 0);
+      writeCounter(out, prefix + "_rows_total", "Rows returned or changed by " + what + ".", label, series, 1);
+      if (prefix.equals("hotel_operation"))
+         writeCounter(out, prefix + "_rendered_bytes_total", "Characters of tables printed by " + what + ".", label, series, 2);
+   }//end writeFamily
+
+   private static void writeCounter(Writer out, String name, String help, String label, List<Series> series, int which) throws IOException {
+      out.write("# HELP " + name + " " + help + "\n");
+      out.write("# TYPE " + name + " counter\n");
+      for (Series s : series) {
+         long v = which == 0 ? s.getErrors() : which == 1 ? s.getRows() : s.getBytes();
+         out.write(name + "{" + label + "=\"" + escape(s.getName()) + "\"} " + v + "\n");
+      }
+   }
+
+   static String escape(String value) {
+      return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+   }
+
+   /**
+    * Writes a human readable summary table of every series.
+    *
+    * @param out where the text is written
+    * @throws java.io.IOException when writing fails
+    */
+   public void writeSummary(Writer out) throws IOException {
+      writeSummary(out, "operation", getOperations());
+      writeSummary(out, "sql template", getTemplates());
+   }
+
+   private static void writeSummary(Writer out, String title, List<Series> series) throws IOException {
+      out.write(String.format("%-40s %9s %7s %9s %9s %9s %9s %10s %12s%n",
+         title, "count", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms", "rows", "bytes"));
+      for (Series s : series) {
+         LatencyHistogram h = s.getLatency();
+         String name = s.getName().length() > 40 ? s.getName().substring(0, 37) + "..." : s.getName();
+         out.write(String.format("%-40s %9d %7d %9.3f %9.3f %9.3f %9.3f %10d %12d%n",
+            name, h.getCount(), s.getErrors(),
+            h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(90) / 1e6,
+            h.getValueAtPercentile(99) / 1e6, h.getMaxNanos() / 1e6, s.getRows(), s.getBytes()));
+      }
+   }
+
+}//end Metrics
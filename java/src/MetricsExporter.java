@@ -0,0 +1,209 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes Metrics: as a Prometheus text endpoint on a local HTTP port,
+ * and as a summary table dumped periodically to a file or standard error.
+ * Both run on daemon threads and only read the counters.
+ *
+ */
+public class MetricsExporter {
+
+   private final Metrics _metrics;
+   private final ConnectionPool _pool;
+   private final RoomCatalog _rooms;
+   private HttpServer _server;
+   private ScheduledExecutorService _dumper;
+
+   /**
+    * @param metrics the counters to publish
+    * @param pool its gauges are published too; may be null
+    * @param rooms the room catalog cache whose counters are published too; may be null
+    */
+   public MetricsExporter(Metrics metrics, ConnectionPool pool, RoomCatalog rooms) {
+      this._metrics = metrics;
+      this._pool = pool;
+      this._rooms = rooms;
+   }
+
+   /**
+    * Starts the exporters configured by system properties:
+    * -Dhotel.metrics.port (serves /metrics on 127.0.0.1),
+    * -Dhotel.metrics.dumpSeconds and -Dhotel.metrics.dumpFile (default
+    * standard error).
+    *
+    * @return the exporter, or null when none is configured
+    * @throws java.io.IOException when the port cannot be opened
+    */
+   public static MetricsExporter fromSystemProperties(Metrics metrics, ConnectionPool pool, RoomCatalog rooms) throws IOException {
+      Integer port = Integer.getInteger("hotel.metrics.port");
+      Integer seconds = Integer.getInteger("hotel.metrics.dumpSeconds");
+      if (port == null && seconds == null)
+         return null;
+      MetricsExporter exporter = new MetricsExporter(metrics, pool, rooms);
+      if (port != null)
+         exporter.serve(port);
+      if (seconds != null)
+         exporter.dumpEvery(seconds, System.getProperty("hotel.metrics.dumpFile"));
+      return exporter;
+   }
+
+   /**
+    * Serves the Prometheus text format at http://127.0.0.1:port/metrics.
+    *
+    * @param port the local port
+    * @throws java.io.IOException when the port cannot be opened
+    */
+   public void serve(int port) throws IOException {
+      this._server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+      this._server.createContext("/metrics", new HttpHandler() {
+         public void handle(HttpExchange exchange) throws IOException {
+            byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+         }
+      });
+      this._server.setExecutor(Executors.newSingleThreadExecutor(daemon("metrics-http")));
+      this._server.start();
+   }
+
+   /**
+    * Writes the summary table every few seconds.
+    *
+    * @param seconds the period
+    * @param file appended to, or null for standard error
+    */
+   public void dumpEvery(int seconds, final String file) {
+      this._dumper = Executors.newSingleThreadScheduledExecutor(daemon("metrics-dump"));
+      this._dumper.scheduleAtFixedRate(new Runnable() {
+         public void run() { dump(file); }
+      }, seconds, seconds, TimeUnit.SECONDS);
+   }
+
+   /**
+    * @return every metric in the Prometheus text exposition format
+    */
+   public String prometheus() {
+      StringWriter out = new StringWriter(8192);
+      try {
+         this._metrics.writePrometheus(out);
+         if (this._pool != null)
+            writePool(out);
+         if (this._rooms != null)
+            writeRooms(out);
+      } catch (IOException e) {
+         // a StringWriter does not fail
+      }
+      return out.toString();
+   }
+
+   private void writePool(Writer out) throws IOException {
+      gauge(out, "hotel_pool_connections", "Open pooled connections.", this._pool.getTotalCount());
+      gauge(out, "hotel_pool_idle_connections", "Idle pooled connections.", this._pool.getIdleCount());
+      gauge(out, "hotel_pool_max_connections", "Pool size limit.", this._pool.getMaxSize());
+      counter(out, "hotel_pool_borrows_total", "Connections borrowed.", this._pool.getBorrowCount());
+      counter(out, "hotel_pool_borrow_timeouts_total", "Borrows that timed out.", this._pool.getBorrowTimeoutCount());
+      gauge(out, "hotel_pool_statement_cache_hit_ratio", "Prepared statement cache hit ratio.", this._pool.getStatementCacheHitRatio());
+   }
+
+   private void writeRooms(Writer out) throws IOException {
+      gauge(out, "hotel_room_cache_hotels", "Hotels in the room catalog cache.", this._rooms.size());
+      counter(out, "hotel_room_cache_hits_total", "Room catalog lookups answered from the cache.", this._rooms.getHits());
+      counter(out, "hotel_room_cache_misses_total", "Room catalog lookups that read Rooms.", this._rooms.getMisses());
+      counter(out, "hotel_room_cache_evictions_total", "Hotels evicted from the room catalog cache.", this._rooms.getEvictions());
+      counter(out, "hotel_room_cache_invalidations_total", "Room catalog invalidations.", this._rooms.getInvalidations());
+      gauge(out, "hotel_room_cache_hit_ratio", "Room catalog cache hit ratio.", this._rooms.getHitRatio());
+      LatencyHistogram age = this._rooms.getServedAge();
+      gauge(out, "hotel_room_cache_served_age_p99_seconds", "99th percentile age of the room catalog entries served.",
+         age.getValueAtPercentile(99) / 1e9);
+      gauge(out, "hotel_room_cache_served_age_max_seconds", "Oldest room catalog entry served.", age.getMaxNanos() / 1e9);
+   }
+
+   private static void gauge(Writer out, String name, String help, double value) throws IOException {
+      out.write("# HELP " + name + " " + help + "\n# TYPE " + name + " gauge\n" + name + " " + value + "\n");
+   }
+
+   private static void counter(Writer out, String name, String help, long value) throws IOException {
+      out.write("# HELP " + name + " " + help + "\n# TYPE " + name + " counter\n" + name + " " + value + "\n");
+   }
+
+   private void dump(String file) {
+      try {
+         Writer out = file == null
+            ? new OutputStreamWriter(new NonClosing(System.err), StandardCharsets.UTF_8)
+            : new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+         try {
+            out.write("-- metrics at " + new Date() + "\n");
+            this._metrics.writeSummary(out);
+            if (this._pool != null)
+               out.write(this._pool.stats() + "\n");
+            if (this._rooms != null)
+               out.write(this._rooms.stats() + "\n");
+            out.write("\n");
+         } finally {
+            out.close();
+         }
+      } catch (IOException e) {
+         System.err.println("Failed to write metrics: " + e.getMessage());
+      }
+   }
+
+   /**
+    * Stops the HTTP endpoint and the periodic dump.
+    */
+   public void close() {
+      if (this._server != null)
+         this._server.stop(0);
+      if (this._dumper != null)
+         this._dumper.shutdownNow();
+   }
+
+   private static ThreadFactory daemon(final String name) {
+      return new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+         }
+      };
+   }
+
+   // lets the dump close its writer without closing standard error
+   private static class NonClosing extends PrintStream {
+      NonClosing(PrintStream out) { super(out, true); }
+
+      public void close() { flush(); }
+   }
+
+}//end MetricsExporter
@@ -0,0 +1,238 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Maintains the monthly partitions of RoomBookings (see create_tables.sql).
+ * Meant to run after a load and then daily, e.g. from cron:
+ *
+ *    - creates the partitions of the next partition.aheadMonths months, so
+ *      new bookings never land in RoomBookings_default;
+ *    - with partition.bookings set to a bookings CSV file, creates the
+ *      partitions of the months in its bookingDate column, so a load that
+ *      follows writes every row straight into its final partition (see
+ *      sql/scripts/bulk_load.sh);
+ *    - moves the rows of RoomBookings_default into partitions of their
+ *      months: a partition is created as a plain table, filled with the rows
+ *      deleted from the default partition, then attached, all in one
+ *      transaction;
+ *    - with partition.retainMonths > 0, detaches the partitions of older
+ *      months and renames them RoomBookings_archive_yYYYYmMM. They stay
+ *      queryable as plain tables and can be dumped and dropped offline.
+ *
+ * Indexes declared on RoomBookings (create_indexes.sql) are created on each
+ * partition by the attach, so every month has its own small indexes and an
+ * old month is never vacuumed again once it stops changing. Each change
+ * runs under migrate.lockTimeout with retries, like SchemaMigrator.
+ *
+ * Running programs keep their availability engine and leaderboard until
+ * restarted; archived bookings disappear from them then.
+ *
+ * Options (system properties):
+ *    partition.aheadMonths    future months to create (default 3)
+ *    partition.retainMonths   months to keep attached, 0 for all (default 0)
+ *    partition.bookings       a bookings CSV file about to be loaded (default none)
+ *
+ * Usage: java PartitionManager dbname port user
+ *
+ */
+public class PartitionManager {
+
+   static final int AHEAD_MONTHS = Integer.getInteger("partition.aheadMonths", 3);
+   static final int RETAIN_MONTHS = Integer.getInteger("partition.retainMonths", 0);
+   static final String BOOKINGS_FILE = System.getProperty("partition.bookings");
+
+   static final String PARTITIONS_QUERY = "" +
+      "SELECT C.relname::text FROM pg_inherits I, pg_class C \n" +
+      "WHERE I.inhparent = 'roombookings'::regclass AND C.oid = I.inhrelid";
+
+   static final String DEFAULT_MONTHS_QUERY =
+      "SELECT DISTINCT date_trunc('month', bookingDate)::date FROM RoomBookings_default ORDER BY 1";
+
+   private final Hotel _esql;
+
+   public PartitionManager(Hotel esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * @param month any day of the month
+    * @return the name of the partition of that month
+    */
+   static String partition(LocalDate month) {
+      return String.format("roombookings_y%04dm%02d", month.getYear(), month.getMonthValue());
+   }
+
+   /**
+    * @param name a table name
+    * @return the first day of the month of a partition name, or null for another table
+    */
+   static LocalDate month(String name) {
+      if (!name.matches("roombookings_y\\d{4}m\\d{2}"))
+         return null;
+      return LocalDate.of(Integer.parseInt(name.substring(14, 18)), Integer.parseInt(name.substring(19, 21)), 1);
+   }
+
+   /**
+    * @return the first days of the months that have a partition, ascending
+    * @throws java.sql.SQLException when failed to read the catalog
+    */
+   public TreeSet<LocalDate> partitions() throws SQLException {
+      TreeSet<LocalDate> months = new TreeSet<LocalDate>();
+      ColumnarResult names = this._esql.executeQueryAndReturnColumns(PARTITIONS_QUERY);
+      for (int r = 0; r < names.getRowCount(); r++) {
+         LocalDate month = month(names.getString(r, 0));
+         if (month != null)
+            months.add(month);
+      }
+      return months;
+   }
+
+   /**
+    * Reads the months of the bookingDate column of a bookings CSV file with
+    * a header line, such as data/bookings.csv.
+    *
+    * @param file the CSV file; dates are M/d/yyyy like the shipped data, or yyyy-MM-dd
+    * @return the first days of the months, ascending
+    * @throws java.io.IOException when the file cannot be read or has no bookingDate column
+    */
+   static TreeSet<LocalDate> csvMonths(File file) throws IOException {
+      TreeSet<LocalDate> months = new TreeSet<LocalDate>();
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+      try {
+         String header = in.readLine();
+         int column = header == null ? -1 : Arrays.asList(header.toLowerCase().split(",")).indexOf("bookingdate");
+         if (column < 0)
+            throw new IOException(file + " has no bookingDate column");
+         for (String line = in.readLine(); line != null; line = in.readLine()) {
+            String[] fields = line.split(",");
+            if (fields.length <= column)
+               continue;
+            String date = fields[column].trim();
+            try {
+               months.add((date.indexOf('/') >= 0 ? Hotel.parseDate(date) : LocalDate.parse(date)).withDayOfMonth(1));
+            } catch (DateTimeParseException e) {
+               throw new IOException(file + ": invalid bookingDate " + date);
+            }
+         }
+      } finally {
+         in.close();
+      }
+      return months;
+   }
+
+   /**
+    * Runs the maintenance once.
+    *
+    * @param today the current date
+    * @return what was done, one line per partition
+    * @throws java.sql.SQLException when a step fails; the steps done before are kept
+    * @throws java.io.IOException when the partition.bookings file cannot be read
+    */
+   public List<String> maintain(LocalDate today) throws SQLException, IOException, InterruptedException {
+      List<String> done = new ArrayList<String>();
+      TreeSet<LocalDate> existing = partitions();
+
+      // the months of the default partition's rows, of the file about to be loaded, and the coming months
+      TreeSet<LocalDate> wanted = new TreeSet<LocalDate>();
+      ColumnarResult stray = this._esql.executeQueryAndReturnColumns(DEFAULT_MONTHS_QUERY);
+      for (int r = 0; r < stray.getRowCount(); r++)
+         wanted.add(stray.getDate(r, 0));
+      if (BOOKINGS_FILE != null)
+         wanted.addAll(csvMonths(new File(BOOKINGS_FILE)));
+      LocalDate current = today.withDayOfMonth(1);
+      for (int i = 0; i <= AHEAD_MONTHS; i++)
+         wanted.add(current.plusMonths(i));
+
+      LocalDate oldest = RETAIN_MONTHS > 0 ? current.minusMonths(RETAIN_MONTHS - 1) : null;
+      for (LocalDate month : wanted) {
+         if (existing.contains(month))
+            continue;
+         long rows = create(month);
+         existing.add(month);
+         done.add(String.format("created %s (%d rows moved from the default partition)", partition(month), rows));
+      }
+
+      if (oldest != null) {
+         for (LocalDate month : existing.headSet(oldest)) {
+            archive(month);
+            done.add("archived " + partition(month));
+         }
+      }
+      this._esql.executeUpdate("ANALYZE RoomBookings");
+      return done;
+   }//end maintain
+
+   // creates the partition of a month with the rows the default partition has for it
+   private long create(LocalDate month) throws SQLException, InterruptedException {
+      String name = partition(month);
+      String from = month.toString(), to = month.plusMonths(1).toString();
+      // the CHECK lets the attach skip its scan of the new partition
+      int[] counts = SchemaMigrator.alter(this._esql.getPool(), name,
+         "CREATE TABLE " + name + " (LIKE RoomBookings INCLUDING DEFAULTS)",
+         "ALTER TABLE " + name + " ADD CONSTRAINT " + name + "_range " +
+            "CHECK (bookingDate >= DATE '" + from + "' AND bookingDate < DATE '" + to + "')",
+         "WITH moved AS (DELETE FROM RoomBookings_default " +
+            "WHERE bookingDate >= DATE '" + from + "' AND bookingDate < DATE '" + to + "' RETURNING *) " +
+            "INSERT INTO " + name + " SELECT * FROM moved",
+         "ALTER TABLE RoomBookings ATTACH PARTITION " + name +
+            " FOR VALUES FROM ('" + from + "') TO ('" + to + "')",
+         "ALTER TABLE " + name + " DROP CONSTRAINT " + name + "_range");
+      // the rows inserted by the move, in the attempt that committed
+      return counts[2];
+   }
+
+   private void archive(LocalDate month) throws SQLException, InterruptedException {
+      String name = partition(month);
+      SchemaMigrator.alter(this._esql.getPool(), name,
+         "ALTER TABLE RoomBookings DETACH PARTITION " + name,
+         "ALTER TABLE " + name + " RENAME TO " + name.replace("roombookings_", "roombookings_archive_"));
+   }
+
+   public static void main(String[] args) {
+      if (args.length != 3) {
+         System.err.println("Usage: java PartitionManager <dbname> <port> <user>");
+         return;
+      }
+      Hotel esql = null;
+      boolean failed = false;
+      try {
+         Class.forName("org.postgresql.Driver");
+         esql = new Hotel(args[0], args[1], args[2], "");
+         for (String line : new PartitionManager(esql).maintain(LocalDate.now()))
+            System.out.println(line);
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         failed = true;
+      } finally {
+         if (esql != null)
+            esql.cleanup();
+      }
+      if (failed)
+         System.exit(1);
+   }//end main
+
+}//end PartitionManager
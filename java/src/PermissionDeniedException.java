@@ -0,0 +1,30 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when the logged in user may not perform an operation. Uses the
+ * SQL state of PostgreSQL's insufficient_privilege error, so callers that
+ * only handle SQLException still report it.
+ *
+ */
+public class PermissionDeniedException extends SQLException {
+
+   private static final long serialVersionUID = 1L;
+
+   public PermissionDeniedException(String message) {
+      super(message, "42501");
+   }
+
+}//end PermissionDeniedException
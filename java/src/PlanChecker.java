@@ -0,0 +1,360 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs EXPLAIN (ANALYZE, BUFFERS) on every query template of Hotel and
+ * fails when a plan reads a table with a sequential scan of more rows than
+ * a threshold, which usually means an index from create_indexes.sql is
+ * missing or no longer used. Every scan of a plan is checked, and a scan
+ * of a partition (e.g. roombookings_y2024m05) counts as a scan of its
+ * parent table for plan.allowSeqScan.
+ *
+ * The parameters are sampled from the database: the manager of the first
+ * hotel, one of its rooms and booked dates, the customer with the most
+ * bookings and an existing repair. Writing templates are explained inside
+ * a transaction that is rolled back, so the data is left unchanged.
+ *
+ * Options (system properties):
+ *    plan.maxSeqScanRows   rows a sequential scan may read (default 1000)
+ *    plan.allowSeqScan     comma separated tables that may always be scanned
+ *    plan.verbose          print every plan (default false)
+ *
+ * Usage: java PlanChecker dbname port user
+ *
+ * Exits with status 1 when a template fails the check.
+ *
+ */
+public class PlanChecker {
+
+   static final long MAX_SEQ_SCAN_ROWS = Long.getLong("plan.maxSeqScanRows", 1000L);
+   static final boolean VERBOSE = Boolean.getBoolean("plan.verbose");
+
+   // "Seq Scan on roombookings a  (cost=...) (actual time=0.010..0.500 rows=12 loops=1)"
+   private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\S+)");
+   private static final Pattern ACTUAL = Pattern.compile("actual time=\\S+ rows=(\\d+) loops=(\\d+)");
+   private static final Pattern REMOVED = Pattern.compile("Rows Removed by Filter: (\\d+)");
+   private static final Pattern BUFFERS = Pattern.compile("shared( hit=(\\d+))?( read=(\\d+))?");
+   private static final Pattern TIME = Pattern.compile("(?:Execution Time|Total runtime): ([0-9.]+) ms");
+
+   /*
+    * A query template with the parameters it is explained with.
+    */
+   static class Template {
+      final String name;
+      final String sql;
+      final Object[] params;
+
+      Template(String name, String sql, Object... params) {
+         this.name = name;
+         this.sql = sql;
+         this.params = params;
+      }
+   }//end Template
+
+   /*
+    * What one plan did: its sequential scans and their row counts.
+    */
+   static class Report {
+      final List<String> scans = new ArrayList<String>();
+      final List<String> scanTables = new ArrayList<String>();
+      final List<Long> scanRows = new ArrayList<Long>();
+      long sharedHit = 0;
+      long sharedRead = 0;
+      double millis = -1;
+   }//end Report
+
+   static final String PARTITIONS_QUERY = "" +
+      "SELECT C.relname::text, P.relname::text FROM pg_inherits I, pg_class C, pg_class P \n" +
+      "WHERE C.oid = I.inhrelid AND P.oid = I.inhparent";
+
+   private final Hotel _esql;
+   private final Set<String> _allowed;
+
+   // partition -> its parent table, read by check()
+   private final Map<String, String> _parents = new HashMap<String, String>();
+
+   public PlanChecker(Hotel esql, Set<String> allowed) {
+      this._esql = esql;
+      this._allowed = allowed;
+   }
+
+   /**
+    * Builds the templates with parameters sampled from the database.
+    *
+    * @return the templates, in the order of the menu
+    * @throws java.sql.SQLException when the sample data cannot be read
+    */
+   public List<Template> templates() throws SQLException {
+      ColumnarResult hotel = this._esql.executeQueryAndReturnColumns(
+         "SELECT H.hotelID, H.managerUserID, R.roomNumber FROM Hotel H, Rooms R " +
+         "WHERE R.hotelID = H.hotelID ORDER BY H.hotelID, R.roomNumber LIMIT 1");
+      if (hotel.getRowCount() == 0)
+         throw new SQLException("No hotel with rooms to sample parameters from");
+      int hotelID = hotel.getInt(0, 0), managerID = hotel.getInt(0, 1), roomNumber = hotel.getInt(0, 2);
+
+      ColumnarResult booking = this._esql.executeQueryAndReturnColumns(
+         "SELECT B.bookingDate FROM RoomBookings B WHERE B.hotelID = ? ORDER BY B.bookingDate DESC LIMIT 1", hotelID);
+      LocalDate date = booking.getRowCount() > 0 ? booking.getDate(0, 0) : LocalDate.now();
+
+      ColumnarResult customer = this._esql.executeQueryAndReturnColumns(
+         "SELECT B.customerID FROM RoomBookings B GROUP BY B.customerID ORDER BY COUNT(*) DESC LIMIT 1");
+      int customerID = customer.getRowCount() > 0 ? customer.getInt(0, 0) : managerID;
+
+      ColumnarResult repair = this._esql.executeQueryAndReturnColumns(
+         "SELECT R.companyID, R.hotelID, R.roomNumber, H.managerUserID FROM RoomRepairs R, Hotel H " +
+         "WHERE H.hotelID = R.hotelID ORDER BY R.repairID LIMIT 1");
+
+      String hotels = "{" + hotelID + "}", rooms = "{" + roomNumber + "}", dates = "{" + date + "}";
+      Timestamp now = new Timestamp(System.currentTimeMillis());
+      int page = Hotel.HISTORY_PAGE_SIZE + 1;
+      ColumnarResult managedHotels = this._esql.executeQueryAndReturnColumns(
+         "SELECT H.hotelID FROM Hotel H WHERE H.managerUserID = ?", managerID);
+      StringBuilder managed = new StringBuilder("{");
+      for (int r = 0; r < managedHotels.getRowCount(); r++)
+         managed.append(r > 0 ? "," : "").append(managedHotels.getInt(r, 0));
+      managed.append('}');
+      List<Template> list = new ArrayList<Template>();
+      list.add(new Template("LOGIN_QUERY", Hotel.LOGIN_QUERY, managerID, ""));
+      list.add(new Template("PRINCIPAL_QUERY", Hotel.PRINCIPAL_QUERY, managerID));
+      list.add(new Template("BOOKED_DAYS_QUERY", Hotel.BOOKED_DAYS_QUERY, date, date.plusDays(1)));
+      list.add(new Template("ROOMS_QUERY", Hotel.ROOMS_QUERY, hotelID));
+      list.add(new Template("ROOMS_ON_DATE_QUERY", Hotel.ROOMS_ON_DATE_QUERY, date, date, hotelID));
+      list.add(new Template("AVAILABILITY_QUERY", Hotel.AVAILABILITY_QUERY, hotelID, roomNumber, date, date));
+      list.add(new Template("ROOM_EXISTS_QUERY", Hotel.ROOM_EXISTS_QUERY, hotelID, roomNumber));
+      list.add(new Template("BOOK_QUERY", Hotel.BOOK_QUERY, customerID, date.plusDays(1), hotelID, roomNumber));
+      list.add(new Template("STAY_DAYS_QUERY", Hotel.STAY_DAYS_QUERY, date, date.plusDays(1)));
+      list.add(new Template("FREE_ROOMS_QUERY", Hotel.FREE_ROOMS_QUERY, hotelID, date, date.plusDays(7), date, date.plusDays(7)));
+      list.add(new Template("STAY_QUERY", Hotel.STAY_QUERY, customerID, date.plusDays(1), date.plusDays(8), hotelID, roomNumber));
+      list.add(new Template("BATCH_VALIDATE_QUERY", Hotel.BATCH_VALIDATE_QUERY, hotels, rooms, dates));
+      list.add(new Template("BATCH_INSERT_QUERY", Hotel.BATCH_INSERT_QUERY, customerID, date.plusDays(1), hotelID, roomNumber));
+      list.add(new Template("RECENT_BOOKINGS_QUERY", Hotel.RECENT_BOOKINGS_QUERY, customerID, page, customerID, page, page));
+      list.add(new Template("RECENT_BOOKINGS_AFTER_QUERY", Hotel.RECENT_BOOKINGS_AFTER_QUERY,
+         customerID, date, Integer.MAX_VALUE, page, customerID, date, Integer.MAX_VALUE, page, page));
+      list.add(new Template("UPDATE_ROOM_QUERY", Hotel.UPDATE_ROOM_QUERY, 100, "plancheck", hotelID, roomNumber, managerID, now));
+      list.add(new Template("RECENT_UPDATES_QUERY", Hotel.RECENT_UPDATES_QUERY, managerID, page));
+      list.add(new Template("RECENT_UPDATES_AFTER_QUERY", Hotel.RECENT_UPDATES_AFTER_QUERY, managerID, Integer.MAX_VALUE, page));
+      list.add(new Template("HOTEL_BOOKINGS_QUERY", Hotel.HOTEL_BOOKINGS_QUERY, managed.toString(), page, page, page));
+      list.add(new Template("HOTEL_BOOKINGS_AFTER_QUERY", Hotel.HOTEL_BOOKINGS_AFTER_QUERY, managed.toString(),
+         date, Integer.MAX_VALUE, page, date, Integer.MAX_VALUE, page, page));
+      list.add(new Template("CUSTOMER_NAMES_QUERY", Hotel.CUSTOMER_NAMES_QUERY, "{" + customerID + "}"));
+      list.add(new Template("DAILY_STATS_QUERY", Hotel.DAILY_STATS_QUERY, hotelID, hotelID, date.minusYears(1), date));
+      list.add(new Template("MONTHLY_STATS_QUERY", Hotel.MONTHLY_STATS_QUERY,
+         date, date.minusYears(5), hotelID, date.minusYears(5), date, hotelID));
+      // the repair request functions need a manager of a hotel with a repair
+      if (repair.getRowCount() > 0) {
+         int companyID = repair.getInt(0, 0), repairHotel = repair.getInt(0, 1);
+         int repairRoom = repair.getInt(0, 2), repairManager = repair.getInt(0, 3);
+         list.add(new Template("REPAIR_REQUEST_QUERY", Hotel.REPAIR_REQUEST_QUERY, repairManager, companyID, repairHotel, repairRoom));
+         list.add(new Template("REPAIR_REQUESTS_QUERY", Hotel.REPAIR_REQUESTS_QUERY, repairManager, companyID,
+            "{" + repairHotel + "}", "{" + repairRoom + "}"));
+         list.add(new Template("REPAIR_HISTORY_QUERY", Hotel.REPAIR_HISTORY_QUERY, repairManager));
+      }
+      return list;
+   }//end templates
+
+   /**
+    * Explains every template in one transaction that is rolled back.
+    *
+    * @param templates the templates to check
+    * @return the number of templates that failed the check
+    * @throws java.sql.SQLException when a template cannot be explained
+    */
+   public int check(List<Template> templates) throws SQLException {
+      int failures = 0;
+      ConnectionPool pool = this._esql.getPool();
+      Connection conn = pool.borrow();
+      try {
+         conn.setAutoCommit(false);
+         loadParents(conn);
+         System.out.println(String.format("%-28s %10s %10s %10s  %s", "template", "ms", "hit", "read", "verdict"));
+         for (Template t : templates) {
+            List<String> plan = explain(conn, t);
+            Report report = analyze(plan);
+            List<String> tooLarge = new ArrayList<String>();
+            for (int i = 0; i < report.scanTables.size(); i++) {
+               String table = report.scanTables.get(i);
+               if (report.scanRows.get(i) > MAX_SEQ_SCAN_ROWS && !allowed(table))
+                  tooLarge.add(table + " read " + report.scanRows.get(i) + " rows");
+            }
+            boolean failed = !tooLarge.isEmpty();
+            if (failed)
+               failures++;
+            String verdict = failed
+               ? "FAIL seq scan on " + String.join(", ", tooLarge)
+               : report.scans.isEmpty() ? "ok" : "ok " + report.scans;
+            System.out.println(String.format(Locale.ROOT, "%-28s %10.3f %10d %10d  %s",
+               t.name, report.millis, report.sharedHit, report.sharedRead, verdict));
+            if (VERBOSE || failed) {
+               for (String line : plan)
+                  System.out.println("      " + line);
+            }
+         }
+      } finally {
+         try {
+            conn.rollback();
+            conn.setAutoCommit(true);
+         } finally {
+            pool.release(conn);
+         }
+      }
+      return failures;
+   }//end check
+
+   private void loadParents(Connection conn) throws SQLException {
+      this._parents.clear();
+      PreparedStatement stmt = conn.prepareStatement(PARTITIONS_QUERY);
+      try {
+         ResultSet rs = stmt.executeQuery();
+         while (rs.next())
+            this._parents.put(rs.getString(1).toLowerCase(Locale.ROOT), rs.getString(2).toLowerCase(Locale.ROOT));
+         rs.close();
+      } finally {
+         stmt.close();
+      }
+   }
+
+   // whether a table, or the table it is a partition of, may be scanned
+   private boolean allowed(String table) {
+      for (String t = table; t != null; t = this._parents.get(t)) {
+         if (this._allowed.contains(t))
+            return true;
+      }
+      return false;
+   }
+
+   private static List<String> explain(Connection conn, Template t) throws SQLException {
+      // the menu templates end with a semicolon
+      String sql = t.sql.trim();
+      if (sql.endsWith(";"))
+         sql = sql.substring(0, sql.length() - 1);
+      PreparedStatement stmt = conn.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + sql);
+      try {
+         StatementCache.bind(stmt, t.params);
+         ResultSet rs = stmt.executeQuery();
+         List<String> plan = new ArrayList<String>();
+         while (rs.next())
+            plan.add(rs.getString(1));
+         rs.close();
+         return plan;
+      } finally {
+         stmt.close();
+      }
+   }
+
+   /**
+    * Reads the sequential scans, the buffers of the top node and the
+    * execution time from a text plan. A scan reads (rows + rows removed by
+    * filter) per loop, times the number of loops.
+    *
+    * @param plan the lines of EXPLAIN (ANALYZE, BUFFERS)
+    * @return what the plan did
+    */
+   static Report analyze(List<String> plan) {
+      Report report = new Report();
+      String table = null;
+      long rows = 0, loops = 0, removed = 0;
+      boolean topBuffers = false;
+      for (String line : plan) {
+         boolean node = line.contains("(actual ") || line.contains("(never executed)");
+         if (node) {
+            addScan(report, table, rows, loops, removed);
+            Matcher scan = SEQ_SCAN.matcher(line);
+            table = scan.find() ? scan.group(1).toLowerCase(Locale.ROOT) : null;
+            Matcher actual = ACTUAL.matcher(line);
+            rows = loops = removed = 0;
+            if (actual.find()) {
+               rows = Long.parseLong(actual.group(1));
+               loops = Long.parseLong(actual.group(2));
+            }
+            continue;
+         }
+         Matcher m = REMOVED.matcher(line);
+         if (m.find())
+            removed = Long.parseLong(m.group(1));
+         // the first Buffers line belongs to the top node and includes its children
+         if (!topBuffers && line.trim().startsWith("Buffers:")) {
+            topBuffers = true;
+            Matcher b = BUFFERS.matcher(line);
+            if (b.find()) {
+               report.sharedHit = b.group(2) == null ? 0 : Long.parseLong(b.group(2));
+               report.sharedRead = b.group(4) == null ? 0 : Long.parseLong(b.group(4));
+            }
+         }
+         Matcher time = TIME.matcher(line);
+         if (time.find())
+            report.millis = Double.parseDouble(time.group(1));
+      }
+      addScan(report, table, rows, loops, removed);
+      return report;
+   }//end analyze
+
+   private static void addScan(Report report, String table, long rows, long loops, long removed) {
+      if (table == null)
+         return;
+      long scanned = (rows + removed) * loops;
+      report.scans.add(table + ":" + scanned);
+      report.scanTables.add(table);
+      report.scanRows.add(scanned);
+   }
+
+   public static void main(String[] args) {
+      if (args.length != 3) {
+         System.err.println("Usage: java PlanChecker <dbname> <port> <user>");
+         return;
+      }
+      Set<String> allowed = new HashSet<String>();
+      for (String table : System.getProperty("plan.allowSeqScan", "").split(",")) {
+         if (!table.trim().isEmpty())
+            allowed.add(table.trim().toLowerCase(Locale.ROOT));
+      }
+
+      Hotel esql = null;
+      int failures = 0;
+      try {
+         Class.forName("org.postgresql.Driver");
+         esql = new Hotel(args[0], args[1], args[2], "");
+         PlanChecker checker = new PlanChecker(esql, allowed);
+         List<Template> templates = checker.templates();
+         failures = checker.check(templates);
+         System.out.println(String.format("%d of %d templates failed (threshold %d rows%s)",
+            failures, templates.size(), MAX_SEQ_SCAN_ROWS,
+            allowed.isEmpty() ? "" : ", allowed " + Arrays.toString(allowed.toArray())));
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         failures = 1;
+      } finally {
+         if (esql != null)
+            esql.cleanup();
+      }
+      if (failures > 0)
+         System.exit(1);
+   }//end main
+
+}//end PlanChecker
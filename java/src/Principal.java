@@ -0,0 +1,74 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * The authorization facts of one user: the user type and the hotels the
+ * user manages. Instances are immutable; a change to Users or to
+ * Hotel.managerUserID is picked up by loading a new one.
+ *
+ */
+public class Principal {
+
+   private final int _userID;
+   private final String _userType;
+   private final int[] _managedHotels;
+
+   /**
+    * @param userID the user
+    * @param userType the value of Users.userType; padding is removed
+    * @param managedHotels the hotels whose managerUserID is the user, in any order
+    */
+   public Principal(int userID, String userType, int[] managedHotels) {
+      this._userID = userID;
+      this._userType = userType == null ? "" : userType.trim();
+      this._managedHotels = managedHotels.clone();
+      Arrays.sort(this._managedHotels);
+   }
+
+   public int getUserID() { return this._userID; }
+
+   public String getUserType() { return this._userType; }
+
+   /**
+    * @return true for managers and admins, who may use the manager menu
+    */
+   public boolean isStaff() {
+      return isManager() || isAdmin();
+   }
+
+   public boolean isManager() { return "manager".equals(this._userType); }
+
+   public boolean isAdmin() { return "admin".equals(this._userType); }
+
+   /**
+    * @param hotelID the hotel
+    * @return true when the user is the manager of the hotel
+    */
+   public boolean manages(int hotelID) {
+      return Arrays.binarySearch(this._managedHotels, hotelID) >= 0;
+   }
+
+   /**
+    * @return the managed hotels, sorted
+    */
+   public int[] getManagedHotels() {
+      return this._managedHotels.clone();
+   }
+
+   public String toString() {
+      return "Principal(" + this._userID + ", " + this._userType + ", " + Arrays.toString(this._managedHotels) + ")";
+   }
+
+}//end Principal
@@ -0,0 +1,111 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Principals of logged in users, shared by all sessions.
+ *
+ * Entries are filled at log in and dropped by invalidate() when the
+ * application changes a user or a hotel manager. Changes made outside this
+ * JVM are picked up when an entry exceeds its time to live. A load that
+ * started before an invalidation is not cached, so an invalidated principal
+ * cannot be put back by a slow reader.
+ *
+ */
+public class PrincipalCache {
+
+   private static class Entry {
+      final Principal principal;
+      final long loadedAt;
+
+      Entry(Principal principal, long loadedAt) {
+         this.principal = principal;
+         this.loadedAt = loadedAt;
+      }
+   }
+
+   private final ConcurrentHashMap<Integer, Entry> _entries = new ConcurrentHashMap<Integer, Entry>();
+   private final long _ttlMillis;
+
+   // bumped by every invalidation
+   private final AtomicLong _generation = new AtomicLong();
+
+   private final AtomicLong _hits = new AtomicLong();
+   private final AtomicLong _misses = new AtomicLong();
+
+   /**
+    * @param ttlMillis how long an entry is trusted, or 0 to keep it until invalidated
+    */
+   public PrincipalCache(long ttlMillis) {
+      this._ttlMillis = ttlMillis;
+   }
+
+   /**
+    * @param userID the user
+    * @return the cached principal, or null when absent or expired
+    */
+   public Principal get(int userID) {
+      Entry e = this._entries.get(userID);
+      if (e == null || (this._ttlMillis > 0 && System.currentTimeMillis() - e.loadedAt > this._ttlMillis)) {
+         this._misses.incrementAndGet();
+         return null;
+      }
+      this._hits.incrementAndGet();
+      return e.principal;
+   }
+
+   /**
+    * @return the generation to pass to put() after loading a principal
+    */
+   public long generation() {
+      return this._generation.get();
+   }
+
+   /**
+    * Caches a loaded principal unless something was invalidated since the
+    * load began.
+    *
+    * @param principal the loaded principal
+    * @param generation the value of generation() before the load
+    */
+   public void put(Principal principal, long generation) {
+      this._entries.put(principal.getUserID(), new Entry(principal, System.currentTimeMillis()));
+      if (this._generation.get() != generation)
+         this._entries.remove(principal.getUserID());
+   }
+
+   /**
+    * Drops the principal of one user, e.g. after its user type changed.
+    */
+   public void invalidate(int userID) {
+      this._generation.incrementAndGet();
+      this._entries.remove(userID);
+   }
+
+   /**
+    * Drops every principal, e.g. after a hotel changed manager.
+    */
+   public void invalidateAll() {
+      this._generation.incrementAndGet();
+      this._entries.clear();
+   }
+
+   public int size() { return this._entries.size(); }
+
+   public long getHits() { return this._hits.get(); }
+
+   public long getMisses() { return this._misses.get(); }
+
+}//end PrincipalCache
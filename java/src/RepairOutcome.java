@@ -0,0 +1,32 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+/**
+ * Outcome of placing a room repair request.
+ *
+ */
+public enum RepairOutcome {
+
+   // the request was inserted
+   OK,
+
+   // the user does not manage the hotel
+   NOT_MANAGER,
+
+   // a request for this repair already exists
+   DUPLICATE,
+
+   // the company has no repair on record for the room
+   NO_REPAIR
+
+}//end RepairOutcome
@@ -0,0 +1,404 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory room availability engine.
+ *
+ * Every room (hotelID, roomNumber) owns a bitset with one bit per calendar
+ * day of a rolling horizon [origin, origin + horizonDays); a set bit means
+ * the room is booked that day. "Is room R of hotel H open on day X" is a
+ * single bit test, and a multi-night range is checked one 64-day word at a
+ * time with a masked AND.
+ *
+ * Dates outside the horizon are not tracked: covers() tells the caller
+ * when it has to fall back to the database. Days the horizon rolls onto
+ * are not reported as tracked until the caller has loaded their bookings
+ * and called loaded(), so a concurrent reader never takes them for open.
+ * The engine is shared by all sessions; reads run concurrently and updates
+ * take an exclusive lock.
+ *
+ */
+public class RoomAvailability {
+
+   private final int _pastDays;
+   private final int _horizonDays;
+   private final int _words;
+
+   // epoch day of bit 0
+   private long _origin;
+
+   // epoch day up to which the bookings are loaded, at most _origin + _horizonDays
+   private long _loadedEnd;
+
+   // (hotelID, roomNumber) -> booked days
+   private final Map<Long, long[]> _rooms = new HashMap<Long, long[]>();
+
+   // hotelID -> its room numbers, in ascending order
+   private final Map<Integer, TreeSet<Integer>> _roomsByHotel = new HashMap<Integer, TreeSet<Integer>>();
+
+   private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+   /**
+    * Creates an empty engine whose horizon starts pastDays before today and
+    * ends futureDays after it.
+    *
+    * @param today the current date
+    * @param pastDays number of days before today that are tracked
+    * @param futureDays number of days from today on that are tracked
+    */
+   public RoomAvailability(LocalDate today, int pastDays, int futureDays) {
+      if (pastDays < 0 || futureDays < 1)
+         throw new IllegalArgumentException("invalid horizon: past=" + pastDays + ", future=" + futureDays);
+      this._pastDays = pastDays;
+      this._horizonDays = pastDays + futureDays;
+      this._words = (this._horizonDays + 63) >>> 6;
+      this._origin = today.toEpochDay() - pastDays;
+      this._loadedEnd = this._origin;
+   }//end RoomAvailability
+
+   /**
+    * @return the first day of the horizon
+    */
+   public LocalDate getStart() {
+      this._lock.readLock().lock();
+      try {
+         return LocalDate.ofEpochDay(this._origin);
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the day after the last day whose bookings are loaded
+    */
+   public LocalDate getLoadedEnd() {
+      this._lock.readLock().lock();
+      try {
+         return LocalDate.ofEpochDay(this._loadedEnd);
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the day after the last day of the horizon
+    */
+   public LocalDate getEnd() {
+      this._lock.readLock().lock();
+      try {
+         return LocalDate.ofEpochDay(this._origin + this._horizonDays);
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param date a calendar day
+    * @return true when the day is inside the horizon
+    */
+   public boolean covers(LocalDate date) {
+      return covers(date, date.plusDays(1));
+   }
+
+   /**
+    * @param from the first day of a range
+    * @param to the day after the last day of the range
+    * @return true when every day of the range is inside the loaded part of the horizon
+    */
+   public boolean covers(LocalDate from, LocalDate to) {
+      this._lock.readLock().lock();
+      try {
+         return from.toEpochDay() >= this._origin
+             && to.toEpochDay() <= this._loadedEnd;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Registers a room so it is reported as open on every day until bookings
+    * are marked.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room number
+    */
+   public void addRoom(int hotelID, int roomNumber) {
+      this._lock.writeLock().lock();
+      try {
+         bitsLocked(hotelID, roomNumber);
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Marks a room as booked on one day. Days outside the horizon are ignored.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room number
+    * @param date the booked day
+    */
+   public void markBooked(int hotelID, int roomNumber, LocalDate date) {
+      markBooked(hotelID, roomNumber, date, date.plusDays(1));
+   }
+
+   /**
+    * Marks a room as booked on every day of [from, to). Days outside the
+    * horizon are ignored.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room number
+    * @param from the first booked day
+    * @param to the day after the last booked day
+    */
+   public void markBooked(int hotelID, int roomNumber, LocalDate from, LocalDate to) {
+      this._lock.writeLock().lock();
+      try {
+         int d0 = (int) Math.max(0, from.toEpochDay() - this._origin);
+         int d1 = (int) Math.min(this._horizonDays, to.toEpochDay() - this._origin);
+         if (d0 >= d1)
+            return;
+         long[] bits = bitsLocked(hotelID, roomNumber);
+         int w0 = d0 >>> 6, w1 = (d1 - 1) >>> 6;
+         for (int w = w0; w <= w1; w++)
+            bits[w] |= rangeMask(w, d0, d1);
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end markBooked
+
+   /**
+    * Marks a room as open on one day, e.g. after the database showed that
+    * its booking was deleted. Days outside the horizon are ignored.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room number
+    * @param date the open day
+    */
+   public void markOpen(int hotelID, int roomNumber, LocalDate date) {
+      markOpen(hotelID, roomNumber, date, date.plusDays(1));
+   }
+
+   /**
+    * Marks a room as open on every day of [from, to), e.g. after its stay
+    * was deleted. Days outside the horizon are ignored.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room number
+    * @param from the first open day
+    * @param to the day after the last open day
+    */
+   public void markOpen(int hotelID, int roomNumber, LocalDate from, LocalDate to) {
+      this._lock.writeLock().lock();
+      try {
+         long[] bits = this._rooms.get(key(hotelID, roomNumber));
+         int d0 = (int) Math.max(0, from.toEpochDay() - this._origin);
+         int d1 = (int) Math.min(this._horizonDays, to.toEpochDay() - this._origin);
+         if (bits == null || d0 >= d1)
+            return;
+         int w0 = d0 >>> 6, w1 = (d1 - 1) >>> 6;
+         for (int w = w0; w <= w1; w++)
+            bits[w] &= ~rangeMask(w, d0, d1);
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end markOpen
+
+   /**
+    * Tests whether a room is booked on a day.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room number
+    * @param date the day to test
+    * @return TRUE when booked, FALSE when open, null when the room is unknown
+    *         or the day is outside the loaded part of the horizon
+    */
+   public Boolean isBooked(int hotelID, int roomNumber, LocalDate date) {
+      this._lock.readLock().lock();
+      try {
+         long[] bits = this._rooms.get(key(hotelID, roomNumber));
+         long d = date.toEpochDay() - this._origin;
+         if (bits == null || d < 0 || d >= this._loadedEnd - this._origin)
+            return null;
+         return ((bits[(int) (d >>> 6)] >>> (d & 63)) & 1L) != 0;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end isBooked
+
+   /**
+    * Tests whether a room is open on every day of [from, to), one 64-day
+    * word at a time.
+    *
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room number
+    * @param from the first day of the stay
+    * @param to the day after the last day of the stay
+    * @return TRUE when open the whole range, FALSE when booked on some day,
+    *         null when the room is unknown or the range leaves the loaded
+    *         part of the horizon
+    */
+   public Boolean isFree(int hotelID, int roomNumber, LocalDate from, LocalDate to) {
+      this._lock.readLock().lock();
+      try {
+         long[] bits = this._rooms.get(key(hotelID, roomNumber));
+         long d0 = from.toEpochDay() - this._origin;
+         long d1 = to.toEpochDay() - this._origin;
+         if (bits == null || d0 < 0 || d1 > this._loadedEnd - this._origin)
+            return null;
+         if (d0 >= d1)
+            return Boolean.TRUE;
+         int w0 = (int) (d0 >>> 6), w1 = (int) ((d1 - 1) >>> 6);
+         for (int w = w0; w <= w1; w++) {
+            if ((bits[w] & rangeMask(w, (int) d0, (int) d1)) != 0)
+               return Boolean.FALSE;
+         }
+         return Boolean.TRUE;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end isFree
+
+   /**
+    * @param hotelID a hotel
+    * @return the room numbers known for the hotel, in ascending order
+    */
+   public int[] roomsOf(int hotelID) {
+      this._lock.readLock().lock();
+      try {
+         TreeSet<Integer> rooms = this._roomsByHotel.get(hotelID);
+         if (rooms == null)
+            return new int[0];
+         int[] result = new int[rooms.size()];
+         int i = 0;
+         for (Integer r : rooms)
+            result[i++] = r;
+         return result;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Moves the horizon so it starts pastDays before the given day, dropping
+    * the days that fall off the front. The days added at the end are not
+    * reported until the caller has loaded their bookings, from the returned
+    * day to getEnd(), and called loaded(). Bookings marked in the meantime
+    * are kept.
+    *
+    * @param today the current date
+    * @return the first day whose bookings are not loaded, or null when the
+    *         whole horizon is loaded
+    */
+   public LocalDate rollTo(LocalDate today) {
+      this._lock.writeLock().lock();
+      try {
+         long newOrigin = today.toEpochDay() - this._pastDays;
+         long shift = newOrigin - this._origin;
+         if (shift > 0) {
+            for (long[] bits : this._rooms.values())
+               shiftDown(bits, shift);
+            this._origin = newOrigin;
+            this._loadedEnd = Math.max(this._loadedEnd, newOrigin);
+         }
+         if (this._loadedEnd >= this._origin + this._horizonDays)
+            return null;
+         return LocalDate.ofEpochDay(this._loadedEnd);
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end rollTo
+
+   /**
+    * Reports the bookings of [from, to) as marked, which makes those days
+    * tracked when they continue the loaded part of the horizon.
+    *
+    * @param from the first loaded day
+    * @param to the day after the last loaded day
+    */
+   public void loaded(LocalDate from, LocalDate to) {
+      this._lock.writeLock().lock();
+      try {
+         if (from.toEpochDay() <= this._loadedEnd)
+            this._loadedEnd = Math.max(this._loadedEnd,
+               Math.min(to.toEpochDay(), this._origin + this._horizonDays));
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end loaded
+
+   /**
+    * Forgets every room and booking.
+    */
+   public void clear() {
+      this._lock.writeLock().lock();
+      try {
+         this._rooms.clear();
+         this._roomsByHotel.clear();
+         this._loadedEnd = this._origin;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }
+
+   private long[] bitsLocked(int hotelID, int roomNumber) {
+      Long k = key(hotelID, roomNumber);
+      long[] bits = this._rooms.get(k);
+      if (bits == null) {
+         bits = new long[this._words];
+         this._rooms.put(k, bits);
+         TreeSet<Integer> rooms = this._roomsByHotel.get(hotelID);
+         if (rooms == null) {
+            rooms = new TreeSet<Integer>();
+            this._roomsByHotel.put(hotelID, rooms);
+         }
+         rooms.add(roomNumber);
+      }
+      return bits;
+   }
+
+   // bits of word w that fall inside the day range [d0, d1)
+   private static long rangeMask(int w, int d0, int d1) {
+      int lo = Math.max(d0 - (w << 6), 0);
+      int hi = Math.min(d1 - (w << 6), 64);
+      long mask = hi == 64 ? -1L : (1L << hi) - 1;
+      return mask & (-1L << lo);
+   }
+
+   // drops the first n days: bit i becomes bit i - n
+   private static void shiftDown(long[] bits, long n) {
+      if (n >= (long) bits.length << 6) {
+         Arrays.fill(bits, 0L);
+         return;
+      }
+      int words = (int) (n >>> 6), offset = (int) (n & 63);
+      for (int i = 0; i < bits.length; i++) {
+         int src = i + words;
+         long lo = src < bits.length ? bits[src] : 0L;
+         long hi = src + 1 < bits.length ? bits[src + 1] : 0L;
+         bits[i] = offset == 0 ? lo : (lo >>> offset) | (hi << (64 - offset));
+      }
+   }
+
+   private static Long key(int hotelID, int roomNumber) {
+      return ((long) hotelID << 32) | (roomNumber & 0xffffffffL);
+   }
+
+}//end RoomAvailability
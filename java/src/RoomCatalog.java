@@ -0,0 +1,196 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of the rooms (number, price, image) of each hotel,
+ * shared by all sessions.
+ *
+ * At most maxHotels hotels are kept; the least recently used one is evicted
+ * first. Entries are dropped by invalidate() when this program changes a
+ * room, and by the rooms_changed notifications that a trigger on Rooms
+ * sends when any program does (see RoomCatalogListener). Without the
+ * listener an entry is trusted for ttlMillis. As in PrincipalCache, a load
+ * that started before an invalidation is not cached.
+ *
+ */
+public class RoomCatalog {
+
+   /*
+    * The rooms of one hotel, sorted by room number.
+    */
+   public static class Rooms {
+      private final int[] _numbers;
+      private final int[] _prices;
+      private final String[] _imageURLs;
+      final long loadedAt = System.currentTimeMillis();
+
+      /**
+       * @param numbers the room numbers, ascending
+       * @param prices the price of each room
+       * @param imageURLs the image of each room
+       */
+      public Rooms(int[] numbers, int[] prices, String[] imageURLs) {
+         this._numbers = numbers;
+         this._prices = prices;
+         this._imageURLs = imageURLs;
+      }
+
+      public int size() { return this._numbers.length; }
+
+      public int getNumber(int i) { return this._numbers[i]; }
+
+      public int getPrice(int i) { return this._prices[i]; }
+
+      public String getImageURL(int i) { return this._imageURLs[i]; }
+
+      /**
+       * @param roomNumber a room number
+       * @return its index, or a negative value when the hotel has no such room
+       */
+      public int indexOf(int roomNumber) {
+         return Arrays.binarySearch(this._numbers, roomNumber);
+      }
+   }//end Rooms
+
+   private final int _maxHotels;
+   private final long _ttlMillis;
+   private final LinkedHashMap<Integer, Rooms> _hotels;
+
+   // bumped by every invalidation
+   private final AtomicLong _generation = new AtomicLong();
+
+   private final AtomicLong _hits = new AtomicLong();
+   private final AtomicLong _misses = new AtomicLong();
+   private final AtomicLong _evictions = new AtomicLong();
+   private final AtomicLong _invalidations = new AtomicLong();
+
+   // how old the entries handed out were
+   private final LatencyHistogram _servedAge = new LatencyHistogram();
+
+   /**
+    * @param maxHotels the number of hotels kept
+    * @param ttlMillis how long an entry is trusted, or 0 to keep it until invalidated
+    */
+   public RoomCatalog(int maxHotels, long ttlMillis) {
+      if (maxHotels < 1)
+         throw new IllegalArgumentException("invalid room cache size: " + maxHotels);
+      this._maxHotels = maxHotels;
+      this._ttlMillis = ttlMillis;
+      this._hotels = new LinkedHashMap<Integer, Rooms>(16, 0.75f, true) {
+         protected boolean removeEldestEntry(Map.Entry<Integer, Rooms> eldest) {
+            if (size() <= RoomCatalog.this._maxHotels)
+               return false;
+            RoomCatalog.this._evictions.incrementAndGet();
+            return true;
+         }
+      };
+   }
+
+   /**
+    * @param hotelID the hotel
+    * @return the cached rooms, or null when absent or expired
+    */
+   public Rooms get(int hotelID) {
+      Rooms rooms;
+      synchronized (this) {
+         rooms = this._hotels.get(hotelID);
+      }
+      long age = rooms == null ? 0 : System.currentTimeMillis() - rooms.loadedAt;
+      if (rooms == null || (this._ttlMillis > 0 && age > this._ttlMillis)) {
+         this._misses.incrementAndGet();
+         return null;
+      }
+      this._hits.incrementAndGet();
+      this._servedAge.record(age * 1000000L);
+      return rooms;
+   }
+
+   /**
+    * @return the generation to pass to put() after loading a hotel
+    */
+   public long generation() {
+      return this._generation.get();
+   }
+
+   /**
+    * Caches the loaded rooms of a hotel unless something was invalidated
+    * since the load began.
+    *
+    * @param hotelID the hotel
+    * @param rooms its rooms
+    * @param generation the value of generation() before the load
+    */
+   public synchronized void put(int hotelID, Rooms rooms, long generation) {
+      if (this._generation.get() == generation)
+         this._hotels.put(hotelID, rooms);
+   }
+
+   /**
+    * Drops the rooms of one hotel, e.g. after one of them changed.
+    */
+   public synchronized void invalidate(int hotelID) {
+      this._generation.incrementAndGet();
+      this._invalidations.incrementAndGet();
+      this._hotels.remove(hotelID);
+   }
+
+   /**
+    * Drops every hotel, e.g. when notifications may have been missed.
+    */
+   public synchronized void invalidateAll() {
+      this._generation.incrementAndGet();
+      this._invalidations.incrementAndGet();
+      this._hotels.clear();
+   }
+
+   public synchronized int size() { return this._hotels.size(); }
+
+   public int getMaxHotels() { return this._maxHotels; }
+
+   public long getHits() { return this._hits.get(); }
+
+   public long getMisses() { return this._misses.get(); }
+
+   public long getEvictions() { return this._evictions.get(); }
+
+   public long getInvalidations() { return this._invalidations.get(); }
+
+   /**
+    * @return the share of lookups answered from the cache, 0 when none yet
+    */
+   public double getHitRatio() {
+      long hits = getHits(), total = hits + getMisses();
+      return total == 0 ? 0.0 : (double) hits / total;
+   }
+
+   /**
+    * @return the age of the entries handed out, in nanoseconds
+    */
+   public LatencyHistogram getServedAge() { return this._servedAge; }
+
+   /**
+    * @return a one line summary of the counters
+    */
+   public String stats() {
+      return String.format("room cache: hotels=%d/%d hits=%d misses=%d hitRatio=%.3f evictions=%d invalidations=%d " +
+         "servedAge p99=%.1fs max=%.1fs",
+         size(), this._maxHotels, getHits(), getMisses(), getHitRatio(), getEvictions(), getInvalidations(),
+         this._servedAge.getValueAtPercentile(99) / 1e9, this._servedAge.getMaxNanos() / 1e9);
+   }
+
+}//end RoomCatalog
@@ -0,0 +1,218 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Invalidates the room catalog when the rooms_changed trigger of
+ * create_tables.sql reports a change of Rooms, made by this or any other
+ * program. The payload is the hotelID; a notification without one (older
+ * servers or drivers) drops every hotel. The other in-memory structures
+ * register a Handler for the channels of their own triggers with on().
+ *
+ * The listener holds its own connection outside the pool and polls it,
+ * because the driver only reads notifications when a statement runs. The
+ * notification API is looked up by reflection; a driver without it leaves
+ * the catalog to its time to live. After a lost connection every handler
+ * is told that notifications may have been missed, and the listener
+ * reconnects.
+ *
+ */
+public class RoomCatalogListener implements Runnable {
+
+   static final String CHANNEL = "rooms_changed";
+
+   /**
+    * Applies the notifications of one channel.
+    */
+   public interface Handler {
+      /**
+       * @param payload the payload of the notification, null when the driver has none
+       * @throws java.lang.Exception when the change cannot be applied; the listener then reconnects
+       */
+      void changed(String payload) throws Exception;
+
+      /**
+       * Called after a reconnect, since notifications may have been lost.
+       *
+       * @throws java.lang.Exception when the state cannot be reloaded; the listener then reconnects
+       */
+      void missed() throws Exception;
+   }
+
+   private final ConnectionPool _pool;
+   private final RoomCatalog _catalog;
+   private final long _pollMillis;
+   private final Thread _thread;
+   private volatile boolean _stopped = false;
+
+   // channel -> handler, filled before start()
+   private final Map<String, Handler> _handlers = new LinkedHashMap<String, Handler>();
+
+   // counted down once the first LISTEN took effect
+   private final CountDownLatch _listening = new CountDownLatch(1);
+
+   private final AtomicLong _notifications = new AtomicLong();
+
+   /**
+    * @param pool opens the listening connection
+    * @param catalog the cache to invalidate
+    * @param pollMillis the time between two polls
+    */
+   public RoomCatalogListener(ConnectionPool pool, final RoomCatalog catalog, long pollMillis) {
+      this._pool = pool;
+      this._catalog = catalog;
+      this._pollMillis = pollMillis;
+      this._thread = new Thread(this, "RoomCatalog-listener");
+      this._thread.setDaemon(true);
+      on(CHANNEL, new Handler() {
+         public void changed(String payload) {
+            try {
+               catalog.invalidate(Integer.parseInt(payload.trim()));
+            } catch (RuntimeException e) {
+               catalog.invalidateAll();
+            }
+         }
+         public void missed() {
+            catalog.invalidateAll();
+         }
+      });
+   }
+
+   /**
+    * Registers the handler of a channel; call before start().
+    *
+    * @param channel the channel the trigger notifies
+    * @param handler applies its notifications
+    * @return this listener
+    */
+   public RoomCatalogListener on(String channel, Handler handler) {
+      this._handlers.put(channel, handler);
+      return this;
+   }
+
+   /**
+    * Starts listening when the driver supports notifications, and waits
+    * until the listener is listening, so that state loaded afterwards
+    * misses no change.
+    *
+    * @param timeoutMillis the longest wait for the first LISTEN
+    * @return true when the listener was started
+    */
+   public boolean start(long timeoutMillis) {
+      try {
+         Class.forName("org.postgresql.PGConnection").getMethod("getNotifications");
+      } catch (Exception e) {
+         return false;
+      }
+      this._thread.start();
+      try {
+         this._listening.await(timeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      return true;
+   }
+
+   public void run() {
+      boolean reconnect = false;
+      while (!this._stopped) {
+         Connection conn = null;
+         try {
+            conn = this._pool.connect();
+            Statement stmt = conn.createStatement();
+            for (String channel : this._handlers.keySet())
+               stmt.execute("LISTEN " + channel);
+            this._listening.countDown();
+            // changes made while no LISTEN was in effect were not notified
+            if (reconnect) {
+               for (Handler h : this._handlers.values())
+                  h.missed();
+            }
+            reconnect = true;
+            Method getNotifications = Class.forName("org.postgresql.PGConnection").getMethod("getNotifications");
+            while (!this._stopped) {
+               stmt.execute("SELECT 1");
+               Object[] notifications = (Object[]) getNotifications.invoke(conn);
+               if (notifications != null) {
+                  for (Object n : notifications)
+                     handle(n);
+               }
+               Thread.sleep(this._pollMillis);
+            }
+         } catch (InterruptedException e) {
+            return;
+         } catch (Exception e) {
+            if (this._stopped)
+               return;
+            System.err.println("Room catalog listener: " + e.getMessage());
+            this._catalog.invalidateAll();
+            reconnect = true;
+            try {
+               Thread.sleep(Math.max(1000L, this._pollMillis));
+            } catch (InterruptedException ie) {
+               return;
+            }
+         } finally {
+            closeQuietly(conn);
+         }
+      }
+   }//end run
+
+   private void handle(Object notification) throws Exception {
+      this._notifications.incrementAndGet();
+      String channel = CHANNEL, payload = null;
+      try {
+         Class<?> type = Class.forName("org.postgresql.PGNotification");
+         channel = (String) type.getMethod("getName").invoke(notification);
+         payload = (String) type.getMethod("getParameter").invoke(notification);
+      } catch (Exception e) {
+         // a driver without payloads
+      }
+      Handler handler = this._handlers.get(channel);
+      if (handler != null)
+         handler.changed(payload);
+   }
+
+   /**
+    * @return the notifications received so far
+    */
+   public long getNotificationCount() { return this._notifications.get(); }
+
+   /**
+    * Stops the listener and closes its connection.
+    */
+   public void close() {
+      this._stopped = true;
+      this._thread.interrupt();
+   }
+
+   private static void closeQuietly(Connection conn) {
+      if (conn == null)
+         return;
+      try {
+         conn.close();
+      } catch (SQLException e) {
+         // ignored
+      }
+   }
+
+}//end RoomCatalogListener
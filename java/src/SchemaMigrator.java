@@ -0,0 +1,375 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves a populated database from the original fixed-width char columns to
+ * the compact types of create_tables.sql (varchar, text and the user_type
+ * enum) while the program keeps running.
+ *
+ * Each table is migrated in four steps, so writers are only blocked by
+ * short ALTERs, each run under a lock timeout and retried (see alter()):
+ *    1. add a shadow column of the new type per column, and a trigger that
+ *       fills the shadow columns of every row inserted or updated from now on;
+ *    2. backfill the existing rows in batches of the leading key column, one
+ *       transaction per batch, pausing between batches;
+ *    3. check NOT NULL on the shadow columns with a NOT VALID constraint,
+ *       then validate it without blocking writes;
+ *    4. in one transaction: drop the trigger and the old columns, rename the
+ *       shadow columns and set NOT NULL (the validated constraint spares the
+ *       scan). The lock is taken with a timeout and retried.
+ * A table whose columns already have the new types is skipped, and a run
+ * that was stopped resumes where it was.
+ *
+ * Every userType is lowercased on the way, since CreateUser used to write
+ * 'Customer'. The migration stops before touching a table when a userType
+ * is not one of the enum labels, or when an index uses a migrated column.
+ *
+ * The report compares the average row width (pg_column_size of the live
+ * columns) and the table and index sizes before and after. The old values
+ * stay in the row versions written by the backfill until they are updated
+ * again; -Dmigrate.vacuumFull=true rewrites the tables at the end to give
+ * the space back at once, which blocks them meanwhile.
+ *
+ * The migrated columns move to the end of their tables, so COPY files with
+ * the original column order no longer load into Hotel; recreate the tables
+ * with create_tables.sql to reload the CSV data.
+ *
+ * Options (system properties):
+ *    migrate.batchRows      key values per backfill batch (default 5000)
+ *    migrate.pauseMillis    pause between batches (default 50)
+ *    migrate.lockTimeout    lock timeout of the ALTERs (default 2s)
+ *    migrate.lockRetries    attempts of each ALTER (default 20)
+ *    migrate.vacuumFull     rewrite the tables at the end (default false)
+ *
+ * Usage: java SchemaMigrator dbname port user
+ *
+ */
+public class SchemaMigrator {
+
+   static final int BATCH_ROWS = Integer.getInteger("migrate.batchRows", 5000);
+   static final long PAUSE_MILLIS = Long.getLong("migrate.pauseMillis", 50L);
+   static final String LOCK_TIMEOUT = System.getProperty("migrate.lockTimeout", "2s");
+   static final int LOCK_RETRIES = Integer.getInteger("migrate.lockRetries", 20);
+   static final boolean VACUUM_FULL = Boolean.getBoolean("migrate.vacuumFull");
+
+   static final String USER_TYPE_DDL = "" +
+      "DO $$ BEGIN \n" +
+      "   CREATE TYPE user_type AS ENUM ('customer', 'manager', 'admin'); \n" +
+      "EXCEPTION WHEN duplicate_object THEN NULL; \n" +
+      "END $$";
+
+   /*
+    * One column to migrate: its new type and how an old value becomes a new one.
+    */
+   static class Column {
+      final String name;
+      final String type;
+      // %s is the old value
+      final String convert;
+      final boolean notNull;
+
+      Column(String name, String type, String convert, boolean notNull) {
+         this.name = name;
+         this.type = type;
+         this.convert = convert;
+         this.notNull = notNull;
+      }
+
+      String shadow() { return this.name + "__new"; }
+
+      String convert(String value) { return String.format(this.convert, value); }
+   }//end Column
+
+   /*
+    * A table, the key column its backfill batches range over, and its columns.
+    */
+   static class Table {
+      final String name;
+      final String key;
+      final Column[] columns;
+
+      Table(String name, String key, Column... columns) {
+         this.name = name;
+         this.key = key;
+         this.columns = columns;
+      }
+   }//end Table
+
+   /*
+    * The sizes of a table, in bytes.
+    */
+   static class Sizes {
+      long rows;
+      double rowWidth;
+      long table;
+      long indexes;
+   }//end Sizes
+
+   // the columns of create_tables.sql that were char(n)
+   static final Table[] TABLES = {
+      new Table("Users", "userID",
+         new Column("name", "varchar(50)", "rtrim(%s)", false),
+         new Column("password", "varchar(11)", "rtrim(%s)", true),
+         new Column("userType", "user_type", "lower(rtrim(%s))::user_type", false)),
+      new Table("Hotel", "hotelID",
+         new Column("hotelName", "varchar(30)", "rtrim(%s)", true)),
+      new Table("Rooms", "hotelID",
+         new Column("imageURL", "text", "rtrim(%s)", false)),
+      new Table("MaintenanceCompany", "companyID",
+         new Column("name", "varchar(50)", "rtrim(%s)", false),
+         new Column("addrress", "varchar(50)", "rtrim(%s)", false)),
+   };
+
+   private final Hotel _esql;
+
+   public SchemaMigrator(Hotel esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * Migrates every table and prints the report.
+    *
+    * @throws java.sql.SQLException when a step fails; the table being migrated keeps its old columns
+    */
+   public void migrate() throws SQLException, InterruptedException {
+      this._esql.executeUpdate(USER_TYPE_DDL);
+      List<String> report = new ArrayList<String>();
+      report.add(String.format("%-20s %10s %12s %12s %14s %14s", "table", "rows", "row before", "row after",
+                               "table before", "table after"));
+      for (Table table : TABLES) {
+         if (!pending(table)) {
+            System.out.println(table.name + ": already migrated");
+            continue;
+         }
+         Sizes before = sizes(table);
+         migrate(table);
+         if (VACUUM_FULL)
+            this._esql.executeUpdate("VACUUM FULL " + table.name);
+         this._esql.executeUpdate("ANALYZE " + table.name);
+         Sizes after = sizes(table);
+         report.add(String.format("%-20s %10d %10.1f B %10.1f B %14s %14s", table.name, before.rows,
+                                  before.rowWidth, after.rowWidth, bytes(before.table), bytes(after.table)));
+         report.add(String.format("%-20s %10s %12s %12s %14s %14s", "  indexes", "", "", "",
+                                  bytes(before.indexes), bytes(after.indexes)));
+      }
+      for (String line : report)
+         System.out.println(line);
+   }//end migrate
+
+   // true when a column of the table still has to be migrated
+   private boolean pending(Table table) throws SQLException {
+      for (Column column : table.columns) {
+         // compares the types without their lengths: char(n) becomes varchar, text or user_type
+         ColumnarResult migrated = this._esql.executeQueryAndReturnColumns(
+            "SELECT atttypid = ?::regtype FROM pg_attribute " +
+            "WHERE attrelid = ?::regclass AND attname = lower(?) AND NOT attisdropped",
+            column.type, table.name.toLowerCase(), column.name);
+         if (migrated.getRowCount() == 0 || migrated.getInt(0, 0) == 0)
+            return true;
+      }
+      return false;
+   }
+
+   private void migrate(Table table) throws SQLException, InterruptedException {
+      check(table);
+
+      // 1. shadow columns, kept up to date by a trigger from now on
+      StringBuilder ddl = new StringBuilder("ALTER TABLE " + table.name);
+      StringBuilder body = new StringBuilder();
+      for (int i = 0; i < table.columns.length; i++) {
+         Column c = table.columns[i];
+         ddl.append(i == 0 ? " " : ", ").append("ADD COLUMN IF NOT EXISTS ").append(c.shadow()).append(' ').append(c.type);
+         body.append("   NEW.").append(c.shadow()).append(" := ").append(c.convert("NEW." + c.name)).append("; \n");
+      }
+      String function = "migrate_" + table.name.toLowerCase();
+      alter(this._esql.getPool(), table.name,
+         ddl.toString(),
+         "CREATE OR REPLACE FUNCTION " + function + "() RETURNS trigger AS $migrate$ BEGIN \n" +
+            body + "   RETURN NEW; \nEND; $migrate$ LANGUAGE plpgsql",
+         "DROP TRIGGER IF EXISTS " + function + " ON " + table.name,
+         "CREATE TRIGGER " + function + " BEFORE INSERT OR UPDATE ON " + table.name +
+            " FOR EACH ROW EXECUTE PROCEDURE " + function + "()");
+
+      // 2. backfill the rows written before the trigger
+      backfill(table);
+
+      // 3. NOT NULL, checked without blocking writes
+      for (Column c : table.columns) {
+         if (!c.notNull)
+            continue;
+         String constraint = c.shadow() + "_not_null";
+         // adding the constraint takes an ACCESS EXCLUSIVE lock, briefly
+         alter(this._esql.getPool(), table.name,
+            "ALTER TABLE " + table.name + " DROP CONSTRAINT IF EXISTS " + constraint,
+            "ALTER TABLE " + table.name + " ADD CONSTRAINT " + constraint +
+               " CHECK (" + c.shadow() + " IS NOT NULL) NOT VALID");
+         // the scan only takes SHARE UPDATE EXCLUSIVE, which lets writers through
+         this._esql.executeUpdate("ALTER TABLE " + table.name + " VALIDATE CONSTRAINT " + constraint);
+      }
+
+      // 4. swap
+      List<String> swap = new ArrayList<String>();
+      swap.add("DROP TRIGGER " + function + " ON " + table.name);
+      for (Column c : table.columns) {
+         swap.add("ALTER TABLE " + table.name + " DROP COLUMN " + c.name);
+         swap.add("ALTER TABLE " + table.name + " RENAME COLUMN " + c.shadow() + " TO " + c.name);
+         if (c.notNull) {
+            swap.add("ALTER TABLE " + table.name + " ALTER COLUMN " + c.name + " SET NOT NULL");
+            swap.add("ALTER TABLE " + table.name + " DROP CONSTRAINT " + c.shadow() + "_not_null");
+         }
+      }
+      swap.add("DROP FUNCTION " + function + "()");
+      alter(this._esql.getPool(), table.name, swap.toArray(new String[0]));
+      System.out.println(table.name + ": migrated");
+   }//end migrate
+
+   // stops before the first change when the data or the indexes do not allow the migration
+   private void check(Table table) throws SQLException {
+      for (Column c : table.columns) {
+         ColumnarResult indexes = this._esql.executeQueryAndReturnColumns(
+            "SELECT I.indexrelid::regclass::text FROM pg_index I, pg_attribute A " +
+            "WHERE I.indrelid = ?::regclass AND A.attrelid = I.indrelid AND A.attname = lower(?) " +
+            "AND (A.attnum = ANY (I.indkey) OR pg_get_expr(I.indexprs, I.indrelid) LIKE '%' || A.attname || '%')",
+            table.name.toLowerCase(), c.name);
+         if (indexes.getRowCount() > 0)
+            throw new SQLException(table.name + "." + c.name + " is used by index " + indexes.getString(0, 0) +
+                                   "; drop it before the migration and create it again afterwards.");
+         if (c.type.equals("user_type")) {
+            ColumnarResult bad = this._esql.executeQueryAndReturnColumns(
+               "SELECT DISTINCT " + c.name + " FROM " + table.name + " WHERE lower(rtrim(" + c.name + ")) " +
+               "NOT IN ('customer', 'manager', 'admin')");
+            if (bad.getRowCount() > 0)
+               throw new SQLException(table.name + "." + c.name + " has values outside user_type, e.g. '" +
+                                      bad.getString(0, 0) + "'.");
+         }
+      }
+   }
+
+   private void backfill(Table table) throws SQLException, InterruptedException {
+      ColumnarResult range = this._esql.executeQueryAndReturnColumns(
+         "SELECT min(" + table.key + "), max(" + table.key + ") FROM " + table.name);
+      if (range.isNull(0, 0))
+         return;
+      long min = range.getInt(0, 0), max = range.getInt(0, 1);
+
+      StringBuilder set = new StringBuilder(), differs = new StringBuilder();
+      for (Column c : table.columns) {
+         set.append(set.length() == 0 ? "" : ", ").append(c.shadow()).append(" = ").append(c.convert(c.name));
+         differs.append(differs.length() == 0 ? "" : " OR ")
+                .append(c.shadow()).append(" IS DISTINCT FROM ").append(c.convert(c.name));
+      }
+      String update = "UPDATE " + table.name + " SET " + set +
+                      " WHERE " + table.key + " >= ? AND " + table.key + " < ? AND (" + differs + ")";
+      long rows = 0;
+      for (long lo = min; lo <= max; lo += BATCH_ROWS) {
+         rows += this._esql.executeUpdate(update, (int) lo, (int) Math.min(lo + BATCH_ROWS, max + 1L));
+         System.out.print(String.format("\r%s: backfilled %d rows, %s up to %d of %d", table.name, rows, table.key,
+                                        Math.min(lo + BATCH_ROWS - 1, max), max));
+         if (PAUSE_MILLIS > 0)
+            Thread.sleep(PAUSE_MILLIS);
+      }
+      System.out.println();
+   }//end backfill
+
+   /**
+    * Runs DDL statements in one transaction under migrate.lockTimeout,
+    * retrying up to migrate.lockRetries times when a lock is not granted,
+    * so that a busy table delays the change instead of queueing every
+    * other session behind it.
+    *
+    * @param pool where the statements run
+    * @param name the table, for the messages
+    * @param statements the statements
+    * @return the update count of each statement of the committed attempt, -1 for a query
+    * @throws java.sql.SQLException when a statement fails, or the lock is never granted
+    */
+   static int[] alter(ConnectionPool pool, String name, String... statements) throws SQLException, InterruptedException {
+      for (int attempt = 1; ; attempt++) {
+         Connection conn = pool.borrow();
+         try {
+            conn.setAutoCommit(false);
+            int[] counts = new int[statements.length];
+            Statement stmt = conn.createStatement();
+            try {
+               stmt.execute("SET LOCAL lock_timeout = '" + LOCK_TIMEOUT + "'");
+               for (int i = 0; i < statements.length; i++) {
+                  stmt.execute(statements[i]);
+                  counts[i] = stmt.getUpdateCount();
+               }
+            } finally {
+               stmt.close();
+            }
+            conn.commit();
+            return counts;
+         } catch (SQLException e) {
+            conn.rollback();
+            // 55P03: lock_not_available
+            if (!"55P03".equals(e.getSQLState()) || attempt >= LOCK_RETRIES)
+               throw e;
+            System.out.println(name + ": table busy, retrying (" + attempt + ")");
+         } finally {
+            pool.release(conn);
+         }
+         Thread.sleep(PAUSE_MILLIS * attempt);
+      }
+   }//end alter
+
+   private Sizes sizes(Table table) throws SQLException {
+      ColumnarResult r = this._esql.executeQueryAndReturnColumns(
+         "SELECT count(*), COALESCE(avg(pg_column_size(T.*)), 0), pg_table_size(?::regclass), pg_indexes_size(?::regclass) " +
+         "FROM " + table.name + " T", table.name.toLowerCase(), table.name.toLowerCase());
+      Sizes sizes = new Sizes();
+      sizes.rows = r.getLong(0, 0);
+      sizes.rowWidth = r.getDouble(0, 1);
+      sizes.table = r.getLong(0, 2);
+      sizes.indexes = r.getLong(0, 3);
+      return sizes;
+   }
+
+   private static String bytes(long n) {
+      if (n < 10 * 1024)
+         return n + " B";
+      if (n < 10 * 1024 * 1024)
+         return (n / 1024) + " kB";
+      return (n / (1024 * 1024)) + " MB";
+   }
+
+   public static void main(String[] args) {
+      if (args.length != 3) {
+         System.err.println("Usage: java SchemaMigrator <dbname> <port> <user>");
+         return;
+      }
+      Hotel esql = null;
+      boolean failed = false;
+      try {
+         Class.forName("org.postgresql.Driver");
+         esql = new Hotel(args[0], args[1], args[2], "");
+         new SchemaMigrator(esql).migrate();
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         failed = true;
+      } finally {
+         if (esql != null)
+            esql.cleanup();
+      }
+      if (failed)
+         System.exit(1);
+   }//end main
+
+}//end SchemaMigrator
@@ -0,0 +1,209 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A least recently used cache of PreparedStatements for one physical
+ * connection, keyed by SQL template (the statement text with '?'
+ * placeholders).
+ *
+ * The bundled driver substitutes the parameters of a PreparedStatement on
+ * the client and sends the whole text unless server-side prepare is on for
+ * the statement, so the cache turns it on for every statement it prepares:
+ * a template is then parsed and planned once per connection and executed
+ * many times with different parameters. -Dhotel.serverPrepare=false, or a
+ * driver without org.postgresql.PGStatement, leaves the substitution on the
+ * client and only saves the client-side parsing.
+ *
+ * The cache is not thread safe: it belongs to a connection and is only
+ * used by the session that borrowed it. Its counters may be read from any
+ * thread.
+ *
+ */
+public class StatementCache {
+
+   static final boolean SERVER_PREPARE =
+      Boolean.parseBoolean(System.getProperty("hotel.serverPrepare", "true"));
+
+   // PGStatement.setUseServerPrepare, or null when the driver has none
+   private static final Method USE_SERVER_PREPARE = serverPrepareMethod();
+
+   private final Connection _connection;
+   private final int _capacity;
+
+   // access ordered, so the eldest entry is the least recently used one
+   private final LinkedHashMap<String, PreparedStatement> _statements;
+
+   private final AtomicLong _hits = new AtomicLong();
+   private final AtomicLong _misses = new AtomicLong();
+   private final AtomicLong _evictions = new AtomicLong();
+
+   /**
+    * Creates an empty statement cache.
+    *
+    * @param connection the connection the statements are prepared on
+    * @param capacity the maximum number of statements kept open
+    */
+   public StatementCache(Connection connection, int capacity) {
+      this._connection = connection;
+      this._capacity = Math.max(1, capacity);
+      this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+         protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= StatementCache.this._capacity)
+               return false;
+            StatementCache.this._evictions.incrementAndGet();
+            closeQuietly(eldest.getValue());
+            return true;
+         }
+      };
+   }//end StatementCache
+
+   /**
+    * Returns the prepared statement for a template with the given
+    * parameters bound. The statement stays owned by the cache: callers
+    * close the ResultSet they obtain, never the statement.
+    *
+    * @param sql the SQL template with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the prepared statement ready to execute
+    * @throws java.sql.SQLException when preparing or binding fails
+    */
+   public PreparedStatement prepare(String sql, Object... params) throws SQLException {
+      PreparedStatement stmt = this._statements.get(sql);
+      if (stmt == null) {
+         this._misses.incrementAndGet();
+         stmt = this._connection.prepareStatement(sql);
+         useServerPrepare(stmt, sql);
+         this._statements.put(sql, stmt);
+      } else {
+         this._hits.incrementAndGet();
+         stmt.clearParameters();
+      }
+      bind(stmt, params);
+      return stmt;
+   }//end prepare
+
+   private static Method serverPrepareMethod() {
+      if (!SERVER_PREPARE)
+         return null;
+      try {
+         return Class.forName("org.postgresql.PGStatement").getMethod("setUseServerPrepare", boolean.class);
+      } catch (Exception e) {
+         return null;
+      }
+   }
+
+   // PREPARE only takes queries and DML; the driver ignores the flag when the server is older than 7.3
+   private static void useServerPrepare(PreparedStatement stmt, String sql) throws SQLException {
+      if (USE_SERVER_PREPARE == null || !USE_SERVER_PREPARE.getDeclaringClass().isInstance(stmt))
+         return;
+      String verb = sql.trim().split("\\s+", 2)[0].toUpperCase();
+      if (!verb.equals("SELECT") && !verb.equals("WITH") && !verb.equals("INSERT") &&
+          !verb.equals("UPDATE") && !verb.equals("DELETE") && !verb.equals("VALUES"))
+         return;
+      try {
+         USE_SERVER_PREPARE.invoke(stmt, Boolean.TRUE);
+      } catch (java.lang.reflect.InvocationTargetException e) {
+         if (e.getCause() instanceof SQLException)
+            throw (SQLException) e.getCause();
+         throw new SQLException(String.valueOf(e.getCause()));
+      } catch (IllegalAccessException e) {
+         // left to the client-side substitution
+      }
+   }
+
+   /**
+    * Binds parameters to a statement, choosing the setter from the Java
+    * type of each value.
+    *
+    * @param stmt the statement to bind
+    * @param params the values, in placeholder order
+    * @throws java.sql.SQLException when a value cannot be bound
+    */
+   public static void bind(PreparedStatement stmt, Object... params) throws SQLException {
+      for (int i = 0; i < params.length; i++) {
+         Object p = params[i];
+         int idx = i + 1;
+         if (p == null)
+            stmt.setNull(idx, Types.VARCHAR);
+         else if (p instanceof Integer)
+            stmt.setInt(idx, ((Integer) p).intValue());
+         else if (p instanceof Long)
+            stmt.setLong(idx, ((Long) p).longValue());
+         else if (p instanceof Double)
+            stmt.setDouble(idx, ((Double) p).doubleValue());
+         else if (p instanceof String)
+            stmt.setString(idx, (String) p);
+         else if (p instanceof Boolean)
+            stmt.setBoolean(idx, ((Boolean) p).booleanValue());
+         else if (p instanceof Date)
+            stmt.setDate(idx, (Date) p);
+         else if (p instanceof Timestamp)
+            stmt.setTimestamp(idx, (Timestamp) p);
+         else if (p instanceof LocalDate)
+            stmt.setDate(idx, Date.valueOf((LocalDate) p));
+         else if (p instanceof LocalDateTime)
+            stmt.setTimestamp(idx, Timestamp.valueOf((LocalDateTime) p));
+         else
+            stmt.setObject(idx, p);
+      }//end for
+   }//end bind
+
+   /**
+    * Closes every cached statement.
+    */
+   public void close() {
+      for (PreparedStatement stmt : this._statements.values())
+         closeQuietly(stmt);
+      this._statements.clear();
+   }
+
+   private static void closeQuietly(PreparedStatement stmt) {
+      try {
+         stmt.close();
+      } catch (SQLException e) {
+         // ignored.
+      }
+   }
+
+   public int size() { return this._statements.size(); }
+
+   public int getCapacity() { return this._capacity; }
+
+   public long getHitCount() { return this._hits.get(); }
+
+   public long getMissCount() { return this._misses.get(); }
+
+   public long getEvictionCount() { return this._evictions.get(); }
+
+   /**
+    * @return the fraction of prepare() calls served from the cache
+    */
+   public double getHitRatio() {
+      long hits = this._hits.get(), total = hits + this._misses.get();
+      return total == 0 ? 0.0 : (double) hits / total;
+   }
+
+}//end StatementCache
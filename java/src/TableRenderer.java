@@ -0,0 +1,238 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Streaming renderer for the boxed tables printed by the menu operations.
+ *
+ * Column widths and padding are computed once from the labels, then every
+ * row is written straight to a buffered writer as it arrives, so memory use
+ * does not depend on the number of rows. With a page size, the renderer
+ * flushes after each page and asks a Pager whether to continue.
+ *
+ */
+public class TableRenderer {
+
+   /*
+    * Decides whether to print the next page of a long result.
+    */
+   public interface Pager {
+      /**
+       * @param rowsSoFar the number of rows printed so far
+       * @return true to print the next page, false to stop
+       */
+      boolean nextPage(int rowsSoFar);
+   }
+
+   private final Writer _out;
+   private final int _cols;
+   private final String[] _labels;
+   private final int[] _widths;
+   private final int[] _maxValueLengths;
+   private final String _hline;
+   private final char[] _spaces;
+
+   private final int _pageSize;
+   private final Pager _pager;
+
+   private int _rows = 0;
+   private long _chars = 0;
+   private boolean _stopped = false;
+
+   /**
+    * Creates a renderer writing to standard out without pagination.
+    *
+    * @param labels the column labels
+    */
+   public TableRenderer(String[] labels) {
+      this(labels, System.out, 0, null);
+   }
+
+   /**
+    * Creates a renderer.
+    *
+    * @param labels the column labels
+    * @param out where the table is written
+    * @param pageSize rows per page, or 0 to print everything at once
+    * @param pager asked after each full page; ignored when pageSize is 0
+    */
+   public TableRenderer(String[] labels, PrintStream out, int pageSize, Pager pager) {
+      this._out = new BufferedWriter(new OutputStreamWriter(out), 8192);
+      this._cols = labels.length;
+      this._labels = labels;
+      this._widths = new int[this._cols];
+      this._maxValueLengths = new int[this._cols];
+      this._pageSize = pageSize;
+      this._pager = pager;
+
+      int lineLength = 2;
+      int widest = 0;
+      for (int i = 0; i < this._cols; i++) {
+         this._widths[i] = labels[i].length() + 5;
+         this._maxValueLengths[i] = labels[i].length() + 5;
+         lineLength += this._widths[i] + 3;
+         widest = Math.max(widest, this._widths[i]);
+      }
+      char[] line = new char[lineLength];
+      Arrays.fill(line, '-');
+      this._hline = new String(line) + "\n";
+      this._spaces = new char[widest];
+      Arrays.fill(this._spaces, ' ');
+   }//end TableRenderer
+
+   /**
+    * Creates a renderer for the columns of a result set.
+    *
+    * @param rs the result set whose labels are used
+    * @param out where the table is written
+    * @param pageSize rows per page, or 0 for no pagination
+    * @param pager asked after each full page
+    * @return the renderer
+    * @throws java.sql.SQLException when the metadata cannot be read
+    */
+   public static TableRenderer forResultSet(ResultSet rs, PrintStream out, int pageSize, Pager pager) throws SQLException {
+      ResultSetMetaData meta = rs.getMetaData();
+      String[] labels = new String[meta.getColumnCount()];
+      for (int i = 0; i < labels.length; i++)
+         labels[i] = meta.getColumnLabel(i + 1);
+      return new TableRenderer(labels, out, pageSize, pager);
+   }
+
+   /**
+    * Writes the top border, the column labels and the separator line.
+    *
+    * @throws java.io.IOException when writing fails
+    */
+   public void header() throws IOException {
+      write("\n");
+      write(this._hline);
+      for (int i = 0; i < this._cols; i++)
+         cell(i, this._labels[i]);
+      write("|\n");
+      write(this._hline);
+   }
+
+   /**
+    * Writes one row.
+    *
+    * @param values the cell values, one per column
+    * @return false when the pager asked to stop and no more rows should be sent
+    * @throws java.io.IOException when writing fails
+    */
+   public boolean row(String[] values) throws IOException {
+      if (this._stopped)
+         return false;
+      for (int i = 0; i < this._cols; i++)
+         cell(i, values[i]);
+      write("|\n");
+      return endRow();
+   }
+
+   /**
+    * Writes the current row of a result set.
+    *
+    * @param rs a result set positioned on a row
+    * @return false when the pager asked to stop and no more rows should be sent
+    * @throws java.io.IOException when writing fails
+    * @throws java.sql.SQLException when a value cannot be read
+    */
+   public boolean row(ResultSet rs) throws IOException, SQLException {
+      if (this._stopped)
+         return false;
+      for (int i = 0; i < this._cols; i++)
+         cell(i, rs.getString(i + 1));
+      write("|\n");
+      return endRow();
+   }
+
+   /**
+    * Streams every remaining row of a result set and writes the footer.
+    *
+    * @param rs the result set
+    * @return the number of rows printed
+    * @throws java.io.IOException when writing fails
+    * @throws java.sql.SQLException when reading fails
+    */
+   public int render(ResultSet rs) throws IOException, SQLException {
+      header();
+      while (rs.next() && row(rs)) {
+         // rows are written as they arrive
+      }
+      footer();
+      return this._rows;
+   }
+
+   /**
+    * Writes the bottom border and the row count, then flushes.
+    *
+    * @throws java.io.IOException when writing fails
+    */
+   public void footer() throws IOException {
+      write(this._hline);
+      write("  -- Rows: " + this._rows + (this._stopped ? " (stopped)" : "") + "\n\n");
+      this._out.flush();
+   }
+
+   /**
+    * @return the number of rows written so far
+    */
+   public int getRowCount() { return this._rows; }
+
+   /**
+    * @return the number of characters written so far
+    */
+   public long getCharCount() { return this._chars; }
+
+   // right-aligns a value in its column, cutting values that are too long
+   private void cell(int i, String value) throws IOException {
+      if (value == null)
+         value = "null";
+      if (value.length() > this._maxValueLengths[i])
+         value = value.substring(0, this._labels[i].length() + 2) + "...";
+      write("| ");
+      int pad = this._widths[i] - value.length();
+      if (pad > 0) {
+         this._out.write(this._spaces, 0, pad);
+         this._chars += pad;
+      }
+      write(value);
+      write(" ");
+   }
+
+   private boolean endRow() throws IOException {
+      this._rows++;
+      if (this._pageSize > 0 && this._rows % this._pageSize == 0) {
+         this._out.flush();
+         if (this._pager != null && !this._pager.nextPage(this._rows)) {
+            this._stopped = true;
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void write(String s) throws IOException {
+      this._out.write(s);
+      this._chars += s.length();
+   }
+
+}//end TableRenderer
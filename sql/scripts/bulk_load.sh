@@ -0,0 +1,15 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# create the tables and load a directory of CSV files in parallel, e.g.
+#   bulk_load.sh                  (the shipped data)
+#   bulk_load.sh /tmp/hotel-data  (files written by java/scripts/generate.sh)
+# tune with JAVA_OPTS="-Dload.threads=16 -Dload.chunkRows=500000"
+# without CopyManager in the driver the files must be readable by the database server
+DATA="$( cd "${1:-$DIR/../../data}" && pwd )"
+javac -d $DIR/../../java/classes $DIR/../../java/src/*.java
+psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_tables.sql
+# create the monthly partitions of the bookings first, so the copies write every row into its final partition
+JAVA_OPTS="$JAVA_OPTS -Dpartition.bookings=$DATA/bookings.csv" $DIR/../../java/scripts/partitions.sh
+# the indexes are built after the load, on the filled partitions
+java $JAVA_OPTS -cp $DIR/../../java/classes:$DIR/../../java/lib/pg73jdbc3.jar BulkLoader $USER"_DB" $PGPORT $USER "$DATA" $DIR/../src/create_indexes.sql
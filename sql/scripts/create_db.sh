@@ -1,6 +1,8 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# serial load with psql; bulk_load.sh loads the same data in parallel
 psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_tables.sql
-psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_indexes.sql
+# create the monthly partitions of the bookings first, so the load writes every row into its final partition
+JAVA_OPTS="$JAVA_OPTS -Dpartition.bookings=$DIR/../../data/bookings.csv" $DIR/../../java/scripts/partitions.sh
 psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/load_data.sql
-
+psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_indexes.sql
@@ -0,0 +1,7 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# load CSV files written by DataGenerator, e.g.
+#   java/scripts/generate.sh /tmp/hotel-data 1000
+#   sql/scripts/load_generated.sh /tmp/hotel-data
+bash $DIR/bulk_load.sh "$1"
@@ -0,0 +1,7 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# recreate the database at FACTOR times the shipped data, e.g. scale_db.sh 100
+FACTOR=${1:-10}
+bash $DIR/create_db.sh
+psql -h localhost -p $PGPORT -v factor=$FACTOR $USER"_DB" < $DIR/../src/scale_data.sql
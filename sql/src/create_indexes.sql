@@ -0,0 +1,47 @@
+---Indexes for the query templates in java/src/Hotel.java.
+---The primary keys already cover Rooms(hotelID, roomNumber), Users(userID) and Hotel(hotelID),
+---and UNIQUE(hotelID, roomNumber, bookingDate) on RoomBookings covers the single-night availability
+---checks (AVAILABILITY_QUERY, ROOMS_ON_DATE_QUERY, BOOK_QUERY, BATCH_VALIDATE_QUERY).
+---Indexes on the partitioned RoomBookings are created on every monthly partition, including those
+---PartitionManager adds later.
+---Run java/scripts/plancheck.sh after a change to the queries or the data size.
+
+---RECENT_BOOKINGS_QUERY: the bookings of one customer, newest first, read backwards from a page cursor
+CREATE INDEX IF NOT EXISTS roombookings_customer_date_idx
+    ON RoomBookings(customerID, bookingDate, bookingID);
+
+---HOTEL_BOOKINGS_QUERY: the bookings of one hotel, newest first, read backwards from a page cursor
+CREATE INDEX IF NOT EXISTS roombookings_hotel_date_idx
+    ON RoomBookings(hotelID, bookingDate, bookingID);
+
+---RECENT_BOOKINGS_QUERY, HOTEL_BOOKINGS_QUERY: the stays of one customer or hotel in the order of the
+---history views, first night and negated stayID
+CREATE INDEX IF NOT EXISTS roomstays_customer_date_idx
+    ON RoomStays(customerID, lower(stay), (-stayID));
+
+CREATE INDEX IF NOT EXISTS roomstays_hotel_date_idx
+    ON RoomStays(hotelID, lower(stay), (-stayID));
+
+---BOOKED_DAYS_QUERY: every booking of a date range, answered from the index alone
+CREATE INDEX IF NOT EXISTS roombookings_date_idx
+    ON RoomBookings(bookingDate, hotelID, roomNumber);
+
+---PRINCIPAL_QUERY, LOGIN_QUERY and the manager checks: the hotels of one manager
+CREATE INDEX IF NOT EXISTS hotel_manager_idx
+    ON Hotel(managerUserID, hotelID);
+
+---RECENT_UPDATES_QUERY: the updates of one manager, newest first, read backwards from a page cursor
+CREATE INDEX IF NOT EXISTS roomupdateslog_manager_number_idx
+    ON RoomUpdatesLog(managerID, updateNumber);
+
+---place_repair_request (REPAIR_REQUEST_QUERY, REPAIR_REQUESTS_QUERY): the repair of a company for a room
+CREATE INDEX IF NOT EXISTS roomrepairs_company_room_idx
+    ON RoomRepairs(companyID, hotelID, roomNumber);
+
+---REPAIR_HISTORY_QUERY: the repairs of the hotels of one manager
+CREATE INDEX IF NOT EXISTS roomrepairs_hotel_idx
+    ON RoomRepairs(hotelID);
+
+---place_repair_request, REPAIR_HISTORY_QUERY: the requests for one repair
+CREATE INDEX IF NOT EXISTS roomrepairrequests_repair_idx
+    ON RoomRepairRequests(repairID);
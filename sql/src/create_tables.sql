@@ -3,21 +3,28 @@ DROP TABLE IF EXISTS Rooms CASCADE;
 DROP TABLE IF EXISTS Users CASCADE;;
 DROP TABLE IF EXISTS MaintenanceCompany CASCADE;
 DROP TABLE IF EXISTS RoomBookings CASCADE;
+DROP TABLE IF EXISTS RoomStays CASCADE;
 DROP TABLE IF EXISTS RoomRepairs CASCADE;
 DROP TABLE IF EXISTS RoomRepairRequests CASCADE;
 DROP TABLE IF EXISTS RoomUpdatesLog CASCADE;
+DROP TABLE IF EXISTS HotelDailyStats CASCADE;
+DROP TABLE IF EXISTS HotelStatsChanges CASCADE;
+DROP TYPE IF EXISTS user_type CASCADE;
+
+---Text columns are varchar/text rather than blank-padded char(n); java/src/SchemaMigrator.java converts an existing database.
+CREATE TYPE user_type AS ENUM ('customer', 'manager', 'admin');
 
 CREATE TABLE Users ( userID serial,
-                     name char(50),
-                     password char(11) NOT NULL,
-                     userType char(10),  ---userType can be 'customer' or 'manager' 
+                     name varchar(50),
+                     password varchar(11) NOT NULL,
+                     userType user_type,  ---userType can be 'customer', 'manager' or 'admin' 
                      PRIMARY KEY(userID)
 );
 --Note: 'serial' is a special datatype of Postgres. The value of the field having serial datatype
 --is autoincremented if any new row is inserted.
 
 CREATE TABLE Hotel ( hotelID integer, 
-                     hotelName char(30) NOT NULL,
+                     hotelName varchar(30) NOT NULL,
                      latitude decimal(8,6),
                      longitude decimal(9,6),
                      dateEstablished date,
@@ -29,26 +36,52 @@ CREATE TABLE Hotel ( hotelID integer,
 CREATE TABLE Rooms ( hotelID integer NOT NULL, 
                     roomNumber integer NOT NULL,
                     price integer NOT NULL,
-                    imageURL char(30),
+                    imageURL text,
                     PRIMARY KEY(hotelID, roomNumber), 
                     FOREIGN KEY(hotelID) REFERENCES Hotel(hotelID) ON DELETE CASCADE
 );
 
 CREATE TABLE MaintenanceCompany ( 
                         companyID integer,
-                        name char(50),
-                        addrress Char(50),
+                        name varchar(50),
+                        addrress varchar(50),
                         PRIMARY KEY(companyID)
 );
 
 
+---RoomBookings is partitioned by month of bookingDate, so date-bounded queries read one partition.
+---java/src/PartitionManager.java creates the monthly partitions (RoomBookings_yYYYYmMM), moves the rows
+---that landed in RoomBookings_default into them, and detaches old months.
 CREATE TABLE RoomBookings ( 
                     bookingID serial NOT NULL,
                     customerID integer NOT NULL,
                     hotelID integer NOT NULL,
                     roomNumber integer NOT NULL, 
                     bookingDate date NOT NULL, 
-                    PRIMARY KEY(bookingID),
+                    price integer NOT NULL, ---the room's price for the night (see reprice_booked_nights)
+                    PRIMARY KEY(bookingID, bookingDate), ---unique keys of a partitioned table include its partition key
+                    UNIQUE(hotelID, roomNumber, bookingDate), ---a room can be booked once per night
+                    FOREIGN KEY(customerID) REFERENCES Users(userID),
+                    FOREIGN KEY(hotelID, roomNumber) REFERENCES Rooms(hotelID, roomNumber)
+) PARTITION BY RANGE (bookingDate);
+
+---Bookings of months without a partition yet
+CREATE TABLE RoomBookings_default PARTITION OF RoomBookings DEFAULT;
+
+---The following table stores multi-night stays: the nights [check-in, check-out) of one room as one row,
+---so checking and booking a stay costs the same whatever its length.
+---btree_gist lets the exclusion constraint compare the integer columns with =.
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+CREATE TABLE RoomStays (
+                    stayID serial NOT NULL,
+                    customerID integer NOT NULL,
+                    hotelID integer NOT NULL,
+                    roomNumber integer NOT NULL,
+                    stay daterange NOT NULL,
+                    price integer NOT NULL, ---the room's price per night (see reprice_booked_nights)
+                    PRIMARY KEY(stayID),
+                    CHECK (NOT isempty(stay) AND NOT lower_inf(stay) AND NOT upper_inf(stay)),
+                    EXCLUDE USING gist (hotelID WITH =, roomNumber WITH =, stay WITH &&), ---a room holds one stay per night
                     FOREIGN KEY(customerID) REFERENCES Users(userID),
                     FOREIGN KEY(hotelID, roomNumber) REFERENCES Rooms(hotelID, roomNumber)
 );
@@ -86,9 +119,335 @@ CREATE TABLE RoomUpdatesLog (
                             FOREIGN KEY(hotelID, roomNumber) REFERENCES Rooms(hotelID, roomNumber)
 );
 
+--The following table stores the booked rooms and revenue (at the prices the rooms were booked at) per hotel and day.
+--It is maintained incrementally by Hotel.refreshDailyStats() from HotelStatsChanges.
+CREATE TABLE HotelDailyStats (
+                            hotelID integer NOT NULL,
+                            statDate date NOT NULL,
+                            bookedRooms integer NOT NULL,
+                            revenue bigint NOT NULL,
+                            PRIMARY KEY(hotelID, statDate),
+                            FOREIGN KEY(hotelID) REFERENCES Hotel(hotelID) ON DELETE CASCADE
+);
+
+--The (hotel, day) pairs whose bookings changed since HotelDailyStats was last refreshed. The triggers below add
+--them in the transaction of the change, so a refresh sees a change exactly when it sees the booking, however late
+--that commits. There is no key: writers only append, and the refresh deletes what it read.
+CREATE TABLE HotelStatsChanges (
+                            hotelID integer NOT NULL,
+                            statDate date NOT NULL
+);
+
 ---The following is the definition of a user-defined sql function for calculating the distance between two lat-long pairs.
 CREATE OR REPLACE FUNCTION calculate_distance(lat1 decimal, long1 decimal, lat2 decimal, long2 decimal)
 RETURNS decimal AS $dist$
 BEGIN RETURN sqrt((lat1 - lat2) * (lat1 - lat2) + (long1 - long2) * (long1 - long2));
 END;
-$dist$ LANGUAGE plpgsql;
\ No newline at end of file
+$dist$ LANGUAGE plpgsql;
+
+---The following trigger tells the running programs which hotel's rooms changed (see java/src/RoomCatalogListener.java).
+CREATE OR REPLACE FUNCTION notify_rooms_changed()
+RETURNS trigger AS $notify$
+BEGIN
+    IF TG_OP <> 'INSERT' THEN
+        PERFORM pg_notify('rooms_changed', OLD.hotelID::text);
+    END IF;
+    IF TG_OP <> 'DELETE' AND (TG_OP = 'INSERT' OR NEW.hotelID <> OLD.hotelID) THEN
+        PERFORM pg_notify('rooms_changed', NEW.hotelID::text);
+    END IF;
+    RETURN NULL;
+END;
+$notify$ LANGUAGE plpgsql;
+
+CREATE TRIGGER rooms_changed AFTER INSERT OR UPDATE OR DELETE ON Rooms
+    FOR EACH ROW EXECUTE PROCEDURE notify_rooms_changed();
+
+---The following trigger tells the running programs which hotel was added, changed ("<hotelID>") or deleted
+---("-<hotelID>"), so they move it in their spatial index (see Hotel.indexHotel and Hotel.unindexHotel).
+CREATE OR REPLACE FUNCTION notify_hotels_changed()
+RETURNS trigger AS $notify$
+BEGIN
+    IF TG_OP = 'DELETE' OR (TG_OP = 'UPDATE' AND NEW.hotelID <> OLD.hotelID) THEN
+        PERFORM pg_notify('hotels_changed', '-' || OLD.hotelID);
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        PERFORM pg_notify('hotels_changed', NEW.hotelID::text);
+    END IF;
+    RETURN NULL;
+END;
+$notify$ LANGUAGE plpgsql;
+
+CREATE TRIGGER hotels_changed AFTER INSERT OR UPDATE OR DELETE ON Hotel
+    FOR EACH ROW EXECUTE PROCEDURE notify_hotels_changed();
+
+
+---The following triggers keep stays and single-night bookings of a room apart: a statement that writes a
+---row overlapping the other table fails with exclusion_violation (23P01), like a stay overlapping a stay,
+---so a conflicting row is never dropped silently, also not by the COPY of load_data.sql or BulkLoader.
+---The triggers run once per statement over its new rows: a bulk load pays one join, not a lookup per row.
+---A stay locks the Rooms rows it touches FOR NO KEY UPDATE and a night FOR SHARE, so a stay waits for the
+---nights of its room being booked and the reverse; each check then runs with a new snapshot and sees the
+---rows committed meanwhile. Nights of the same room do not wait for each other. Neither mode conflicts with
+---the FOR KEY SHARE the foreign key checks took just before, so two writers cannot deadlock on it.
+CREATE OR REPLACE FUNCTION reject_booked_nights()
+RETURNS trigger AS $night$
+BEGIN
+    PERFORM 1 FROM Rooms R
+    WHERE (R.hotelID, R.roomNumber) IN (SELECT N.hotelID, N.roomNumber FROM new_rows N)
+    ORDER BY R.hotelID, R.roomNumber
+    FOR SHARE;
+    IF EXISTS (SELECT 1 FROM new_rows N, RoomStays S
+               WHERE S.hotelID = N.hotelID AND S.roomNumber = N.roomNumber AND S.stay @> N.bookingDate) THEN
+        RAISE EXCEPTION 'a booked night is part of a stay' USING ERRCODE = 'exclusion_violation';
+    END IF;
+    RETURN NULL;
+END;
+$night$ LANGUAGE plpgsql;
+
+---transition tables take one event per trigger
+CREATE TRIGGER roombookings_stays_insert AFTER INSERT ON RoomBookings
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE reject_booked_nights();
+
+CREATE TRIGGER roombookings_stays_update AFTER UPDATE ON RoomBookings
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE reject_booked_nights();
+
+CREATE OR REPLACE FUNCTION reject_booked_stays()
+RETURNS trigger AS $stay$
+BEGIN
+    PERFORM 1 FROM Rooms R
+    WHERE (R.hotelID, R.roomNumber) IN (SELECT N.hotelID, N.roomNumber FROM new_rows N)
+    ORDER BY R.hotelID, R.roomNumber
+    FOR NO KEY UPDATE;
+    IF EXISTS (SELECT 1 FROM new_rows N, RoomBookings B
+               WHERE B.hotelID = N.hotelID AND B.roomNumber = N.roomNumber
+               AND B.bookingDate >= lower(N.stay) AND B.bookingDate < upper(N.stay)) THEN
+        RAISE EXCEPTION 'a night of the stay is booked' USING ERRCODE = 'exclusion_violation';
+    END IF;
+    RETURN NULL;
+END;
+$stay$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roomstays_bookings_insert AFTER INSERT ON RoomStays
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE reject_booked_stays();
+
+CREATE TRIGGER roomstays_bookings_update AFTER UPDATE ON RoomStays
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE reject_booked_stays();
+
+---The following triggers tell the running programs which nights of a room were booked ("+") or freed ("-"),
+---as "<op><hotelID>,<roomNumber>,<from>,<to>" for the nights [from, to), so the availability engine of every
+---program stays current (see Hotel.applyBookingChange). An update that keeps the room and nights of a row,
+---e.g. a new price, sends nothing. A statement that writes more than 1000 rows, such as a load, sends "*"
+---instead, and the programs reload their engine. The callers read at most 1001 rows of each side.
+CREATE OR REPLACE FUNCTION notify_nights(p_freed text[], p_booked text[])
+RETURNS void AS $notify$
+DECLARE
+    v text;
+BEGIN
+    IF cardinality(p_freed) > 1000 OR cardinality(p_booked) > 1000 THEN
+        PERFORM pg_notify('bookings_changed', '*');
+        RETURN;
+    END IF;
+    FOREACH v IN ARRAY ARRAY(SELECT unnest(p_freed) EXCEPT SELECT unnest(p_booked)) LOOP
+        PERFORM pg_notify('bookings_changed', '-' || v);
+    END LOOP;
+    FOREACH v IN ARRAY ARRAY(SELECT unnest(p_booked) EXCEPT SELECT unnest(p_freed)) LOOP
+        PERFORM pg_notify('bookings_changed', '+' || v);
+    END LOOP;
+END;
+$notify$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION notify_bookings_changed()
+RETURNS trigger AS $notify$
+DECLARE
+    v_freed text[] := '{}';
+    v_booked text[] := '{}';
+BEGIN
+    ---a transition table can only be read by the triggers that declare it
+    IF TG_OP <> 'INSERT' THEN
+        v_freed := ARRAY(SELECT concat_ws(',', F.hotelID, F.roomNumber, F.bookingDate, F.bookingDate + 1)
+                         FROM freed_rows F LIMIT 1001);
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        v_booked := ARRAY(SELECT concat_ws(',', B.hotelID, B.roomNumber, B.bookingDate, B.bookingDate + 1)
+                          FROM booked_rows B LIMIT 1001);
+    END IF;
+    PERFORM notify_nights(v_freed, v_booked);
+    RETURN NULL;
+END;
+$notify$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roombookings_notify_insert AFTER INSERT ON RoomBookings
+    REFERENCING NEW TABLE AS booked_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE notify_bookings_changed();
+
+CREATE TRIGGER roombookings_notify_update AFTER UPDATE ON RoomBookings
+    REFERENCING OLD TABLE AS freed_rows NEW TABLE AS booked_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE notify_bookings_changed();
+
+CREATE TRIGGER roombookings_notify_delete AFTER DELETE ON RoomBookings
+    REFERENCING OLD TABLE AS freed_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE notify_bookings_changed();
+
+CREATE OR REPLACE FUNCTION notify_stays_changed()
+RETURNS trigger AS $notify$
+DECLARE
+    v_freed text[] := '{}';
+    v_booked text[] := '{}';
+BEGIN
+    IF TG_OP <> 'INSERT' THEN
+        v_freed := ARRAY(SELECT concat_ws(',', F.hotelID, F.roomNumber, lower(F.stay), upper(F.stay))
+                         FROM freed_rows F LIMIT 1001);
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        v_booked := ARRAY(SELECT concat_ws(',', B.hotelID, B.roomNumber, lower(B.stay), upper(B.stay))
+                          FROM booked_rows B LIMIT 1001);
+    END IF;
+    PERFORM notify_nights(v_freed, v_booked);
+    RETURN NULL;
+END;
+$notify$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roomstays_notify_insert AFTER INSERT ON RoomStays
+    REFERENCING NEW TABLE AS booked_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE notify_stays_changed();
+
+CREATE TRIGGER roomstays_notify_update AFTER UPDATE ON RoomStays
+    REFERENCING OLD TABLE AS freed_rows NEW TABLE AS booked_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE notify_stays_changed();
+
+CREATE TRIGGER roomstays_notify_delete AFTER DELETE ON RoomStays
+    REFERENCING OLD TABLE AS freed_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE notify_stays_changed();
+
+---The following triggers queue the days of the bookings, and the nights of the stays, that a statement inserts,
+---moves, reprices or deletes for Hotel.refreshDailyStats(), once per (hotel, day) and statement.
+CREATE OR REPLACE FUNCTION queue_booked_days()
+RETURNS trigger AS $stats$
+BEGIN
+    IF TG_OP <> 'INSERT' THEN
+        INSERT INTO HotelStatsChanges SELECT DISTINCT F.hotelID, F.bookingDate FROM freed_rows F;
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        INSERT INTO HotelStatsChanges SELECT DISTINCT B.hotelID, B.bookingDate FROM booked_rows B;
+    END IF;
+    RETURN NULL;
+END;
+$stats$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roombookings_stats_insert AFTER INSERT ON RoomBookings
+    REFERENCING NEW TABLE AS booked_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE queue_booked_days();
+
+CREATE TRIGGER roombookings_stats_update AFTER UPDATE ON RoomBookings
+    REFERENCING OLD TABLE AS freed_rows NEW TABLE AS booked_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE queue_booked_days();
+
+CREATE TRIGGER roombookings_stats_delete AFTER DELETE ON RoomBookings
+    REFERENCING OLD TABLE AS freed_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE queue_booked_days();
+
+CREATE OR REPLACE FUNCTION queue_stayed_days()
+RETURNS trigger AS $stats$
+BEGIN
+    IF TG_OP <> 'INSERT' THEN
+        INSERT INTO HotelStatsChanges
+        SELECT DISTINCT F.hotelID, N.night::date
+        FROM freed_rows F, generate_series(lower(F.stay), upper(F.stay) - 1, interval '1 day') AS N(night);
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        INSERT INTO HotelStatsChanges
+        SELECT DISTINCT B.hotelID, N.night::date
+        FROM booked_rows B, generate_series(lower(B.stay), upper(B.stay) - 1, interval '1 day') AS N(night);
+    END IF;
+    RETURN NULL;
+END;
+$stats$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roomstays_stats_insert AFTER INSERT ON RoomStays
+    REFERENCING NEW TABLE AS booked_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE queue_stayed_days();
+
+CREATE TRIGGER roomstays_stats_update AFTER UPDATE ON RoomStays
+    REFERENCING OLD TABLE AS freed_rows NEW TABLE AS booked_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE queue_stayed_days();
+
+CREATE TRIGGER roomstays_stats_delete AFTER DELETE ON RoomStays
+    REFERENCING OLD TABLE AS freed_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE queue_stayed_days();
+
+---The following trigger charges the logged price change of a room (see Hotel.updateRoom) to its nights booked
+---for the day of the change or later, whose price was not in effect yet, and to its stays that begin then;
+---earlier nights keep the price they were booked at. The repriced rows queue their days above, so the next
+---refresh recomputes just those.
+CREATE OR REPLACE FUNCTION reprice_booked_nights()
+RETURNS trigger AS $reprice$
+BEGIN
+    UPDATE RoomBookings B SET price = R.price
+    FROM (SELECT N.hotelID, N.roomNumber, min(N.updatedOn)::date AS since
+          FROM new_rows N GROUP BY N.hotelID, N.roomNumber) AS U, Rooms R
+    WHERE B.hotelID = U.hotelID AND B.roomNumber = U.roomNumber AND B.bookingDate >= U.since
+    AND R.hotelID = U.hotelID AND R.roomNumber = U.roomNumber
+    AND B.price <> R.price;
+    UPDATE RoomStays S SET price = R.price
+    FROM (SELECT N.hotelID, N.roomNumber, min(N.updatedOn)::date AS since
+          FROM new_rows N GROUP BY N.hotelID, N.roomNumber) AS U, Rooms R
+    WHERE S.hotelID = U.hotelID AND S.roomNumber = U.roomNumber AND lower(S.stay) >= U.since
+    AND R.hotelID = U.hotelID AND R.roomNumber = U.roomNumber
+    AND S.price <> R.price;
+    RETURN NULL;
+END;
+$reprice$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roomupdateslog_reprice AFTER INSERT ON RoomUpdatesLog
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE PROCEDURE reprice_booked_nights();
+
+---The following functions place repair requests with every check in one round trip (see Hotel.placeRepairRequest).
+---The outcome names match java/src/RepairOutcome.java. A request is for the most recent repair of the room by
+---the company; that repair row is locked first, so concurrent requests for it cannot both pass the duplicate check.
+CREATE OR REPLACE FUNCTION place_repair_request(p_manager integer, p_company integer, p_hotel integer, p_room integer)
+RETURNS text AS $repair$
+DECLARE
+    v_repair integer;
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM Hotel H WHERE H.hotelID = p_hotel AND H.managerUserID = p_manager) THEN
+        RETURN 'NOT_MANAGER';
+    END IF;
+    SELECT B.repairID INTO v_repair
+    FROM RoomRepairs B
+    WHERE B.companyID = p_company AND B.hotelID = p_hotel AND B.roomNumber = p_room
+    ORDER BY B.repairDate DESC, B.repairID DESC
+    LIMIT 1
+    FOR UPDATE;
+    IF v_repair IS NULL THEN
+        RETURN 'NO_REPAIR';
+    END IF;
+    IF EXISTS (SELECT 1 FROM RoomRepairRequests A WHERE A.repairID = v_repair) THEN
+        RETURN 'DUPLICATE';
+    END IF;
+    INSERT INTO RoomRepairRequests(managerID, repairID) VALUES (p_manager, v_repair);
+    RETURN 'OK';
+END;
+$repair$ LANGUAGE plpgsql;
+
+---Bulk variant: one outcome per (hotel, room) pair, by position in the arrays. The rooms are handled in
+---(hotel, room) order so that concurrent calls lock the repairs in the same order.
+CREATE OR REPLACE FUNCTION place_repair_requests(p_manager integer, p_company integer, p_hotels integer[], p_rooms integer[])
+RETURNS TABLE(ord bigint, outcome text) AS $repairs$
+DECLARE
+    v record;
+BEGIN
+    FOR v IN SELECT R.hotelID, R.roomNumber, R.ord
+             FROM unnest(p_hotels, p_rooms) WITH ORDINALITY AS R(hotelID, roomNumber, ord)
+             ORDER BY R.hotelID, R.roomNumber, R.ord
+    LOOP
+        ord := v.ord;
+        outcome := place_repair_request(p_manager, p_company, v.hotelID, v.roomNumber);
+        RETURN NEXT;
+    END LOOP;
+END;
+$repairs$ LANGUAGE plpgsql;
@@ -1,7 +1,7 @@
 COPY Users
 FROM 'users.csv' 
 WITH DELIMITER ',' CSV HEADER;
-ALTER SEQUENCE users_userID_seq RESTART 101; 
+SELECT setval('users_userID_seq', (SELECT max(userID) FROM Users));
 
 COPY Hotel
 FROM 'hotels.csv'
@@ -15,22 +15,31 @@ COPY MaintenanceCompany
 FROM 'company.csv'
 WITH DELIMITER ',' CSV HEADER;
 
-COPY RoomBookings
+---bookings.csv has no price: a loaded booking is charged the room's price
+CREATE TEMP TABLE booking_rows AS
+SELECT bookingID, customerID, hotelID, roomNumber, bookingDate FROM RoomBookings WITH NO DATA;
+
+COPY booking_rows
 FROM 'bookings.csv'
 WITH DELIMITER ',' CSV HEADER;
-ALTER SEQUENCE RoomBookings_bookingID_seq RESTART 501; 
+
+INSERT INTO RoomBookings(bookingID, customerID, hotelID, roomNumber, bookingDate, price)
+SELECT L.bookingID, L.customerID, L.hotelID, L.roomNumber, L.bookingDate, R.price
+FROM booking_rows L LEFT JOIN Rooms R ON R.hotelID = L.hotelID AND R.roomNumber = L.roomNumber;
+DROP TABLE booking_rows;
+SELECT setval('RoomBookings_bookingID_seq', (SELECT max(bookingID) FROM RoomBookings));
 
 COPY RoomRepairs
 FROM 'roomRepairs.csv'
 WITH DELIMITER ',' CSV HEADER;
-ALTER SEQUENCE roomRepairs_repairID_seq RESTART 11;
+SELECT setval('roomRepairs_repairID_seq', (SELECT max(repairID) FROM RoomRepairs));
 
 COPY RoomRepairRequests
 FROM 'roomRepairRequests.csv'
 WITH DELIMITER ',' CSV HEADER;
-ALTER SEQUENCE roomRepairRequests_requestNumber_seq RESTART 11;
+SELECT setval('roomRepairRequests_requestNumber_seq', (SELECT max(requestNumber) FROM RoomRepairRequests));
 
 COPY RoomUpdatesLog
 FROM 'roomUpdatesLog.csv'
 WITH DELIMITER ',' CSV HEADER;
-ALTER SEQUENCE roomUpdatesLog_updateNumber_seq RESTART 51;
+SELECT setval('roomUpdatesLog_updateNumber_seq', (SELECT max(updateNumber) FROM RoomUpdatesLog));
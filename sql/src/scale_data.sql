@@ -0,0 +1,61 @@
+---Multiplies the loaded data by :factor for benchmarking, e.g.
+---   psql -v factor=10 ... < scale_data.sql
+---Copy k (1 .. factor-1) of every row has its ids shifted by k times the largest id
+---of the shipped data, so keys, foreign keys and the one-booking-per-room-and-night
+---rule stay valid. Run it once, on a freshly loaded database.
+
+CREATE TEMP TABLE scale_copies AS SELECT generate_series(1, :factor - 1) AS k;
+
+CREATE TEMP TABLE scale_base AS SELECT
+    (SELECT max(userID) FROM Users) AS users,
+    (SELECT max(hotelID) FROM Hotel) AS hotels,
+    (SELECT max(companyID) FROM MaintenanceCompany) AS companies,
+    (SELECT max(bookingID) FROM RoomBookings) AS bookings,
+    (SELECT max(repairID) FROM RoomRepairs) AS repairs,
+    (SELECT max(requestNumber) FROM RoomRepairRequests) AS requests,
+    (SELECT max(updateNumber) FROM RoomUpdatesLog) AS updates;
+
+INSERT INTO Users (userID, name, password, userType)
+SELECT U.userID + C.k * B.users, U.name, U.password, U.userType
+FROM Users U, scale_copies C, scale_base B;
+
+INSERT INTO Hotel (hotelID, hotelName, latitude, longitude, dateEstablished, managerUserID)
+SELECT H.hotelID + C.k * B.hotels, H.hotelName, H.latitude, H.longitude, H.dateEstablished,
+       H.managerUserID + C.k * B.users
+FROM Hotel H, scale_copies C, scale_base B;
+
+INSERT INTO Rooms (hotelID, roomNumber, price, imageURL)
+SELECT R.hotelID + C.k * B.hotels, R.roomNumber, R.price, R.imageURL
+FROM Rooms R, scale_copies C, scale_base B;
+
+INSERT INTO MaintenanceCompany (companyID, name, addrress)
+SELECT M.companyID + C.k * B.companies, M.name, M.addrress
+FROM MaintenanceCompany M, scale_copies C, scale_base B;
+
+INSERT INTO RoomBookings (bookingID, customerID, hotelID, roomNumber, bookingDate, price)
+SELECT R.bookingID + C.k * B.bookings, R.customerID + C.k * B.users, R.hotelID + C.k * B.hotels,
+       R.roomNumber, R.bookingDate, R.price
+FROM RoomBookings R, scale_copies C, scale_base B;
+
+INSERT INTO RoomRepairs (repairID, companyID, hotelID, roomNumber, repairDate)
+SELECT R.repairID + C.k * B.repairs, R.companyID + C.k * B.companies, R.hotelID + C.k * B.hotels,
+       R.roomNumber, R.repairDate
+FROM RoomRepairs R, scale_copies C, scale_base B;
+
+INSERT INTO RoomRepairRequests (requestNumber, managerID, repairID)
+SELECT R.requestNumber + C.k * B.requests, R.managerID + C.k * B.users, R.repairID + C.k * B.repairs
+FROM RoomRepairRequests R, scale_copies C, scale_base B;
+
+INSERT INTO RoomUpdatesLog (updateNumber, managerID, hotelID, roomNumber, updatedOn)
+SELECT L.updateNumber + C.k * B.updates, L.managerID + C.k * B.users, L.hotelID + C.k * B.hotels,
+       L.roomNumber, L.updatedOn
+FROM RoomUpdatesLog L, scale_copies C, scale_base B;
+
+---new rows must not reuse the copied ids
+SELECT setval('users_userID_seq', (SELECT max(userID) FROM Users));
+SELECT setval('RoomBookings_bookingID_seq', (SELECT max(bookingID) FROM RoomBookings));
+SELECT setval('roomRepairs_repairID_seq', (SELECT max(repairID) FROM RoomRepairs));
+SELECT setval('roomRepairRequests_requestNumber_seq', (SELECT max(requestNumber) FROM RoomRepairRequests));
+SELECT setval('roomUpdatesLog_updateNumber_seq', (SELECT max(updateNumber) FROM RoomUpdatesLog));
+
+ANALYZE;